@@ -0,0 +1,78 @@
+package palExtensions;
+
+/**
+ * Samples from a discrete distribution on 0..n-1 in O(1) time per draw, by Walker's alias
+ * method (with Vose's O(n) table construction.) Each draw takes one random integer (to choose a
+ * column) and one random double (to choose between the column and its alias.)
+ *
+ * The sampler is immutable, so may be shared between threads, each with its own ExtRandom.
+ */
+public class AliasSampler {
+	private final double[] probability; // of keeping column i rather than taking its alias
+	private final int[] alias;
+
+	/**
+	 * @param weights non-negative, not all zero. Need not sum to 1.
+	 */
+	public AliasSampler(double[] weights) {
+		int n = weights.length;
+		if (n==0) throw new IllegalArgumentException("No weights");
+		double total = 0;
+		for (double w : weights) {
+			if (!(w>=0) || Double.isInfinite(w)) throw new IllegalArgumentException("Weights must be finite and non-negative");
+			total += w;
+		}
+		if (total<=0) throw new IllegalArgumentException("Weights sum to zero");
+		probability = new double[n];
+		alias = new int[n];
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int nSmall = 0, nLarge = 0;
+		for (int i=0; i<n; i++) {
+			scaled[i] = weights[i]*n/total;
+			if (scaled[i]<1) small[nSmall++] = i; else large[nLarge++] = i;
+		}
+		while (nSmall>0 && nLarge>0) {
+			int s = small[--nSmall];
+			int l = large[--nLarge];
+			probability[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] = (scaled[l]+scaled[s])-1;
+			if (scaled[l]<1) small[nSmall++] = l; else large[nLarge++] = l;
+		}
+		// remaining columns are full (up to rounding error)
+		while (nLarge>0) {
+			int l = large[--nLarge];
+			probability[l] = 1;
+			alias[l] = l;
+		}
+		while (nSmall>0) {
+			int s = small[--nSmall];
+			probability[s] = 1;
+			alias[s] = s;
+		}
+	}
+
+	/**
+	 * @return number of outcomes
+	 */
+	public int size() {
+		return probability.length;
+	}
+
+	/**
+	 * @return an outcome in 0..size()-1, drawn with probability proportional to its weight
+	 */
+	public int sample(ExtRandom rng) {
+		int column = rng.nextInt(probability.length);
+		return (rng.nextDouble()<probability[column]) ? column : alias[column];
+	}
+
+	/**
+	 * Fills dest with independent draws
+	 */
+	public void sample(ExtRandom rng, int[] dest) {
+		for (int i=0; i<dest.length; i++) dest[i] = sample(rng);
+	}
+}
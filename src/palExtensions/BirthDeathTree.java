@@ -0,0 +1,109 @@
+package palExtensions;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+import pal.misc.SimpleIdGroup;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+
+/**
+ * Random reconstructed trees (extant, sampled lineages only) of a constant rate birth-death
+ * process with incomplete sampling, conditioned on the number of sampled leaves.
+ *
+ * Uses the coalescent point process representation (Lambert & Stadler 2013): with a uniform
+ * prior on the time of origin, the reconstructed tree on n leaves has n-1 independent node depths
+ * H, one between each pair of adjacent leaves in the planar order, with
+ *   P(H>t) = r/(r + rho*lambda*(exp(r*t)-1)), r = lambda-mu.
+ * The tree is built from the depths with a stack in O(n) time, and identifiers are assigned to
+ * leaves at random.
+ */
+public class BirthDeathTree extends RandomTreeGenerator {
+	private final double birthRate_;
+	private final double deathRate_;
+	private final double samplingFraction_;
+
+	/**
+	 * @param leafIDs
+	 * @param birthRate lambda
+	 * @param deathRate mu, less than lambda
+	 * @param samplingFraction rho, the probability each extant lineage is sampled (0<rho<=1)
+	 * @param seed
+	 */
+	public BirthDeathTree(IdGroup leafIDs, double birthRate, double deathRate, double samplingFraction, long seed) {
+		super(leafIDs, seed);
+		if (!(birthRate>deathRate && deathRate>=0)) throw new IllegalArgumentException("Need birth rate > death rate >= 0");
+		if (!(samplingFraction>0 && samplingFraction<=1)) throw new IllegalArgumentException("Sampling fraction must be in (0,1]");
+		birthRate_ = birthRate;
+		deathRate_ = deathRate;
+		samplingFraction_ = samplingFraction;
+	}
+
+	public BirthDeathTree(String[] leafNames, double birthRate, double deathRate, double samplingFraction, long seed) {
+		this(new SimpleIdGroup(leafNames), birthRate, deathRate, samplingFraction, seed);
+	}
+
+	/*
+	 * A node depth, by inverting P(H>t) at a uniform random number.
+	 */
+	private double nodeDepth(ExtRandom rng) {
+		double r = birthRate_-deathRate_;
+		double u = 1-rng.nextDouble(); // in (0,1]
+		return Math.log1p(r*(1-u)/(samplingFraction_*birthRate_*u))/r;
+	}
+
+	protected Tree generate(Identifier[] leaves, ExtRandom rng) {
+		int nLeaves = leaves.length;
+		// Right spine of the tree so far: internal nodes whose right child is not yet known,
+		// with depths decreasing towards the top of the stack.
+		SimpleNode[] spine = new SimpleNode[nLeaves];
+		double[] spineDepth = new double[nLeaves];
+		int top = 0;
+		SimpleNode pending = new SimpleNode(); // rightmost subtree, not yet attached to a parent
+		double pendingDepth = 0;
+		for (int i=1; i<nLeaves; i++) {
+			double depth = nodeDepth(rng);
+			while (top>0 && spineDepth[top-1]<depth) {
+				top--;
+				attach(spine[top], spineDepth[top], pending, pendingDepth);
+				pending = spine[top];
+				pendingDepth = spineDepth[top];
+			}
+			SimpleNode node = new SimpleNode();
+			attach(node, depth, pending, pendingDepth);
+			spine[top] = node;
+			spineDepth[top++] = depth;
+			pending = new SimpleNode();
+			pendingDepth = 0;
+		}
+		while (top>0) {
+			top--;
+			attach(spine[top], spineDepth[top], pending, pendingDepth);
+			pending = spine[top];
+			pendingDepth = spineDepth[top];
+		}
+		rng.shuffle(leaves);
+		assignLeaves(pending, leaves);
+		return new SimpleTree(pending);
+	}
+
+	private static void attach(SimpleNode parent, double parentDepth, SimpleNode child, double childDepth) {
+		child.setBranchLength(parentDepth-childDepth);
+		parent.addChild(child);
+	}
+
+	// gives the leaves identifiers, in depth first order
+	static void assignLeaves(SimpleNode root, Identifier[] leaves) {
+		SimpleNode[] stack = new SimpleNode[leaves.length];
+		int top = 0, next = 0;
+		stack[top++] = root;
+		while (top>0) {
+			SimpleNode node = stack[--top];
+			if (node.isLeaf()) {
+				node.setIdentifier(leaves[next++]);
+			} else {
+				for (int c=node.getChildCount()-1; c>=0; c--) stack[top++] = (SimpleNode)node.getChild(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package palExtensions;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+import pal.misc.SimpleIdGroup;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+
+/**
+ * Random trees from the Kingman coalescent, for a constant population size.
+ * While there are k lineages, the time to the next coalescence is exponential with rate
+ * k(k-1)/2 divided by the population size, and the two lineages which coalesce are chosen
+ * uniformly at random. O(n) time.
+ */
+public class CoalescentTree extends RandomTreeGenerator {
+	private final double populationSize_;
+
+	/**
+	 * @param leafIDs
+	 * @param populationSize time scale: expected time for two lineages to coalesce
+	 * @param seed
+	 */
+	public CoalescentTree(IdGroup leafIDs, double populationSize, long seed) {
+		super(leafIDs, seed);
+		if (!(populationSize>0)) throw new IllegalArgumentException("Population size must be positive");
+		populationSize_ = populationSize;
+	}
+
+	public CoalescentTree(String[] leafNames, double populationSize, long seed) {
+		this(new SimpleIdGroup(leafNames), populationSize, seed);
+	}
+
+	protected Tree generate(Identifier[] leaves, ExtRandom rng) {
+		int nLeaves = leaves.length;
+		SimpleNode[] lineages = new SimpleNode[nLeaves];
+		double[] lineageTime = new double[nLeaves]; // time (before present) of each lineage's node
+		for (int i=0; i<nLeaves; i++) {
+			lineages[i] = new SimpleNode();
+			lineages[i].setIdentifier(leaves[i]);
+		}
+		double time = 0;
+		for (int k=nLeaves; k>1; k--) {
+			time += rng.nextExponential(2*populationSize_/((double)k*(k-1)));
+			// choose two distinct lineages; move them to the end of the active range [0,k)
+			swap(lineages, lineageTime, rng.nextInt(k), k-1);
+			swap(lineages, lineageTime, rng.nextInt(k-1), k-2);
+			SimpleNode parent = new SimpleNode();
+			for (int c=k-2; c<k; c++) {
+				lineages[c].setBranchLength(time-lineageTime[c]);
+				parent.addChild(lineages[c]);
+			}
+			lineages[k-2] = parent;
+			lineageTime[k-2] = time;
+		}
+		return new SimpleTree(lineages[0]);
+	}
+
+	private static void swap(SimpleNode[] nodes, double[] times, int i, int j) {
+		SimpleNode node = nodes[i];
+		nodes[i] = nodes[j];
+		nodes[j] = node;
+		double time = times[i];
+		times[i] = times[j];
+		times[j] = time;
+	}
+}
@@ -57,6 +57,27 @@ public class ExTreeUtils {
 		return ExNodeUtils.toTopologyString((AttributeNode)tree.getRoot());
 	}
 
+	/**
+	 * 64 bit fingerprint of the topology of the tree, computed without building strings
+	 * and without modifying the tree. Trees with the same topology (and leaf names) always
+	 * have the same fingerprint, so this can be used as a hash key in place of toTopologyString.
+	 * See TopologyHash.
+	 * @param tree
+	 * @param rooted if false, the fingerprint does not depend on the root position.
+	 * @return
+	 */
+	public static long topologyHash(Tree tree, boolean rooted) {
+		return TopologyHash.hash64(tree, rooted);
+	}
+
+	/**
+	 * As topologyHash, but 128 bits (as two longs) for when collisions must be avoided
+	 * among very large numbers of trees.
+	 */
+	public static long[] topologyHash128(Tree tree, boolean rooted) {
+		return TopologyHash.hash128(tree, rooted);
+	}
+
 	/**
 	 * If root of tree is a binary node, reroot to one of the current root's
 	 * children, which will now have 3 children.
@@ -109,6 +130,7 @@ public class ExTreeUtils {
 	/**
 	 * Given a tree in New Hampshire format, return the resulting tree.
 	 * Throws exceptions if the string is not a legal New Hampshire format tree.
+	 * (To read many trees, e.g. from a file, NewickReader is much faster.)
 	 * @param inputString
 	 * @return
 	 * @throws TreeParseException
@@ -128,6 +150,8 @@ public class ExTreeUtils {
 	 * and I'm trying to avoid introducting any new code (i.e. bugfixing) PAL.
 	 * (If tree and supplied IdGroup don't have same order, pal.tree.TreeDistanceMatrix does
 	 * not correctly permute the distance matrix to account for it.) 
+	 * 
+	 * For large trees, consider TreeDistanceOracle, which computes distances on demand.
 	 */
 	public static DistanceMatrix treeToDistanceMatrix(Tree tree, IdGroup order, boolean countEdges, double epsilon) {
 		IdGroup unpermutedIds = TreeUtils.getLeafIdGroup(tree);
@@ -13,6 +13,16 @@ import pal.math.MersenneTwisterFast;
  * the check is only on nextInt(int) and shuffled(int) methods. 
  * Fortunately some other methods use nextInt(int) and so will also be caught.
  * I'm really getting to hate 'final' declarations.
+ *
+ * For parallel work, substream(masterSeed, index) gives independently seeded generators, one per
+ * unit of work (tree, block of quadruples, etc.), so results depend only on the master seed and
+ * not on the number of threads. split() derives a new generator from this one's output.
+ *
+ * Exponential and normal variates from nextStandardExponential and nextNormal use the ziggurat
+ * method (Marsaglia & Tsang 2000), which needs one 32 bit random integer and no transcendental
+ * functions for about 99% of draws; gamma variates use Marsaglia & Tsang's (2000) rejection
+ * method on top of it. The next...s methods fill arrays. (nextExponential keeps its original
+ * algorithm, so seeded simulations which use it are unchanged.)
  * 
  * @author woodhams
  *
@@ -22,6 +32,52 @@ public class ExtRandom extends MersenneTwisterFast {
 	private static final long serialVersionUID = -6506899262232124633L;
 	private static boolean ALLOW_UNSEEDED = true; 
 	private boolean seeded; // Has this instance been seeded? (else
+
+	// Ziggurat tables: 128 layers for the normal, 256 for the exponential distribution.
+	private static final int[] KN = new int[128];
+	private static final double[] WN = new double[128];
+	private static final double[] FN = new double[128];
+	private static final long[] KE = new long[256];
+	private static final double[] WE = new double[256];
+	private static final double[] FE = new double[256];
+	private static final double NORMAL_R = 3.442619855899;  // start of the normal tail
+	private static final double EXP_R = 7.697117470131487; // start of the exponential tail
+	static {
+		final double m1 = 2147483648.0;
+		double dn = NORMAL_R, tn = dn;
+		final double vn = 9.91256303526217e-3;
+		double q = vn/Math.exp(-.5*dn*dn);
+		KN[0] = (int)((dn/q)*m1);
+		KN[1] = 0;
+		WN[0] = q/m1;
+		WN[127] = dn/m1;
+		FN[0] = 1.;
+		FN[127] = Math.exp(-.5*dn*dn);
+		for (int i=126; i>=1; i--) {
+			dn = Math.sqrt(-2.*Math.log(vn/dn+Math.exp(-.5*dn*dn)));
+			KN[i+1] = (int)((dn/tn)*m1);
+			tn = dn;
+			FN[i] = Math.exp(-.5*dn*dn);
+			WN[i] = dn/m1;
+		}
+		final double m2 = 4294967296.0;
+		double de = EXP_R, te = de;
+		final double ve = 3.949659822581572e-3;
+		q = ve/Math.exp(-de);
+		KE[0] = (long)((de/q)*m2);
+		KE[1] = 0;
+		WE[0] = q/m2;
+		WE[255] = de/m2;
+		FE[0] = 1.;
+		FE[255] = Math.exp(-de);
+		for (int i=254; i>=1; i--) {
+			de = -Math.log(ve/de+Math.exp(-de));
+			KE[i+1] = (long)((de/te)*m2);
+			te = de;
+			FE[i] = Math.exp(-de);
+			WE[i] = de/m2;
+		}
+	}
 	
 	public ExtRandom() {
 		super();
@@ -34,6 +90,50 @@ public class ExtRandom extends MersenneTwisterFast {
 	}
 	
 
+	/**
+	 * Seed of substream 'index' of a master seed. MersenneTwisterFast uses only 32 bits of its
+	 * seed, so the seed is a bijective scramble of index, keyed by the master seed: substreams
+	 * 0 to 2^32-1 of one master seed all have different seeds. Substreams of
+	 * different master seeds share the same 2^32 seeds, so they can collide: two master seeds
+	 * each running many substreams will probably have some substreams in common.
+	 * @param index in [0,2^32), else IllegalArgumentException (larger indices would repeat seeds)
+	 */
+	public static long substreamSeed(long masterSeed, long index) {
+		if (index<0 || index>0xffffffffL) throw new IllegalArgumentException("Substream index "+index+" is outside [0,2^32)");
+		long key = mix(masterSeed);
+		int x = (int)index ^ (int)key;
+		x += (int)(key>>>32);
+		// murmur3 finaliser: a bijection on ints
+		x ^= x>>>16;
+		x *= 0x85ebca6b;
+		x ^= x>>>13;
+		x *= 0xc2b2ae35;
+		x ^= x>>>16;
+		return x & 0xffffffffL;
+	}
+
+	/**
+	 * @return generator for substream 'index' of the master seed (see substreamSeed)
+	 */
+	public static ExtRandom substream(long masterSeed, long index) {
+		return new ExtRandom(substreamSeed(masterSeed, index));
+	}
+
+	/**
+	 * @return a new generator, seeded from the next output of this one
+	 */
+	public ExtRandom split() {
+		seedTest();
+		return new ExtRandom(mix(nextLong()));
+	}
+
+	// SplitMix64 finaliser
+	private static long mix(long z) {
+		z = (z ^ (z>>>30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z>>>27)) * 0x94D049BB133111EBL;
+		return z ^ (z>>>31);
+	}
+
 	/**
 	 * If ALLOW_UNSEEDED is false, causes use of unseeded RNG to throw an exception.
 	 */
@@ -97,4 +197,122 @@ public class ExtRandom extends MersenneTwisterFast {
 		shuffleSubset(0,list.size(), list);
 	}
 
+	/**
+	 * Fills dest with uniform random numbers in [0,1)
+	 */
+	public final void nextDoubles(double[] dest) {
+		seedTest();
+		for (int i=0; i<dest.length; i++) dest[i] = nextDouble();
+	}
+
+	/**
+	 * @return exponentially distributed random number with mean 1 (ziggurat method)
+	 */
+	public final double nextStandardExponential() {
+		seedTest();
+		return exponential();
+	}
+
+	/**
+	 * Fills dest with exponentially distributed random numbers of mean mu
+	 */
+	public final void nextExponentials(double[] dest, double mu) {
+		seedTest();
+		for (int i=0; i<dest.length; i++) dest[i] = exponential()*mu;
+	}
+
+	/**
+	 * @return standard normal random number (ziggurat method)
+	 */
+	public final double nextNormal() {
+		seedTest();
+		return normal();
+	}
+
+	/**
+	 * Fills dest with normally distributed random numbers
+	 */
+	public final void nextNormals(double[] dest, double mean, double sd) {
+		seedTest();
+		for (int i=0; i<dest.length; i++) dest[i] = mean+sd*normal();
+	}
+
+	/**
+	 * @return gamma distributed random number
+	 * @param shape must be positive
+	 * @param scale mean is shape*scale
+	 */
+	public final double nextGamma(double shape, double scale) {
+		seedTest();
+		if (!(shape>0)) throw new IllegalArgumentException("Gamma shape must be positive");
+		return gamma(shape)*scale;
+	}
+
+	/**
+	 * Fills dest with gamma distributed random numbers
+	 */
+	public final void nextGammas(double[] dest, double shape, double scale) {
+		seedTest();
+		if (!(shape>0)) throw new IllegalArgumentException("Gamma shape must be positive");
+		for (int i=0; i<dest.length; i++) dest[i] = gamma(shape)*scale;
+	}
+
+	private double exponential() {
+		long jz = nextInt() & 0xffffffffL;
+		int iz = (int)(jz & 255);
+		if (jz<KE[iz]) return jz*WE[iz];
+		for (;;) {
+			if (iz==0) return EXP_R-Math.log(1-nextDouble());
+			double x = jz*WE[iz];
+			if (FE[iz]+nextDouble()*(FE[iz-1]-FE[iz]) < Math.exp(-x)) return x;
+			jz = nextInt() & 0xffffffffL;
+			iz = (int)(jz & 255);
+			if (jz<KE[iz]) return jz*WE[iz];
+		}
+	}
+
+	private double normal() {
+		int hz = nextInt();
+		int iz = hz & 127;
+		if (Math.abs(hz)<KN[iz]) return hz*WN[iz];
+		for (;;) {
+			if (iz==0) {
+				// from the tail, beyond NORMAL_R
+				double x, y;
+				do {
+					x = -Math.log(1-nextDouble())/NORMAL_R;
+					y = -Math.log(1-nextDouble());
+				} while (y+y<x*x);
+				return (hz>0) ? NORMAL_R+x : -NORMAL_R-x;
+			}
+			double x = hz*WN[iz];
+			if (FN[iz]+nextDouble()*(FN[iz-1]-FN[iz]) < Math.exp(-.5*x*x)) return x;
+			hz = nextInt();
+			iz = hz & 127;
+			if (Math.abs(hz)<KN[iz]) return hz*WN[iz];
+		}
+	}
+
+	// Marsaglia & Tsang, with scale 1
+	private double gamma(double shape) {
+		if (shape<1) {
+			// boost: gamma(a) = gamma(a+1)*U^(1/a)
+			return gamma(shape+1)*Math.pow(1-nextDouble(), 1/shape);
+		}
+		double d = shape-1./3.;
+		double c = 1/Math.sqrt(9*d);
+		for (;;) {
+			double x, v;
+			do {
+				x = normal();
+				v = 1+c*x;
+			} while (v<=0);
+			v = v*v*v;
+			double u = 1-nextDouble();
+			double x2 = x*x;
+			if (u<1-0.0331*x2*x2) return d*v;
+			if (Math.log(u)<0.5*x2+d*(1-v+Math.log(v))) return d*v;
+		}
+	}
+
 }
@@ -0,0 +1,285 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import palExtensions.Quartet.Topology;
+import palExtensions.QuadrupleEnumerator.QuadrupleView;
+
+/**
+ * Infers quartets from a distance matrix by the four point condition, in bulk.
+ * As Quadruple.whichQuartet, the quartet with the smallest sum d(a,b)+d(c,d) is chosen, but
+ * it is unresolved if the second smallest sum is within a tie tolerance of it, and each quartet
+ * gets a weight: half the gap between the two smallest sums (which, for an additive matrix, is
+ * the length of the quartet's internal edge.) Unresolved quartets have weight 0.
+ *
+ * Distances are read from a flat row-major array (double or float) rather than through
+ * DistanceMatrix.getDistance. Quadruples are scored in parallel, in blocks of consecutive ranks.
+ */
+public class FourPointInference {
+	private static final int BLOCK_BITS = 16; // quadruples per fork/join task = 2^16
+	private final IdGroup idGroup;
+	private final int n;
+	private final double[] doubles; // one of these holds the matrix
+	private final float[] floats;
+	private final QuadrupleEnumerator enumerator;
+	private double tieTolerance = 0;
+
+	/**
+	 * @param idGroup the taxa, in matrix order
+	 * @param distances n*n matrix in row-major order: d(i,j) = distances[i*n+j]
+	 */
+	public FourPointInference(IdGroup idGroup, double[] distances) {
+		this(idGroup, distances, null);
+	}
+
+	/**
+	 * @param idGroup the taxa, in matrix order
+	 * @param distances n*n matrix in row-major order: d(i,j) = distances[i*n+j]
+	 */
+	public FourPointInference(IdGroup idGroup, float[] distances) {
+		this(idGroup, null, distances);
+	}
+
+	/**
+	 * Copies the distance matrix into a flat array.
+	 */
+	public FourPointInference(DistanceMatrix dist) {
+		this(dist, flatten(dist), null);
+	}
+
+	private FourPointInference(IdGroup idGroup, double[] doubles, float[] floats) {
+		this.idGroup = idGroup;
+		n = idGroup.getIdCount();
+		int length = (doubles!=null) ? doubles.length : floats.length;
+		if (length!=(long)n*n) throw new IllegalArgumentException("Distance array must have n*n entries");
+		this.doubles = doubles;
+		this.floats = floats;
+		enumerator = new QuadrupleEnumerator(idGroup);
+	}
+
+	private static double[] flatten(DistanceMatrix dist) {
+		int n = dist.getIdCount();
+		double[] flat = new double[n*n];
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<n; j++) flat[i*n+j] = dist.getDistance(i, j);
+		}
+		return flat;
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public QuadrupleEnumerator getEnumerator() {
+		return enumerator;
+	}
+
+	public double getTieTolerance() {
+		return tieTolerance;
+	}
+
+	/**
+	 * A quartet is unresolved if its two smallest four point sums differ by at most this.
+	 * Default 0, i.e. only exact ties.
+	 */
+	public void setTieTolerance(double tieTolerance) {
+		if (tieTolerance<0) throw new IllegalArgumentException("Tolerance can't be negative");
+		this.tieTolerance = tieTolerance;
+	}
+
+	private double distance(int i, int j) {
+		return (doubles!=null) ? doubles[i*n+j] : floats[i*n+j];
+	}
+
+	/*
+	 * Scores a quadruple: returns the topology, and sets weight[0].
+	 */
+	private Topology score(int i, int j, int k, int l, float[] weight) {
+		double s1 = distance(i,j)+distance(k,l); // P01V23
+		double s2 = distance(i,k)+distance(j,l); // P02V13
+		double s3 = distance(i,l)+distance(j,k); // P03V12
+		Topology best;
+		double min, second;
+		if (s1<=s2 && s1<=s3) {
+			best = Topology.P01V23;
+			min = s1;
+			second = Math.min(s2, s3);
+		} else if (s2<=s3) {
+			best = Topology.P02V13;
+			min = s2;
+			second = Math.min(s1, s3);
+		} else {
+			best = Topology.P03V12;
+			min = s3;
+			second = Math.min(s1, s2);
+		}
+		if (second-min<=tieTolerance) {
+			weight[0] = 0;
+			return Topology.UNRESOLVED;
+		}
+		weight[0] = (float)((second-min)/2);
+		return best;
+	}
+
+	/**
+	 * @return the quartet topology on taxa i<j<k<l
+	 */
+	public Topology infer(int i, int j, int k, int l) {
+		enumerator.rank(i, j, k, l); // checks the indices
+		return score(i, j, k, l, new float[1]);
+	}
+
+	public WeightedQuartetStore inferAll() {
+		return inferAll(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Scores every quadruple, in parallel.
+	 * @return a complete store (entry index = quadruple rank)
+	 */
+	public WeightedQuartetStore inferAll(ForkJoinPool pool) {
+		WeightedQuartetStore store = new WeightedQuartetStore(enumerator, enumerator.count(), true);
+		pool.invoke(new AllTask(store, 0, enumerator.count()));
+		return store;
+	}
+
+	public WeightedQuartetStore inferSample(double fraction, long seed) {
+		return inferSample(fraction, seed, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Scores a random subset of quadruples, each included independently with probability
+	 * 'fraction'. The subset depends only on the seed, not on how work was divided between threads.
+	 * @return store of the sampled quartets, in increasing order of rank
+	 */
+	public WeightedQuartetStore inferSample(double fraction, long seed, ForkJoinPool pool) {
+		if (!(fraction>0 && fraction<=1)) throw new IllegalArgumentException("Fraction must be in (0,1]");
+		long count = enumerator.count();
+		int nBlocks = (int)((count+(1L<<BLOCK_BITS)-1)>>>BLOCK_BITS);
+		long[][] blockRanks = new long[nBlocks][];
+		pool.invoke(new SampleTask(blockRanks, fraction, seed, 0, nBlocks));
+		long total = 0;
+		for (long[] ranks : blockRanks) total += ranks.length;
+		WeightedQuartetStore store = new WeightedQuartetStore(enumerator, total, false);
+		pool.invoke(new StoreSampleTask(store, blockRanks, 0, nBlocks, 0));
+		return store;
+	}
+
+	/*
+	 * Scores ranks [from,to) into a complete store
+	 */
+	private class AllTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final WeightedQuartetStore store;
+		private final long from, to;
+		AllTask(WeightedQuartetStore store, long from, long to) {
+			this.store = store;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>(1L<<BLOCK_BITS)) {
+				long mid = from + (Math.max(1, (to-from)>>>(BLOCK_BITS+1))<<BLOCK_BITS); // keep blocks aligned
+				invokeAll(new AllTask(store, from, mid), new AllTask(store, mid, to));
+				return;
+			}
+			final float[] weight = new float[1];
+			Spliterator<QuadrupleView> quads = enumerator.spliterator(from, to);
+			quads.forEachRemaining(new Consumer<QuadrupleView>() {
+				public void accept(QuadrupleView quad) {
+					Topology topology = score(quad.getIndex(0), quad.getIndex(1), quad.getIndex(2), quad.getIndex(3), weight);
+					store.set(quad.getRank(), quad.getRank(), topology, weight[0]);
+				}
+			});
+		}
+	}
+
+	/*
+	 * Chooses the sampled ranks in blocks [from,to). Each block uses its own substream of
+	 * the seed (ExtRandom.substream), and skips geometrically distributed
+	 * numbers of quadruples between samples.
+	 */
+	private class SampleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long[][] blockRanks;
+		private final double fraction;
+		private final long seed;
+		private final int from, to;
+		SampleTask(long[][] blockRanks, double fraction, long seed, int from, int to) {
+			this.blockRanks = blockRanks;
+			this.fraction = fraction;
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>1) {
+				int mid = (from+to)>>>1;
+				invokeAll(new SampleTask(blockRanks, fraction, seed, from, mid), new SampleTask(blockRanks, fraction, seed, mid, to));
+				return;
+			}
+			for (int block=from; block<to; block++) {
+				long start = (long)block<<BLOCK_BITS;
+				long end = Math.min(start+(1L<<BLOCK_BITS), enumerator.count());
+				ExtRandom rng = ExtRandom.substream(seed, block);
+				long[] ranks = new long[16];
+				int nRanks = 0;
+				double logSkip = Math.log1p(-fraction); // not log(1-fraction), which is 0 for tiny fractions
+				for (long rank=start; ; rank++) {
+					if (fraction<1) {
+						// the skip may be huge (or infinite), so limit it before converting to long
+						double skip = Math.floor(Math.log(1-rng.nextDouble())/logSkip);
+						rank += (long)Math.min(skip, end-rank);
+					}
+					if (rank>=end) break;
+					if (nRanks==ranks.length) ranks = Arrays.copyOf(ranks, 2*nRanks);
+					ranks[nRanks++] = rank;
+				}
+				blockRanks[block] = Arrays.copyOf(ranks, nRanks);
+			}
+		}
+	}
+
+	/*
+	 * Scores sampled blocks [from,to), whose first entry goes at 'index' in the store.
+	 */
+	private class StoreSampleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final WeightedQuartetStore store;
+		private final long[][] blockRanks;
+		private final int from, to;
+		private final long index;
+		StoreSampleTask(WeightedQuartetStore store, long[][] blockRanks, int from, int to, long index) {
+			this.store = store;
+			this.blockRanks = blockRanks;
+			this.from = from;
+			this.to = to;
+			this.index = index;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>1) {
+				int mid = (from+to)>>>1;
+				long midIndex = index;
+				for (int block=from; block<mid; block++) midIndex += blockRanks[block].length;
+				invokeAll(new StoreSampleTask(store, blockRanks, from, mid, index), new StoreSampleTask(store, blockRanks, mid, to, midIndex));
+				return;
+			}
+			int[] quad = new int[4];
+			float[] weight = new float[1];
+			long next = index;
+			for (long rank : blockRanks[from]) {
+				enumerator.unrank(rank, quad);
+				store.set(next++, rank, score(quad[0], quad[1], quad[2], quad[3], weight), weight[0]);
+			}
+		}
+	}
+}
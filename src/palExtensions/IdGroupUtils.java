@@ -1,7 +1,11 @@
 package palExtensions;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import pal.misc.IdGroup;
@@ -9,6 +13,18 @@ import pal.misc.Identifier;
 import pal.misc.SimpleIdGroup;
 
 public class IdGroupUtils {
+	private static final int PERMUTATION_CACHE_SIZE = 64;
+	// Access ordered, so iteration order is least recently used first. Guarded by its own lock.
+	private static final LinkedHashMap<GroupPair,int[]> permutationCache = new LinkedHashMap<GroupPair,int[]>(2*PERMUTATION_CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<GroupPair,int[]> eldest) {
+			return size()>PERMUTATION_CACHE_SIZE;
+		}
+	};
+	private static long permutationCacheHits = 0;
+	private static long permutationCacheMisses = 0;
+
 	// public static boolean equivalent(IdGroup group1, IdGroup group2) // same labels in same order
 	/**
 	 * Return int[] perm such that reorder[perm[i]]=template[i] (where '=' means identifiers have same label.)
@@ -21,6 +37,10 @@ public class IdGroupUtils {
 		int n=template.getIdCount();
 		if (reorder.getIdCount() != n) throw new IllegalArgumentException("IdGroups have different length");
 		int[] perm = new int[n];
+		if (template==reorder) {
+			for (int i=0; i<n; i++) perm[i]=i;
+			return perm;
+		}
 		for (int i=0; i<n; i++) {
 			int x = reorder.whichIdNumber(template.getIdentifier(i).toString());
 			if (x==-1) throw new IllegalArgumentException("IdGroups have differing label sets");
@@ -29,11 +49,107 @@ public class IdGroupUtils {
 		return perm;
 	}
 	
+	/**
+	 * As permuteToOrder, but remembers the results for the most recently used pairs of IdGroups
+	 * (identified by reference, not content), so building many splits from one IdGroup does not
+	 * recompute the permutation each time. Thread safe.
+	 *
+	 * The IdGroups are held by weak references, so the cache does not keep them alive. A cached
+	 * permutation is checked against the groups' current labels before use (O(n), against
+	 * O(n^2) to recompute it for most IdGroups), so groups which have been modified since get a
+	 * fresh permutation. The groups must not be modified during the call. The returned array is
+	 * shared, so must not be modified.
+	 */
+	public static int[] permuteToOrderCached(IdGroup template, IdGroup reorder) {
+		GroupPair key = new GroupPair(template, reorder);
+		int[] cached;
+		synchronized (permutationCache) {
+			cached = permutationCache.get(key);
+		}
+		if (cached!=null && isPermutation(cached, template, reorder)) {
+			synchronized (permutationCache) {
+				permutationCacheHits++;
+			}
+			return cached;
+		}
+		synchronized (permutationCache) {
+			permutationCacheMisses++;
+		}
+		int[] perm = permuteToOrder(template, reorder); // outside the lock, as it is O(n)
+		synchronized (permutationCache) {
+			permutationCache.put(key, perm);
+		}
+		return perm;
+	}
+
+	public static long getPermutationCacheHits() {
+		synchronized (permutationCache) {
+			return permutationCacheHits;
+		}
+	}
+
+	public static long getPermutationCacheMisses() {
+		synchronized (permutationCache) {
+			return permutationCacheMisses;
+		}
+	}
+
+	/**
+	 * Empties the permutation cache and resets its counters
+	 */
+	public static void clearPermutationCache() {
+		synchronized (permutationCache) {
+			permutationCache.clear();
+			permutationCacheHits = 0;
+			permutationCacheMisses = 0;
+		}
+	}
+
+	// true if reorder[perm[i]] and template[i] have the same label for all i
+	private static boolean isPermutation(int[] perm, IdGroup template, IdGroup reorder) {
+		if (template instanceof TaxonSet && reorder instanceof TaxonSet) return true; // immutable
+		int n = perm.length;
+		if (template.getIdCount()!=n || reorder.getIdCount()!=n) return false;
+		for (int i=0; i<n; i++) {
+			Identifier a = template.getIdentifier(i);
+			Identifier b = reorder.getIdentifier(perm[i]);
+			if (a!=b && !a.toString().equals(b.toString())) return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Key for the permutation cache: a pair of IdGroups, compared by reference and weakly held.
+	 * Entries whose groups have been collected never match again, and drop out of the LRU cache.
+	 */
+	private static class GroupPair {
+		private final WeakReference<IdGroup> template, reorder;
+		private final int hash;
+		GroupPair(IdGroup template, IdGroup reorder) {
+			this.template = new WeakReference<IdGroup>(template);
+			this.reorder = new WeakReference<IdGroup>(reorder);
+			hash = 31*System.identityHashCode(template) + System.identityHashCode(reorder);
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof GroupPair)) return false;
+			GroupPair other = (GroupPair)o;
+			IdGroup t = template.get();
+			IdGroup r = reorder.get();
+			return t!=null && r!=null && t==other.template.get() && r==other.reorder.get();
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
 	/**
 	 * Returns true if the Identifiers are in lexographical order.
 	 * @return
 	 */
 	public static boolean isOrdered(IdGroup group) {
+		if (group instanceof TaxonSet) return true;
 		boolean ordered = true;
 		for (int i=1; i<group.getIdCount(); i++) {
 			if (group.getIdentifier(i-1).toString().compareTo(group.getIdentifier(i).toString())>0) {
@@ -68,6 +184,7 @@ public class IdGroupUtils {
 	 */
 	public static boolean equals(IdGroup group1, IdGroup group2) {
 		if (group1 == group2) return true;
+		if (group1 instanceof TaxonSet && group2 instanceof TaxonSet) return false; // interned
 		if (group1.getIdCount()!=group2.getIdCount()) return false;
 		for (int i=0; i<group1.getIdCount(); i++) {
 			if (group1.getIdentifier(i)!=group2.getIdentifier(i) && 
@@ -77,6 +194,19 @@ public class IdGroupUtils {
 		return true;
 	}
 
+	/**
+	 * A hash code consistent with equals(IdGroup, IdGroup): groups with the same labels in the
+	 * same order have the same hash code. O(1) for a TaxonSet, otherwise O(number of taxa).
+	 */
+	public static int hashCode(IdGroup group) {
+		if (group instanceof TaxonSet) return group.hashCode();
+		int hash = 1;
+		for (int i=0; i<group.getIdCount(); i++) {
+			hash = 31*hash + group.getIdentifier(i).toString().hashCode();
+		}
+		return hash;
+	}
+
 	
 	/**
 	 * Return 'true' if group1 and group2 contain the same labels, possibly in different order
@@ -86,6 +216,7 @@ public class IdGroupUtils {
 	 */
 	public static boolean sameLabels(IdGroup group1, IdGroup group2) {
 		if (group1 == group2) return true;
+		if (group1 instanceof TaxonSet && group2 instanceof TaxonSet) return false; // interned
 		int nLabels = group1.getIdCount();
 		if (group2.getIdCount()!=nLabels) return false;
 		Set<String> labels1 = new HashSet<String>(nLabels);
@@ -112,7 +243,11 @@ public class IdGroupUtils {
 		return new SimpleIdGroup(ids);
 	}
 
+	/**
+	 * Fast if supergroup is a TaxonSet (hashed whichIdNumber)
+	 */
 	public static boolean isSubset(IdGroup subgroup, IdGroup supergroup) {
+		if (subgroup == supergroup) return true;
 		boolean subset = true;
 		for (int i=0; subset && i<subgroup.getIdCount(); i++) {
 			// whichIdNumber returns negative value if name is not found
@@ -121,6 +256,21 @@ public class IdGroupUtils {
 		return subset;
 	}
 	
+	/**
+	 * Map from label to position in the group, for repeated lookups which would be
+	 * slow by whichIdNumber.
+	 * @param group
+	 * @return
+	 */
+	public static HashMap<String,Integer> indexMap(IdGroup group) {
+		int n = group.getIdCount();
+		HashMap<String,Integer> map = new HashMap<String,Integer>(2*n);
+		for (int i=0; i<n; i++) {
+			map.put(group.getIdentifier(i).getName(), i);
+		}
+		return map;
+	}
+	
 	public static String[] toStringArray(IdGroup group) {
 		int n= group.getIdCount();
 		String[] names = new String[n];
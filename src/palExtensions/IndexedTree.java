@@ -0,0 +1,98 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import pal.tree.Node;
+import pal.tree.Tree;
+
+/**
+ * A snapshot of a tree's shape as int arrays, for algorithms which visit every
+ * node many times. Nodes are numbered in preorder (so the root is 0, every node's
+ * parent has a smaller number, and each subtree is a contiguous range of numbers.)
+ */
+class IndexedTree {
+	final int nNodes;
+	final int nTaxa;
+	final int[] parent;     // -1 for the root
+	final int[][] children;
+	final int[] taxon;      // taxon index of each leaf, -1 for internal nodes
+	final int[] leafNode;   // node of each taxon
+	final int[] leafCount;  // number of leaves in each subtree
+	final int[] extent;     // number of nodes in each subtree
+
+	/**
+	 * @param tree
+	 * @param taxonIndex map from leaf label to taxon index 0..nTaxa-1.
+	 * @param nTaxa every taxon must label exactly one leaf.
+	 */
+	IndexedTree(Tree tree, Map<String,Integer> taxonIndex, int nTaxa) {
+		this.nTaxa = nTaxa;
+		nNodes = tree.getExternalNodeCount()+tree.getInternalNodeCount();
+		parent = new int[nNodes];
+		children = new int[nNodes][];
+		taxon = new int[nNodes];
+		leafNode = new int[nTaxa];
+		leafCount = new int[nNodes];
+		extent = new int[nNodes];
+		Arrays.fill(leafNode, -1);
+
+		// Preorder, numbering nodes as they are popped from an explicit stack
+		Node[] stackNode = new Node[nNodes];
+		int[] stackParent = new int[nNodes];
+		int[] stackPosition = new int[nNodes]; // position among parent's children
+		int top = 0;
+		stackNode[0] = tree.getRoot();
+		stackParent[0] = -1;
+		int next = 0;
+		while (top>=0) {
+			Node node = stackNode[top];
+			int p = stackParent[top];
+			int position = stackPosition[top];
+			top--;
+			int x = next++;
+			parent[x] = p;
+			if (p>=0) children[p][position] = x;
+			int nChild = node.getChildCount();
+			children[x] = new int[nChild];
+			if (nChild==0) {
+				String name = node.getIdentifier().getName();
+				Integer index = taxonIndex.get(name);
+				if (index==null) throw new IllegalArgumentException("INCOMPATIBLE IDENTIFIER ("+name+")");
+				if (leafNode[index]>=0) throw new IllegalArgumentException("Tree has two leaves labelled "+name);
+				taxon[x] = index;
+				leafNode[index] = x;
+			} else {
+				taxon[x] = -1;
+			}
+			for (int i=nChild-1; i>=0; i--) {
+				top++;
+				stackNode[top] = node.getChild(i);
+				stackParent[top] = x;
+				stackPosition[top] = i;
+			}
+		}
+		for (int x=nNodes-1; x>=0; x--) {
+			if (taxon[x]>=0) leafCount[x] = 1;
+			extent[x]++;
+			if (parent[x]>=0) {
+				leafCount[parent[x]] += leafCount[x];
+				extent[parent[x]] += extent[x];
+			}
+		}
+		for (int t=0; t<nTaxa; t++) {
+			if (leafNode[t]<0) throw new IllegalArgumentException("Tree is missing a taxon");
+		}
+	}
+
+	boolean isLeaf(int x) {
+		return taxon[x]>=0;
+	}
+
+	/**
+	 * @return true if x is y or an ancestor of y
+	 */
+	boolean contains(int x, int y) {
+		return x<=y && y<x+extent[x];
+	}
+}
@@ -0,0 +1,154 @@
+package palExtensions;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+
+/**
+ * Partial split for universal taxon sets of any size (intended for more than 64 taxa.)
+ *
+ * Both the split and the mask of taxa present in the partial split are stored as
+ * word arrays indexed by position in the universal IdGroup (see SplitWordUtils.)
+ */
+public class LongPartialSplit extends PartialSplit {
+	private static final long serialVersionUID = -4452830593604931227L;
+	private long[] encoded; // bits indexed by universal taxon number. Always a subset of mask.
+	private long[] mask; // 1 bits are in the partial split, 0 are excluded
+	int[] localToGlobal; // index = taxon number within partial split, value = taxon number in universal set
+
+	public LongPartialSplit(IdGroup idGroup, boolean[] split, IdGroup universalIdGroup) {
+		super(idGroup, universalIdGroup);
+		if (split.length != nTaxa) throw new IllegalArgumentException("Split array has wrong length");
+		setMask();
+		setSplit(idGroup, split);
+	}
+
+	/**
+	 * Can be used to ensure multiple splits have the SAME idGroup object, rather than just equivalent ones.
+	 * newGroup must be sorted in alphabetic order, and must have same taxon set
+	 * as existing idGroup.
+	 */
+	@Override
+	public void setIdGroup(IdGroup newGroup) {
+		super.setIdGroup(newGroup);
+		setMask();
+	}
+
+	private void setMask() {
+		mask = new long[SplitWordUtils.nWords(universalNTaxa)];
+		localToGlobal = new int[nTaxa];
+		for (int i=0; i<nTaxa; i++) {
+			int global = universalIdGroup.whichIdNumber(idGroup.getIdentifier(i).getName());
+			localToGlobal[i] = global;
+			SplitWordUtils.setMember(mask, 0, global);
+		}
+	}
+
+	/**
+	 * Set partial split without changing the partial split or universal taxon sets.
+	 * idOrder can have different ordering to existing partial split set, but must
+	 * have the same taxa. The permutation from idOrder is cached
+	 * (IdGroupUtils.permuteToOrderCached), keyed on the idOrder object: idOrder must not
+	 * be modified while this runs.
+	 * @param split
+	 */
+	public void setSplit(IdGroup idOrder, boolean[] split) {
+		int[] perm = IdGroupUtils.isOrdered(idOrder) ? null : IdGroupUtils.permuteToOrderCached(idGroup, idOrder);
+		encoded = new long[mask.length];
+		// Normalise so that local taxon 0 is a zero bit.
+		boolean flip = split[perm==null ? 0 : perm[0]];
+		for (int i=1; i<nTaxa; i++) {
+			if (split[perm==null ? i : perm[i]]^flip) SplitWordUtils.setMember(encoded, 0, localToGlobal[i]);
+		}
+	}
+
+	/**
+	 * n = index into universal group
+	 */
+	@Override
+	public boolean isInPartial(int n) {
+		return SplitWordUtils.isMember(mask, 0, n);
+	}
+
+	/**
+	 * i = index into partial split group
+	 */
+	@Override
+	protected boolean isMember(int i) {
+		return SplitWordUtils.isMember(encoded, 0, localToGlobal[i]);
+	}
+
+	public boolean equals(LongPartialSplit other) {
+		if (!IdGroupUtils.equals(universalIdGroup, other.universalIdGroup))
+			throw new IllegalArgumentException("Attempting to compare splits on different universal taxa sets");
+		int n = mask.length;
+		return SplitWordUtils.equals(mask, 0, other.mask, 0, n) && SplitWordUtils.equals(encoded, 0, other.encoded, 0, n);
+	}
+
+	@Override
+	public boolean equals(Split other) {
+		if (other instanceof LongPartialSplit) {
+			return equals((LongPartialSplit)other);
+		} else {
+			throw new RuntimeException("Comparing LongPartialSplit to other Split classes not yet implemented");
+		}
+	}
+
+	/**
+	 * Two partial splits are compatible if they are compatible when restricted
+	 * to the taxa they have in common.
+	 */
+	public boolean compatible(LongPartialSplit other) {
+		if (!IdGroupUtils.equals(universalIdGroup, other.universalIdGroup))
+			throw new IllegalArgumentException("Attempting to compare splits on different universal taxa sets");
+		boolean q11 = false, q10 = false, q01 = false, q00 = false;
+		for (int w=0; w<mask.length; w++) {
+			long common = mask[w] & other.mask[w];
+			long x = encoded[w];
+			long y = other.encoded[w];
+			q11 = q11 || (common &  x &  y)!=0;
+			q10 = q10 || (common &  x & ~y)!=0;
+			q01 = q01 || (common & ~x &  y)!=0;
+			q00 = q00 || (common & ~x & ~y)!=0;
+			if (q11 && q10 && q01 && q00) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean compatible(Split other) {
+		if (other instanceof LongPartialSplit) {
+			return compatible((LongPartialSplit)other);
+		} else {
+			throw new RuntimeException("Comparing LongPartialSplit to other Split classes not yet implemented");
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		int n = mask.length;
+		return idGroupHashCode() ^ SplitWordUtils.hashCode(mask, 0, n) ^ (31*SplitWordUtils.hashCode(encoded, 0, n));
+	}
+
+	@Override
+	public int sizeOfSmaller() {
+		int bitCount = SplitWordUtils.bitCount(encoded, 0, encoded.length);
+		return (bitCount*2>nTaxa) ? nTaxa - bitCount : bitCount;
+	}
+
+	@Override
+	public Set<Identifier> smallerSubset() {
+		Set<Identifier> set = new HashSet<Identifier>(nTaxa/2);
+		int bitCount = SplitWordUtils.bitCount(encoded, 0, encoded.length);
+		// if there are more one bits than zero bits, the zero bits are the smaller subset
+		boolean wanted = (bitCount*2<=nTaxa);
+		for (int i=0; i<nTaxa; i++) {
+			if (isMember(i)==wanted) {
+				set.add(idGroup.getIdentifier(i));
+			}
+		}
+		return set;
+	}
+}
@@ -0,0 +1,134 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+
+/**
+ * Stores a split on a taxon set of any size (intended for more than 64 taxa,
+ * for which SmallSplit cannot be used.)
+ *
+ * The split is held as an array of 64 bit words, as described in SplitWordUtils,
+ * and compatibility, equality etc. are tested a word at a time.
+ *
+ */
+public class LongSplit extends Split {
+	private static final long serialVersionUID = 3208497650826341417L;
+	/*
+	 * Taxon i is bit i%64 of word i/64. Normalised so that Identifier 0 is a 0 bit.
+	 */
+	private long[] encoded;
+
+	public LongSplit(IdGroup idGroup, boolean[] split) {
+		super(idGroup);
+		if (split.length != nTaxa) throw new IllegalArgumentException("Split array has wrong length");
+		setSplit(split,idGroup);
+	}
+
+	/**
+	 * From normalised words in SplitWordUtils layout. idGroup must be ordered.
+	 */
+	LongSplit(IdGroup idGroup, long[] words) {
+		super(idGroup);
+		if (this.idGroup != idGroup) throw new IllegalArgumentException("IdGroup must be ordered");
+		if (words.length != SplitWordUtils.nWords(nTaxa)) throw new IllegalArgumentException("Split array has wrong length");
+		encoded = words.clone();
+	}
+
+	/**
+	 * Set the split from a boolean array in the case where the order of the taxa in the array
+	 * might not be orthographic, hence some reordering is necessary.
+	 * The permutation from idOrder is cached (IdGroupUtils.permuteToOrderCached), keyed on the
+	 * idOrder object: idOrder must not be modified while this runs.
+	 */
+	public void setSplit(boolean[] split, IdGroup idOrder) {
+		if (IdGroupUtils.isOrdered(idOrder)) {
+			encoded = SplitWordUtils.fromBooleanArray(split);
+		} else {
+			encoded = SplitWordUtils.fromBooleanArray(split, IdGroupUtils.permuteToOrderCached(idGroup, idOrder));
+		}
+	}
+
+	public boolean equals(LongSplit other) {
+		return IdGroupUtils.equals(this, other) && Arrays.equals(encoded, other.encoded);
+	}
+
+	@Override
+	public boolean equals(Split other) {
+		if (other instanceof LongSplit) {
+			return equals((LongSplit)other);
+		} else {
+			return Split.equals(this, other);
+		}
+	}
+
+	/**
+	 * Can throw IllegalArgumentExceptions if IdGroups of the splits do not have matching labels.
+	 */
+	public boolean compatible(LongSplit other) {
+		if (!IdGroupUtils.equals(this.idGroup, other.idGroup))
+			throw new IllegalArgumentException("Attempting to compare splits on different taxa sets");
+		return SplitWordUtils.compatible(encoded, 0, other.encoded, 0, encoded.length);
+	}
+
+	@Override
+	public boolean compatible(Split other) {
+		if (other instanceof LongSplit) {
+			return compatible((LongSplit)other);
+		} else {
+			// Can throw IllegalArgumentException
+			return Split.compatible(this, other);
+		}
+	}
+
+	@Override
+	protected boolean isMember(int i) {
+		if (i<0 || i>=nTaxa) throw new IllegalArgumentException("Illegal taxon index");
+		return SplitWordUtils.isMember(encoded, 0, i);
+	}
+
+	@Override
+	public boolean[] getBooleanArray() {
+		boolean[] array = new boolean[nTaxa];
+		for (int i=0; i<nTaxa; i++) array[i] = SplitWordUtils.isMember(encoded, 0, i);
+		return array;
+	}
+
+	@Override
+	public long[] getLongArray() {
+		return encoded.clone();
+	}
+
+	/**
+	 * As for SmallSplit, consistent with equals(Object). On up to 64 taxa, a LongSplit may equal
+	 * a SmallSplit, so uses the SmallSplit hash.
+	 */
+	@Override
+	public int hashCode() {
+		if (nTaxa<=64) return SmallSplit.hashCode(idGroupHashCode(), (encoded.length==0) ? 0 : encoded[0], nTaxa);
+		return idGroupHashCode() ^ SplitWordUtils.hashCode(encoded, 0, encoded.length);
+	}
+
+	@Override
+	public int sizeOfSmaller() {
+		int bitCount = SplitWordUtils.bitCount(encoded, 0, encoded.length);
+		return (bitCount*2>nTaxa) ? nTaxa - bitCount : bitCount;
+	}
+
+	@Override
+	public Set<Identifier> smallerSubset() {
+		Set<Identifier> set = new HashSet<Identifier>(nTaxa/2);
+		int bitCount = SplitWordUtils.bitCount(encoded, 0, encoded.length);
+		// if there are more one bits than zero bits, the zero bits are the smaller subset
+		boolean wanted = (bitCount*2<=nTaxa);
+		for (int i=0; i<nTaxa; i++) {
+			if (SplitWordUtils.isMember(encoded, 0, i)==wanted) {
+				set.add(idGroup.getIdentifier(i));
+			}
+		}
+		return set;
+	}
+}
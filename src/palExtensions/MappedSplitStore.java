@@ -0,0 +1,437 @@
+package palExtensions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.misc.IdGroup;
+
+/**
+ * An append-only store of splits on one taxon set, held in a memory-mapped file rather than on
+ * the heap, for split collections too large for a NeoSplitSystem or SplitMatrix (e.g. every split
+ * of every tree from a long MCMC run.) Each split is a fixed-width row of normalised words, in the
+ * layout described in SplitWordUtils (so one word for up to 64 taxa.) The file persists: a store
+ * may be reopened, read or appended to in a later run.
+ *
+ * Frequency and compatibility scans (count, countCompatible, getSplitCounts) run in parallel
+ * directly on the mapped rows, without making Split objects.
+ *
+ * File format (little-endian): the header is the magic number, format version (int),
+ * number of taxa (int), number of rows (long), offset of the first row (int, a multiple of 8),
+ * an unused int, then each taxon name as a length (int) and UTF-8 bytes. Rows follow from the
+ * offset, each of nWords longs. The file is mapped in chunks of up to 1GB. A writable store
+ * extends it a whole chunk at a time while open, and truncates it to the rows present on close.
+ *
+ * Appending is not thread safe, and must not run concurrently with reads or scans. Concurrent
+ * reads and scans are fine.
+ */
+public class MappedSplitStore implements Closeable {
+	private static final long MAGIC = 0x5449_4c50_5353_4c50L; // "PLSSPLIT"
+	private static final int VERSION = 1;
+	private static final int ROWS_OFFSET = 16; // position of the number of rows in the header
+	private static final long MAX_CHUNK_BYTES = 1L<<30;
+	private static final long TASK_ROWS = 1<<16; // rows scanned per fork/join task
+
+	private final File file;
+	private final FileChannel channel;
+	private final boolean writable;
+	private final TaxonSet idGroup;
+	private final int nTaxa;
+	private final int nWords;
+	private final long dataOffset;
+	private final int chunkRowBits; // rows per chunk = 2^chunkRowBits
+	private final MappedByteBuffer header;
+	private final List<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>();
+	private final List<LongBuffer> chunks = new ArrayList<LongBuffer>(); // views of mappings
+	private final long[] scratch;
+	private long nRows;
+	private boolean closed = false;
+
+	private MappedSplitStore(File file, FileChannel channel, boolean writable, TaxonSet idGroup, long dataOffset, long nRows) throws IOException {
+		this.file = file;
+		this.channel = channel;
+		this.writable = writable;
+		this.idGroup = idGroup;
+		this.dataOffset = dataOffset;
+		this.nRows = nRows;
+		nTaxa = idGroup.getIdCount();
+		nWords = SplitWordUtils.nWords(nTaxa);
+		scratch = new long[nWords];
+		int bits = 0;
+		while ((2L<<bits)*nWords*8<=MAX_CHUNK_BYTES) bits++;
+		chunkRowBits = bits;
+		header = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, dataOffset);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		long chunkRows = 1L<<chunkRowBits;
+		for (long first=0; first<nRows; first+=chunkRows) {
+			// a read only store maps only the rows present; a writable one maps whole chunks
+			mapChunk(writable ? chunkRows : Math.min(chunkRows, nRows-first));
+		}
+	}
+
+	/**
+	 * Creates a new, empty store (overwriting 'file' if it exists.)
+	 * @param idGroup the taxa: at least one, else IllegalArgumentException
+	 */
+	public static MappedSplitStore create(File file, IdGroup idGroup) {
+		if (idGroup.getIdCount()==0) throw new IllegalArgumentException("Split store needs at least one taxon");
+		TaxonSet taxa = TaxonSet.of(idGroup);
+		List<byte[]> names = new ArrayList<byte[]>();
+		int length = 32;
+		for (int i=0; i<taxa.getIdCount(); i++) {
+			byte[] name = taxa.getIdentifier(i).getName().getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			length += 4+name.length;
+		}
+		length = (length+7) & ~7;
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putLong(MAGIC).putInt(VERSION).putInt(taxa.getIdCount()).putLong(0).putInt(length).putInt(0);
+		for (byte[] name : names) buffer.putInt(name.length).put(name);
+		buffer.rewind();
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			while (buffer.hasRemaining()) channel.write(buffer);
+			return new MappedSplitStore(file, channel, true, taxa, length, 0);
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw new RuntimeException("Could not create split store "+file, e);
+		}
+	}
+
+	/**
+	 * Opens an existing store.
+	 * @param writable if false, the store is read only
+	 */
+	public static MappedSplitStore open(File file, boolean writable) {
+		FileChannel channel = null;
+		try {
+			channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+					: FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			ByteBuffer fixed = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, fixed, 0);
+			if (fixed.getLong(0)!=MAGIC) throw new IllegalArgumentException("Not a split store: "+file);
+			if (fixed.getInt(8)!=VERSION) throw new IllegalArgumentException("Unsupported split store version "+fixed.getInt(8)+": "+file);
+			int nTaxa = fixed.getInt(12);
+			if (nTaxa<1) throw new IllegalArgumentException("Split store has "+nTaxa+" taxa: "+file);
+			long nRows = fixed.getLong(ROWS_OFFSET);
+			int dataOffset = fixed.getInt(24);
+			ByteBuffer buffer = ByteBuffer.allocate(dataOffset-32).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, buffer, 32);
+			buffer.rewind();
+			String[] names = new String[nTaxa];
+			for (int i=0; i<nTaxa; i++) {
+				byte[] name = new byte[buffer.getInt()];
+				buffer.get(name);
+				names[i] = new String(name, StandardCharsets.UTF_8);
+			}
+			if (channel.size()<dataOffset+nRows*SplitWordUtils.nWords(nTaxa)*8) throw new IllegalArgumentException("Split store is truncated: "+file);
+			return new MappedSplitStore(file, channel, writable, TaxonSet.of(names), dataOffset, nRows);
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw new RuntimeException("Could not open split store "+file, e);
+		} catch (RuntimeException e) {
+			closeQuietly(channel);
+			throw e;
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position+buffer.position())<0) throw new IllegalArgumentException("Split store header is truncated");
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel) {
+		if (channel==null) return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// already failing
+		}
+	}
+
+	private void mapChunk(long rows) throws IOException {
+		long start = dataOffset + ((long)chunks.size()<<chunkRowBits)*nWords*8;
+		MappedByteBuffer mapping = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, start, rows*nWords*8);
+		mappings.add(mapping);
+		chunks.add(mapping.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the taxa, in the order of the bits of each row
+	 */
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	/**
+	 * @return number of words per split
+	 */
+	public int getWordCount() {
+		return nWords;
+	}
+
+	/**
+	 * @return number of splits (rows) in the store
+	 */
+	public long size() {
+		return nRows;
+	}
+
+	public boolean isWritable() {
+		return writable;
+	}
+
+	/**
+	 * Appends the split held in words[offset..offset+getWordCount()-1]. The split need not be normalised.
+	 * @return row of the new split
+	 */
+	public long append(long[] words, int offset) {
+		checkOpen();
+		if (!writable) throw new UnsupportedOperationException("Split store is read only");
+		normalise(words, offset, scratch);
+		if ((nRows>>>chunkRowBits)==chunks.size()) {
+			try {
+				mapChunk(1L<<chunkRowBits);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not extend split store "+file, e);
+			}
+		}
+		LongBuffer chunk = chunks.get((int)(nRows>>>chunkRowBits));
+		int position = (int)(nRows & ((1L<<chunkRowBits)-1))*nWords;
+		for (int w=0; w<nWords; w++) chunk.put(position+w, scratch[w]);
+		nRows++;
+		header.putLong(ROWS_OFFSET, nRows);
+		return nRows-1;
+	}
+
+	/**
+	 * Appends a split, which must be on the same taxa as the store.
+	 * @return row of the new split
+	 */
+	public long append(Split split) {
+		if (!IdGroupUtils.equals(split.getIdGroup(), idGroup)) throw new IllegalArgumentException("Split has a different set of taxa");
+		return append(split.getLongArray(), 0);
+	}
+
+	/**
+	 * Appends splits on the store's taxa (e.g. NeoSplitUtils.getSplits of a tree)
+	 */
+	public void appendAll(Iterable<Split> splits) {
+		for (Split split : splits) append(split);
+	}
+
+	/**
+	 * Copies the words of split 'row' into dest[offset..offset+getWordCount())
+	 */
+	public void getWords(long row, long[] dest, int offset) {
+		checkOpen();
+		if (row<0 || row>=nRows) throw new IndexOutOfBoundsException("Row "+row+" of "+nRows);
+		LongBuffer chunk = chunks.get((int)(row>>>chunkRowBits));
+		int position = (int)(row & ((1L<<chunkRowBits)-1))*nWords;
+		for (int w=0; w<nWords; w++) dest[offset+w] = chunk.get(position+w);
+	}
+
+	/**
+	 * @return split 'row', as a SmallSplit or LongSplit
+	 */
+	public Split getSplit(long row) {
+		long[] words = new long[nWords];
+		getWords(row, words, 0);
+		return Split.toSplit(idGroup, words);
+	}
+
+	/**
+	 * @return number of rows holding the split in words[offset..offset+getWordCount()-1]
+	 * (which need not be normalised)
+	 */
+	public long count(long[] words, int offset) {
+		return scan(words, offset, false);
+	}
+
+	/**
+	 * @return number of rows compatible with the split in words[offset..offset+getWordCount()-1]
+	 * (which need not be normalised)
+	 */
+	public long countCompatible(long[] words, int offset) {
+		return scan(words, offset, true);
+	}
+
+	/**
+	 * @return number of rows holding 'split'
+	 */
+	public long count(Split split) {
+		if (!IdGroupUtils.equals(split.getIdGroup(), idGroup)) throw new IllegalArgumentException("Split has a different set of taxa");
+		return count(split.getLongArray(), 0);
+	}
+
+	/**
+	 * @return number of rows compatible with 'split'
+	 */
+	public long countCompatible(Split split) {
+		if (!IdGroupUtils.equals(split.getIdGroup(), idGroup)) throw new IllegalArgumentException("Split has a different set of taxa");
+		return countCompatible(split.getLongArray(), 0);
+	}
+
+	private long scan(long[] words, int offset, boolean compatible) {
+		checkOpen();
+		long[] target = new long[nWords];
+		normalise(words, offset, target);
+		ScanTask task = new ScanTask(target, compatible, 0, nRows);
+		ForkJoinPool.commonPool().invoke(task);
+		return task.result;
+	}
+
+	/**
+	 * Tallies the distinct splits in the store. Run in the common ForkJoinPool.
+	 * @return the distinct splits, each with its number of rows as its count
+	 */
+	public SplitHashTable getSplitCounts() {
+		return getSplitCounts(ForkJoinPool.commonPool());
+	}
+
+	public SplitHashTable getSplitCounts(ForkJoinPool pool) {
+		checkOpen();
+		CountsTask task = new CountsTask(0, nRows);
+		pool.invoke(task);
+		return task.table;
+	}
+
+	/**
+	 * Writes changes to the file
+	 */
+	public void force() {
+		checkOpen();
+		if (!writable) return;
+		for (MappedByteBuffer mapping : mappings) mapping.force();
+		header.force();
+	}
+
+	/**
+	 * Writes changes, truncates the file to the rows present, and closes it.
+	 * The store can't be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		force();
+		closed = true;
+		try {
+			// the mappings remain until garbage collected, but are no longer accessed
+			if (writable) channel.truncate(dataOffset+nRows*nWords*8);
+			channel.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not close split store "+file, e);
+		}
+	}
+
+	// copies words[offset..offset+nWords) into dest, masked and normalised as stored rows are
+	private void normalise(long[] words, int offset, long[] dest) {
+		System.arraycopy(words, offset, dest, 0, nWords);
+		if (nTaxa>0) {
+			dest[nWords-1] &= SplitWordUtils.lastWordMask(nTaxa);
+			SplitWordUtils.normalise(dest, 0, nTaxa);
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("Split store is closed");
+	}
+
+	// reads row into dest[0..nWords)
+	private void readRow(long row, long[] dest) {
+		LongBuffer chunk = chunks.get((int)(row>>>chunkRowBits));
+		int position = (int)(row & ((1L<<chunkRowBits)-1))*nWords;
+		for (int w=0; w<nWords; w++) dest[w] = chunk.get(position+w);
+	}
+
+	/*
+	 * Counts rows [from,to) equal to (or if 'compatible', compatible with) target
+	 */
+	private class ScanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long[] target;
+		private final boolean compatible;
+		private final long from, to;
+		long result;
+		ScanTask(long[] target, boolean compatible, long from, long to) {
+			this.target = target;
+			this.compatible = compatible;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>TASK_ROWS) {
+				long mid = (from+to)>>>1;
+				ScanTask left = new ScanTask(target, compatible, from, mid);
+				ScanTask right = new ScanTask(target, compatible, mid, to);
+				invokeAll(left, right);
+				result = left.result+right.result;
+				return;
+			}
+			long[] row = new long[nWords];
+			long n = 0;
+			for (long r=from; r<to; r++) {
+				readRow(r, row);
+				boolean match = compatible ? SplitWordUtils.compatible(row, 0, target, 0, nWords)
+						: SplitWordUtils.equals(row, 0, target, 0, nWords);
+				if (match) n++;
+			}
+			result = n;
+		}
+	}
+
+	/*
+	 * Tallies rows [from,to) into a SplitHashTable
+	 */
+	private class CountsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long from, to;
+		SplitHashTable table;
+		CountsTask(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>TASK_ROWS) {
+				long mid = (from+to)>>>1;
+				CountsTask left = new CountsTask(from, mid);
+				CountsTask right = new CountsTask(mid, to);
+				invokeAll(left, right);
+				table = left.table;
+				SplitHashTable other = right.table;
+				long[] words = new long[nWords];
+				for (int i=0; i<other.size(); i++) {
+					other.getWords(i, words, 0);
+					table.add(words, 0, other.getCount(i));
+				}
+				return;
+			}
+			table = new SplitHashTable(nTaxa);
+			long[] row = new long[nWords];
+			for (long r=from; r<to; r++) {
+				readRow(r, row);
+				table.add(row, 0);
+			}
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package palExtensions;
 
+import java.util.AbstractList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -13,6 +15,16 @@ import pal.misc.Identifier;
 /*
  * Possible todo: subclass PAL's SplitSystem so that this is a SplitSystem, even if it uses none of the original code
  */
+/**
+ * A list of splits on one (ordered) taxon set.
+ *
+ * contains, indexOf and remove(Object) compare splits by value (Split.equals(Object)) using a hash
+ * index from split to position, so take O(1) time. The index is built when first needed, kept up
+ * to date by appends, and rebuilt after any other change to the list (including through iterators
+ * and subLists.) Optionally, the system rejects duplicate splits.
+ *
+ * Splits must not be modified (other than by setIdGroup) while in the system.
+ */
 public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Split>, List<Split>, RandomAccess {
 	/**
 	 * 
@@ -21,12 +33,26 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	// Data members.
 	private IdGroup idGroup; 
 	private Vector<Split> splits; // Write-once (at least for now.) IdGroup of splits will always be idGroup.
+	private boolean rejectDuplicates = false;
+	private transient HashMap<Split,Integer> index; // first position of each split, or null if not built
+	private transient ListView view;
 
 	public NeoSplitSystem(IdGroup idGroup) {
 		this(idGroup,0);
 	}
 	
 	public NeoSplitSystem(IdGroup idGroup, int size)
+	{
+		this(idGroup,size,false);
+	}
+
+	/**
+	 * @param idGroup
+	 * @param size expected number of splits, or 0 if unknown
+	 * @param rejectDuplicates if true, add(Split) returns false rather than add a split equal to
+	 * one already present, and other methods which would add a duplicate throw IllegalArgumentException.
+	 */
+	public NeoSplitSystem(IdGroup idGroup, int size, boolean rejectDuplicates)
 	{
 		if (IdGroupUtils.isOrdered(idGroup)) {
 			this.idGroup = idGroup;
@@ -38,6 +64,7 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 		} else {
 			splits = new Vector<Split>();
 		}
+		this.rejectDuplicates = rejectDuplicates;
 	}
 	
 	public NeoSplitSystem(Collection<Split> splitCollection) {
@@ -62,6 +89,10 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	public int getSplitCount() {
 		return splits.size();
 	}
+
+	public boolean isRejectingDuplicates() {
+		return rejectDuplicates;
+	}
 	
 	public boolean isCompatible() {
 		int n=splits.size();
@@ -73,6 +104,27 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 		}
 		return true;
 	}
+
+	/*
+	 * The index, built if necessary
+	 */
+	private HashMap<Split,Integer> index() {
+		if (index==null) {
+			index = new HashMap<Split,Integer>(2*splits.size()+16);
+			for (int i=0; i<splits.size(); i++) index.putIfAbsent(splits.get(i), i);
+		}
+		return index;
+	}
+
+	// The list has changed other than by appending: index must be rebuilt
+	private void changed() {
+		index = null;
+		if (view!=null) view.changed();
+	}
+
+	private void checkNotDuplicate(Split split) {
+		if (rejectDuplicates && index().containsKey(split)) throw new IllegalArgumentException("Split is already in the split system");
+	}
 	
 	
 	/*
@@ -89,7 +141,11 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	@Override
 	public boolean add(Split split) { 
 		split.setIdGroup(idGroup); // will throw exception if split has wrong set of taxa 
-		return splits.add(split); 
+		if (rejectDuplicates && index().containsKey(split)) return false;
+		splits.add(split);
+		if (index!=null) index.putIfAbsent(split, splits.size()-1);
+		if (view!=null) view.changed();
+		return true;
 	}
 	
 	@Override
@@ -97,7 +153,11 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 		for (Split split : splitCollection) {
 			split.setIdGroup(idGroup); // will throw exception if split has wrong set of taxa 
 		}
-		return splits.addAll(splitCollection); 
+		boolean modified = false;
+		for (Split split : splitCollection) {
+			modified = add(split) || modified;
+		}
+		return modified;
 	}
 	
 	/*
@@ -105,21 +165,135 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	 */
 	@Override
 	public void add(int index, Split split) {
+		if (index==splits.size()) {
+			if (!add(split)) throw new IllegalArgumentException("Split is already in the split system");
+			return;
+		}
 		split.setIdGroup(idGroup); // will throw exception if split has wrong set of taxa 
+		checkNotDuplicate(split);
 		splits.add(index,split);
+		changed();
 	}
 
 	@Override
 	public boolean addAll(int index, Collection<? extends Split> splitCollection) {
+		HashMap<Split,Integer> added = new HashMap<Split,Integer>();
 		for (Split split : splitCollection) {
 			split.setIdGroup(idGroup); // will throw exception if split has wrong set of taxa 
+			if (rejectDuplicates) {
+				checkNotDuplicate(split);
+				if (added.put(split, 0)!=null) throw new IllegalArgumentException("Duplicate split in collection");
+			}
+		}
+		boolean modified = splits.addAll(index, splitCollection);
+		if (modified) changed();
+		return modified;
+	}
+	
+	@Override
+	public boolean contains(Object split) { return index().containsKey(split); }
+	@Override
+	public boolean containsAll(Collection<?> splitCollection) {
+		for (Object split : splitCollection) {
+			if (!contains(split)) return false;
+		}
+		return true;
+	}
+	@Override
+	public boolean remove(Object split) {
+		int i = indexOf(split);
+		if (i<0) return false;
+		remove(i);
+		return true;
+	}
+	@Override
+	public boolean removeAll(Collection<?> splitCollection) {
+		boolean modified = splits.removeAll(splitCollection);
+		if (modified) changed();
+		return modified;
+	}
+	@Override
+	public boolean retainAll(Collection<?> splitCollection) {
+		boolean modified = splits.retainAll(splitCollection);
+		if (modified) changed();
+		return modified;
+	}
+	@Override
+	public void clear() {
+		splits.clear();
+		changed();
+	}
+
+	@Override
+	public int indexOf(Object split) {
+		Integer i = index().get(split);
+		return (i==null) ? -1 : i;
+	}
+	@Override
+	public int lastIndexOf(Object split) {
+		if (!contains(split)) return -1;
+		return splits.lastIndexOf(split);
+	}
+	@Override
+	public Split remove(int index) {
+		Split split = splits.remove(index);
+		if (this.index!=null && index==splits.size() && Integer.valueOf(index).equals(this.index.get(split))) {
+			this.index.remove(split); // removed the last split, which had no earlier duplicate
+			if (view!=null) view.changed();
+		} else {
+			changed();
+		}
+		return split;
+	}
+	@Override
+	public Split set(int index, Split split) {
+		split.setIdGroup(idGroup); // will throw exception if split has wrong set of taxa 
+		if (rejectDuplicates) {
+			Integer at = index().get(split);
+			if (at!=null && at!=index) throw new IllegalArgumentException("Split is already in the split system");
 		}
-		return splits.addAll(index, splitCollection);
+		Split old = splits.set(index, split);
+		changed();
+		return old;
+	}
+
+	/*
+	 * Iterators and subLists go through a ListView, so their changes also go through the methods above.
+	 */
+	@Override
+	public Iterator<Split> iterator() { return view().iterator(); }
+	@Override
+	public ListIterator<Split> listIterator() { return view().listIterator(); }
+	@Override
+	public ListIterator<Split> listIterator(int index) { return view().listIterator(index); }
+	@Override
+	public List<Split> subList(int fromIndex, int toIndex) { return view().subList(fromIndex, toIndex); }
+
+	private ListView view() {
+		if (view==null) view = new ListView();
+		return view;
+	}
+
+	/*
+	 * This system as an AbstractList, for its iterators and subLists
+	 */
+	private class ListView extends AbstractList<Split> {
+		@Override
+		public Split get(int index) { return splits.get(index); }
+		@Override
+		public int size() { return splits.size(); }
+		@Override
+		public Split set(int index, Split split) { return NeoSplitSystem.this.set(index, split); }
+		@Override
+		public void add(int index, Split split) { NeoSplitSystem.this.add(index, split); }
+		@Override
+		public Split remove(int index) { return NeoSplitSystem.this.remove(index); }
+		void changed() { modCount++; }
 	}
 	
 	/* ****************************************************************************************
 	 * From here on, we have interface methods which simply pass through unmodified to
-	 * idGroup (for IdGroup interface) or splits (for Iterable, Collection, List, RandomAccess interfaces.)
+	 * idGroup (for IdGroup interface) or splits (for Collection, List, RandomAccess interfaces.)
 	 * Any which required special code are above this comment.
 	 */
 	
@@ -134,30 +308,12 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	@Override
 	public int whichIdNumber(String name) { return idGroup.whichIdNumber(name); }
 
-	/*
-	 * Iterable methods
-	 */
-	@Override
-	public Iterator<Split> iterator() { return splits.iterator(); }
-
 
 	/*
 	 * Collection methods
 	 */
 	@Override
-	public void clear() { splits.clear(); }
-	@Override
-	public boolean contains(Object arg0) { return splits.contains(arg0); }
-	@Override
-	public boolean containsAll(Collection<?> arg0) { return splits.containsAll(arg0); }
-	@Override
 	public boolean isEmpty() { return splits.isEmpty(); }
-	@Override
-	public boolean remove(Object arg0) { return splits.remove(arg0); }
-	@Override
-	public boolean removeAll(Collection<?> arg0) { return splits.removeAll(arg0); }
-	@Override
-	public boolean retainAll(Collection<?> arg0) { return splits.retainAll(arg0); }
 	/**
 	 * @return number of splits
 	 */
@@ -174,20 +330,6 @@ public class NeoSplitSystem implements IdGroup, Iterable<Split>, Collection<Spli
 	 */
 	@Override
 	public Split get(int index) { return splits.get(index); }
-	@Override
-	public int indexOf(Object split) { return splits.indexOf(split); }
-	@Override
-	public int lastIndexOf(Object split) { return splits.lastIndexOf(split); }
-	@Override
-	public ListIterator<Split> listIterator() { return splits.listIterator(); }
-	@Override
-	public ListIterator<Split> listIterator(int index) { return splits.listIterator(index); }
-	@Override
-	public Split remove(int index) { return splits.remove(index); }
-	@Override
-	public Split set(int index, Split split) { return splits.set(index, split); }
-	@Override
-	public List<Split> subList(int fromIndex, int toIndex) { return splits.subList(fromIndex, toIndex); }
 	
 
 }
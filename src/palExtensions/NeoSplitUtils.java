@@ -2,13 +2,9 @@ package palExtensions;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
 
 import pal.misc.IdGroup;
-import pal.misc.Identifier;
 import pal.tree.Node;
 import pal.tree.SimpleNode;
 import pal.tree.SimpleTree;
@@ -19,106 +15,234 @@ import pal.tree.TreeUtils;
  */
 
 public class NeoSplitUtils {
+	/**
+	 * Node attribute holding (as a Double) the support for the split above the node,
+	 * in trees built from splits with support values.
+	 */
+	public static final String SUPPORT = "NeoSplitUtils.SUPPORT";
 	
-	/*
-	 * Heavily based on PAL SplitUtils.getSplits
+	/**
+	 * The non-trivial splits of the tree, without duplicates, in postorder of
+	 * the nodes which induce them.
+	 * 
+	 * The split system's IdGroup will be an ordered version of idGroup.
 	 */
 	public static NeoSplitSystem getSplits(IdGroup idGroup, Tree tree)
 	{	
-		int numInternalNodes = tree.getInternalNodeCount()-1;
-		int numLeaves = idGroup.getIdCount();
-		boolean[][] rawSplits = new boolean[numInternalNodes][];
-
-		int numGoodSplits = 0;
-		for (int i = 0; i < numInternalNodes; i++)
+		IdGroup ordered = IdGroupUtils.isOrdered(idGroup) ? idGroup : IdGroupUtils.copyOrdered(idGroup);
+		SplitHashTable table = getSplitTable(ordered, IdGroupUtils.indexMap(ordered), tree);
+		int nSplits = table.size();
+		NeoSplitSystem splitSystem = new NeoSplitSystem(ordered,nSplits);
+		for (int i = 0; i < nSplits; i++)
 		{
-			boolean[] split = new boolean[numLeaves];
-			getSplit(idGroup, tree.getInternalNode(i), split);
-			
-			// Add split to list if:
-			// * it isn't a leaf
-			// * it isn't already there
-			int count = 0;
-			for (int j=0; j<split.length; j++) {
-				count += (split[j] ? 1 : 0);
-			}
-			if (count == 1 || count == numLeaves-1) {
-				break;
-			}
-			boolean foundMatch = false; // found a matching split?
-			for (int j=0; j<numGoodSplits && !foundMatch; j++) {
-				boolean foundMismatch = false; // found a point of disagreement within this particular split?
-				for (int k=0; k<numLeaves && !foundMismatch; k++) {
-					foundMismatch = (rawSplits[j][k] != split[k]);
-				}
-				foundMatch = !foundMismatch;
-			}
-			if (!foundMatch) {
-				rawSplits[numGoodSplits++] = split;
+			splitSystem.add(Split.toSplit(ordered, table.getWords(i)));
+		}
+		return splitSystem;
+	}
+	
+	/**
+	 * Collects the non-trivial splits of the tree in a single postorder pass: each node's
+	 * taxon set is the OR of its children's, and duplicates are removed by hashing.
+	 * 
+	 * @param orderedIdGroup the taxa, which must be ordered. May include taxa not in the tree.
+	 * @param taxonIndex map from label to position in orderedIdGroup (see IdGroupUtils.indexMap)
+	 *        which can be reused across many trees.
+	 * @param tree
+	 * @return table with one row per distinct split, rows in postorder of the inducing nodes.
+	 */
+	public static SplitHashTable getSplitTable(IdGroup orderedIdGroup, Map<String,Integer> taxonIndex, Tree tree) {
+		int nTaxa = orderedIdGroup.getIdCount();
+		SplitHashTable table = new SplitHashTable(nTaxa, tree.getInternalNodeCount());
+		long[] scratch = new long[table.getWordCount()];
+		markSubtree(tree.getRoot(), taxonIndex, table, scratch);
+		return table;
+	}
+	
+	/*
+	 * Returns the taxon set of all leaf nodes equal or under 'node' as words,
+	 * adding the split on the parent edge of each non-root internal node to 'table' along the way. 
+	 */
+	private static long[] markSubtree(Node node, Map<String,Integer> taxonIndex, SplitHashTable table, long[] scratch) {
+		int nTaxa = table.getTaxonCount();
+		int nWords = table.getWordCount();
+		if (node.isLeaf()) {
+			String name = node.getIdentifier().getName();
+			Integer index = taxonIndex.get(name);
+			if (index == null)
+			{
+				throw new IllegalArgumentException("INCOMPATIBLE IDENTIFIER (" + name + ")");
 			}
+			long[] mask = new long[nWords];
+			SplitWordUtils.setMember(mask, 0, index);
+			return mask;
 		}
-		
-		NeoSplitSystem splitSystem = new NeoSplitSystem(idGroup,numGoodSplits);
-		for (int i = 0; i < numGoodSplits; i++)
-		{
-			splitSystem.add(Split.toSplit(idGroup, rawSplits[i]));
+		// Reuse the first child's array, as it is no longer needed once the child's split has been added.
+		long[] mask = markSubtree(node.getChild(0), taxonIndex, table, scratch);
+		int nChild = node.getChildCount();
+		for (int i=1; i<nChild; i++) {
+			long[] childMask = markSubtree(node.getChild(i), taxonIndex, table, scratch);
+			for (int w=0; w<nWords; w++) mask[w] |= childMask[w];
 		}
-		return splitSystem;
+		if (!node.isRoot()) {
+			// Add split to table if it isn't trivial (the hash table takes care of duplicates.)
+			int count = SplitWordUtils.bitCount(mask, 0, nWords);
+			if (count > 1 && count < nTaxa-1) {
+				System.arraycopy(mask, 0, scratch, 0, nWords);
+				SplitWordUtils.normalise(scratch, 0, nTaxa);
+				table.add(scratch, 0);
+			}
+		}
+		return mask;
 	}
 
-
 	public static Tree treeFromSplits(NeoSplitSystem splits) {
-		if (!splits.isCompatible()) throw new IllegalArgumentException("Tried to build a tree from incompatible splits");
-		/*
-		 *  We start off with each identifier belonging to a leaf node.
-		 *  We will progressively amalgamate nodes under new parents
-		 *  by processing the splits, starting with the 'smallest' splits
-		 *  (i.e. those which have fewest members in their smaller half.) 
-		 */
-		int nTaxa = splits.getIdCount();
-		HashMap<Identifier,Node> ancestorNode = new HashMap<Identifier,Node>(nTaxa);
-		int n= splits.getIdCount();
-		for (int i=0; i<n; i++) {
-			Identifier id = splits.getIdentifier(i);
-			Node node = new SimpleNode();
-			node.setIdentifier(id);
-			ancestorNode.put(id, node);
+		int nSplits = splits.getSplitCount();
+		int nWords = SplitWordUtils.nWords(splits.getIdCount());
+		long[] words = new long[nSplits*nWords];
+		for (int i=0; i<nSplits; i++) {
+			System.arraycopy(splits.get(i).getLongArray(), 0, words, i*nWords, nWords);
 		}
+		return treeFromSplits(splits.getIdGroup(), words, nSplits);
+	}
+	
+	/**
+	 * Builds the tree with the given splits. Throws an IllegalArgumentException if the splits
+	 * are not compatible (detected while building, rather than by checking all pairs first.)
+	 * Duplicate and trivial splits are ignored.
+	 * 
+	 * @param orderedIdGroup the taxa, which must be ordered.
+	 * @param words the normalised splits (see SplitWordUtils), one after the other.
+	 * @param nSplits number of splits in 'words'
+	 * @return
+	 */
+	public static Tree treeFromSplits(IdGroup orderedIdGroup, long[] words, int nSplits) {
+		return new SplitTreeBuilder(orderedIdGroup, words, nSplits).getTree(null);
+	}
+	
+	/**
+	 * As treeFromSplits(IdGroup, long[], int), but the internal node for split i has
+	 * attribute SUPPORT set to (Double)support[i].
+	 */
+	public static Tree treeFromSplits(IdGroup orderedIdGroup, long[] words, int nSplits, double[] support) {
+		return new SplitTreeBuilder(orderedIdGroup, words, nSplits).getTree(support);
+	}
+	
+	/*
+	 * As splits are normalised, the one side of every split excludes taxon 0. Treating the
+	 * one sides as clusters of a tree rooted at taxon 0, the splits are compatible iff the clusters
+	 * are nested or disjoint. Clusters are processed smallest first. Each new node's children are
+	 * found by repeatedly taking the lowest remaining taxon of the cluster, finding the
+	 * topmost node built so far which contains it (union-find), and removing that node's cluster.
+	 * This costs O(nWords) per child, so O(n*k/64) overall for n taxa and k splits.
+	 */
+	private static class SplitTreeBuilder {
+		private final int nTaxa;
+		private final int nWords;
+		private final long[] words;
+		private final int[] parent; // parent of each node (taxa are nodes 0..nTaxa-1) or -1
+		private final int[] top;    // union-find links towards the topmost node
+		private final int[] row;    // row of 'words' holding cluster of each internal node
+		private int nNodes;
+		private final IdGroup idGroup;
 		
-		// Cache the split sizes:
-		int nSplits = splits.getSplitCount();
-		final HashMap<Split,Integer> splitSize = new HashMap<Split,Integer>(nSplits);
-		for (Split split : splits) splitSize.put(split, split.sizeOfSmaller());
+		SplitTreeBuilder(IdGroup orderedIdGroup, long[] words, int nSplits) {
+			idGroup = orderedIdGroup;
+			nTaxa = orderedIdGroup.getIdCount();
+			nWords = SplitWordUtils.nWords(nTaxa);
+			this.words = words;
+			parent = new int[nTaxa+nSplits];
+			top = new int[nTaxa+nSplits];
+			row = new int[nTaxa+nSplits];
+			Arrays.fill(parent, -1);
+			for (int i=0; i<top.length; i++) top[i] = i;
+			nNodes = nTaxa;
+			
+			// Counting sort the splits by cluster size
+			int[] size = new int[nSplits];
+			int[] start = new int[nTaxa+1];
+			for (int i=0; i<nSplits; i++) {
+				size[i] = SplitWordUtils.bitCount(words, i*nWords, nWords);
+				start[size[i]]++;
+			}
+			for (int s=0, total=0; s<=nTaxa; s++) {
+				int count = start[s];
+				start[s] = total;
+				total += count;
+			}
+			int[] sorted = new int[nSplits];
+			for (int i=0; i<nSplits; i++) sorted[start[size[i]]++] = i;
+			
+			long[] remaining = new long[nWords];
+			int[] children = new int[nTaxa];
+			for (int i : sorted) {
+				if (size[i]<2 || size[i]>nTaxa-2) continue; // trivial
+				addCluster(i, remaining, children);
+			}
+		}
 		
-		// Make an array of the splits, then sort it by split size
-		Split[] splitArray = new Split[nSplits];
-		for (int i=0; i<nSplits; i++) splitArray[i] = splits.get(i);
-		Comparator<Split> sizeComp = new Comparator<Split>() {
-			public int compare(Split a, Split b) {
-				/* Conceptually this is
-				 * return a.sizeOfSmaller()-b.sizeOfSmaller();
-				 * but that would inefficiently recalculate size many times.
-				 */
-				return splitSize.get(a)-splitSize.get(b);
+		private void addCluster(int splitRow, long[] remaining, int[] children) {
+			int offset = splitRow*nWords;
+			System.arraycopy(words, offset, remaining, 0, nWords);
+			int nChildren = 0;
+			for (int w=0; w<nWords; w++) {
+				while (remaining[w]!=0) {
+					int taxon = (w<<6) + Long.numberOfTrailingZeros(remaining[w]);
+					int node = find(taxon);
+					if (node<nTaxa) {
+						remaining[w] &= remaining[w]-1; // clear lowest bit
+					} else {
+						// node's cluster must lie within this one. Check every word: the cluster may
+						// have taxa before 'taxon' which are not in this cluster.
+						int nodeOffset = row[node]*nWords;
+						for (int v=0; v<nWords; v++) {
+							long cluster = words[nodeOffset+v];
+							if ((cluster & ~words[offset+v])!=0) 
+								throw new IllegalArgumentException("Tried to build a tree from incompatible splits");
+							remaining[v] &= ~cluster;
+						}
+					}
+					children[nChildren++] = node;
+				}
+			}
+			if (nChildren==1) return; // duplicate of an existing cluster
+			int newNode = nNodes++;
+			row[newNode] = splitRow;
+			for (int c=0; c<nChildren; c++) {
+				parent[children[c]] = newNode;
+				top[children[c]] = newNode;
 			}
-		};
-		Arrays.sort(splitArray, sizeComp);
+		}
 		
-		// For each split, make a new parent node holding the smaller side of the split
-		for (Split split : splitArray) {
-			Set<Identifier> idSet = split.smallerSubset();
-			Set<Node> children = new HashSet<Node>(idSet.size());
-			for (Identifier id : idSet) children.add(ancestorNode.get(id));
-			Node parent = new SimpleNode();
-			for (Node child : children) parent.addChild(child);
-			for (Identifier id : idSet) ancestorNode.put(id, parent);
+		private int find(int node) {
+			while (top[node]!=node) {
+				top[node] = top[top[node]]; // path halving
+				node = top[node];
+			}
+			return node;
 		}
 		
-		// Make all remaining ancestor nodes into children of the root
-		Node root = new SimpleNode();
-		Set<Node> children = new HashSet<Node>(ancestorNode.values());
-		for (Node child : children) root.addChild(child);
-		return new SimpleTree(root);
+		Tree getTree(double[] support) {
+			Node[] nodes = new Node[nNodes];
+			for (int i=0; i<nTaxa; i++) {
+				nodes[i] = new SimpleNode();
+				nodes[i].setIdentifier(idGroup.getIdentifier(i));
+			}
+			for (int i=nTaxa; i<nNodes; i++) {
+				SimpleNode node = new SimpleNode();
+				if (support!=null) node.setAttribute(SUPPORT, support[row[i]]);
+				nodes[i] = node;
+			}
+			// Nodes which have no parent become children of the root
+			Node root = new SimpleNode();
+			for (int i=0; i<nNodes; i++) {
+				if (parent[i]<0) {
+					root.addChild(nodes[i]);
+				} else {
+					nodes[parent[i]].addChild(nodes[i]);
+				}
+			}
+			return new SimpleTree(root);
+		}
 	}
 	
 	public static Tree treeFromSplits(Collection<Split> splits) {
@@ -139,67 +263,4 @@ public class NeoSplitUtils {
 		return getSplits(idGroup, tree);
 	}
 
-	/*
-	 * Gets the split corresponding to the parent edge of 'internalNode'.
-	 * Stores the split in boolean array.
-	 * Copied directly from PAL SplitUtils. Made 'private' until I think of a reason for it not to be.
-	 */
-	private static void getSplit(IdGroup idGroup, Node internalNode, boolean[] split) {
-		if (internalNode.isLeaf() || internalNode.isRoot())
-		{
-			throw new IllegalArgumentException("Only internal nodes (and no root) nodes allowed");
-		}
-
-		// make sure split is reset
-		for (int i = 0; i < split.length; i++)
-		{
-			split[i] = false;
-		}
-
-		// mark all leafs downstream of the node
-
-		for (int i = 0; i < internalNode.getChildCount(); i++)
-		{
-			markNode(idGroup, internalNode, split);
-		}
-
-		// standardize split (i.e. first index is alway true)
-		if (split[0] == false)
-		{
-			for (int i = 0; i < split.length; i++)
-			{
-				if (split[i] == false)
-					split[i] = true;
-				else
-					split[i] = false;
-			}
-		}
-	}
-	
-	/*
-	 * Direct copy from PAL SplitUtils. Made 'private' until I think of a reason for it not to be.
-	 * Marks (in 'split' array) all leaf nodes equal or under 'node'.
-	 */
-	private static void markNode(IdGroup idGroup, Node node, boolean[] split) {
-		if (node.isLeaf())
-		{
-			String name = node.getIdentifier().getName();
-			int index = idGroup.whichIdNumber(name);
-
-			if (index < 0)
-			{
-				throw new IllegalArgumentException("INCOMPATIBLE IDENTIFIER (" + name + ")");
-			}
-
-			split[index] = true;
-		}
-		else
-		{
-			for (int i = 0; i < node.getChildCount(); i++)
-			{
-				markNode(idGroup, node.getChild(i), split);
-			}
-		}
-	}
-
 }
@@ -0,0 +1,622 @@
+package palExtensions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import pal.misc.Identifier;
+import pal.misc.SimpleIdGroup;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+
+/**
+ * Reads many trees from a byte buffer or memory-mapped file, without going through
+ * Readers or PAL's ReadTree. Accepts either plain Newick (trees separated by ';') or
+ * NEXUS, in which case trees are read from 'tree' statements in trees blocks, applying
+ * any translate table.
+ *
+ * Trees are produced lazily, by an iterator or a Spliterator. The Spliterator hands out
+ * batches of trees to other threads, so that e.g. readAll() or
+ * StreamSupport.stream(reader.spliterator(), true) parse in parallel. Finding where each
+ * tree ends is a cheap sequential scan; the parsing itself is done in parallel.
+ *
+ * Leaf names are interned: every leaf with the same name, in every tree, shares one Identifier,
+ * and getIdGroup() gives the set of all names seen so far.
+ *
+ * Files are mapped a window (by default 1GB) at a time, so can exceed 2GB. No single tree may be
+ * longer than the window.
+ *
+ * Unquoted labels are taken literally (underscores are not converted to spaces). Internal node
+ * labels are kept as the node's Identifier, but are not interned.
+ */
+public class NewickReader implements Iterable<Tree>, Closeable {
+	private static final int DEFAULT_WINDOW = 1<<30;
+	private static final int FIRST_BATCH = 16;
+	private static final int MAX_BATCH = 1<<12;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private final ByteBuffer buffer;   // source, if reading from a buffer
+	private final FileChannel channel; // source, if reading from a file
+	private final int windowSize;
+	private final ConcurrentHashMap<String,Identifier> identifiers = new ConcurrentHashMap<String,Identifier>();
+
+	/**
+	 * Reads trees from the remaining bytes of the buffer (UTF-8.) The buffer's position is not changed.
+	 */
+	public NewickReader(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+		channel = null;
+		windowSize = 0;
+	}
+
+	public NewickReader(String text) {
+		this(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	public NewickReader(File file) throws IOException {
+		this(file, DEFAULT_WINDOW);
+	}
+
+	/**
+	 * @param file
+	 * @param windowSize maximum number of bytes mapped at a time, which is also the maximum
+	 *        length of a tree.
+	 */
+	public NewickReader(File file, int windowSize) throws IOException {
+		if (windowSize<=0) throw new IllegalArgumentException("Window size must be positive");
+		buffer = null;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Each call starts again from the beginning of the input.
+	 */
+	public Iterator<Tree> iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	/**
+	 * Each call starts again from the beginning of the input.
+	 */
+	public Spliterator<Tree> spliterator() {
+		return new TreeSpliterator();
+	}
+
+	/**
+	 * Parses all trees, in parallel (in the common ForkJoinPool.)
+	 * @return the trees, in the order they appear in the input.
+	 */
+	public List<Tree> readAll() {
+		return StreamSupport.stream(spliterator(), true).collect(Collectors.toList());
+	}
+
+	/**
+	 * @return TaxonSet (ordered IdGroup) of all leaf names read so far.
+	 */
+	public TaxonSet getIdGroup() {
+		return TaxonSet.of(new SimpleIdGroup(identifiers.values().toArray(new Identifier[0])));
+	}
+
+	/**
+	 * @return the Identifier shared by all leaves named 'name'
+	 */
+	public Identifier getIdentifier(String name) {
+		Identifier id = identifiers.get(name);
+		if (id==null) {
+			Identifier newId = new Identifier(name);
+			id = identifiers.putIfAbsent(name, newId);
+			if (id==null) id = newId;
+		}
+		return id;
+	}
+
+	public void close() throws IOException {
+		if (channel!=null) channel.close();
+	}
+
+	private static boolean isSpace(byte c) {
+		return c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f';
+	}
+
+	private static boolean isDelimiter(byte c) {
+		return isSpace(c) || c=='(' || c==')' || c=='[' || c==']' || c=='\'' || c==':' || c==';' || c==',';
+	}
+
+	/*
+	 * A tree's text: bytes [start,end) of 'buffer', excluding the terminating ';'.
+	 */
+	private static class Statement {
+		final ByteBuffer buffer;
+		final int start, end;
+		final long offset; // position of 'start' in the whole input, for error messages
+		final Map<String,String> translation; // NEXUS translate table, or null
+		Statement(ByteBuffer buffer, int start, int end, long offset, Map<String,String> translation) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.offset = offset;
+			this.translation = translation;
+		}
+	}
+
+	/*
+	 * Finds the trees in the input, one after another.
+	 */
+	private class Scanner {
+		private ByteBuffer window;
+		private long windowStart; // offset of window[0] in the input
+		private boolean lastWindow;
+		private int pos;
+		private boolean nexus = false;
+		private boolean inTreesBlock = false;
+		private Map<String,String> translation = null;
+		private final Parser tokens = new Parser();
+
+		Scanner() {
+			if (buffer!=null) {
+				window = buffer;
+				lastWindow = true;
+			} else {
+				mapWindow(0);
+			}
+			while (pos<window.limit() && isSpace(window.get(pos))) pos++;
+			byte[] header = "#nexus".getBytes(StandardCharsets.US_ASCII);
+			if (pos+header.length<=window.limit()) {
+				nexus = true;
+				for (int i=0; i<header.length && nexus; i++) {
+					nexus = Character.toLowerCase((char)window.get(pos+i))==header[i];
+				}
+				if (nexus) pos += header.length;
+			}
+		}
+
+		private void mapWindow(long start) {
+			try {
+				long size = channel.size();
+				long length = Math.min(windowSize, size-start);
+				window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				windowStart = start;
+				lastWindow = (start+length==size);
+				pos = 0;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/*
+		 * @return the next tree, or null if there are no more.
+		 */
+		Statement next() {
+			while (true) {
+				int start = pos;
+				int end = findEnd(start);
+				if (end<0) {
+					if (lastWindow) {
+						pos = window.limit();
+						if (isBlank(start, pos)) return null;
+						throw new IllegalArgumentException("Missing ';' after byte "+(windowStart+start));
+					}
+					if (start==0) throw new IllegalArgumentException("Tree at byte "+windowStart+" is longer than the window size");
+					mapWindow(windowStart+start);
+					continue;
+				}
+				pos = end+1;
+				if (isBlank(start, end)) continue;
+				if (!nexus) return new Statement(window, start, end, windowStart+start, null);
+				Statement tree = nexusStatement(start, end);
+				if (tree!=null) return tree;
+			}
+		}
+
+		// Position of next ';' not in a quoted label or comment, or -1 if not in this window.
+		private int findEnd(int start) {
+			int limit = window.limit();
+			boolean quoted = false;
+			int depth = 0; // of comments
+			for (int p=start; p<limit; p++) {
+				byte c = window.get(p);
+				if (quoted) {
+					if (c=='\'') quoted = false; // an escaped '' just toggles twice
+				} else if (depth>0) {
+					if (c=='[') depth++;
+					else if (c==']') depth--;
+				} else if (c=='\'') {
+					quoted = true;
+				} else if (c=='[') {
+					depth = 1;
+				} else if (c==';') {
+					return p;
+				}
+			}
+			return -1;
+		}
+
+		private boolean isBlank(int start, int end) {
+			tokens.reset(window, start, end, windowStart+start);
+			tokens.skipBlank();
+			return tokens.pos>=end;
+		}
+
+		/*
+		 * Interprets a NEXUS statement. Returns the tree if it is a tree statement, otherwise null.
+		 */
+		private Statement nexusStatement(int start, int end) {
+			tokens.reset(window, start, end, windowStart+start);
+			String command = tokens.readWord();
+			if (command.equalsIgnoreCase("begin")) {
+				inTreesBlock = tokens.readWord().equalsIgnoreCase("trees");
+				translation = null;
+			} else if (command.equalsIgnoreCase("end") || command.equalsIgnoreCase("endblock")) {
+				inTreesBlock = false;
+			} else if (inTreesBlock && command.equalsIgnoreCase("translate")) {
+				translation = tokens.readTranslation();
+			} else if (inTreesBlock && (command.equalsIgnoreCase("tree") || command.equalsIgnoreCase("utree"))) {
+				int equals = tokens.findEquals();
+				return new Statement(window, equals+1, end, windowStart+equals+1, translation);
+			}
+			return null;
+		}
+	}
+
+	/*
+	 * Parses trees (and tokens, for the Scanner.) Not thread safe: one per thread.
+	 */
+	private class Parser {
+		private ByteBuffer buf;
+		private int pos, start, end;
+		private long offset;
+		// Cache of leaf label bytes -> Identifier, so that known labels don't need decoding.
+		// Only valid for one translation table.
+		private Map<String,String> translation = null;
+		private byte[][] cacheKeys = new byte[64][];
+		private Identifier[] cacheValues = new Identifier[64];
+		private int cacheSize = 0;
+
+		void reset(ByteBuffer buf, int start, int end, long offset) {
+			this.buf = buf;
+			this.pos = this.start = start;
+			this.end = end;
+			this.offset = offset;
+		}
+
+		Tree parseTree(Statement statement) {
+			reset(statement.buffer, statement.start, statement.end, statement.offset);
+			if (statement.translation!=translation) {
+				translation = statement.translation;
+				Arrays.fill(cacheKeys, null);
+				Arrays.fill(cacheValues, null);
+				cacheSize = 0;
+			}
+			SimpleNode root = new SimpleNode();
+			SimpleNode current = root;
+			boolean named = false, hasLength = false; // of 'current'
+			skipBlank();
+			while (pos<end) {
+				byte c = buf.get(pos);
+				if (c=='(') {
+					if (current.getChildCount()>0 || named || hasLength) throw error("Unexpected '('");
+					pos++;
+					SimpleNode child = new SimpleNode();
+					current.addChild(child);
+					current = child;
+				} else if (c==',') {
+					if (current.isLeaf() && !named) throw error("Unlabelled leaf");
+					SimpleNode parent = (SimpleNode)current.getParent();
+					if (parent==null) throw error("Unexpected ','");
+					pos++;
+					current = new SimpleNode();
+					parent.addChild(current);
+					named = hasLength = false;
+				} else if (c==')') {
+					if (current.isLeaf() && !named) throw error("Unlabelled leaf");
+					current = (SimpleNode)current.getParent();
+					if (current==null) throw error("Unbalanced ')'");
+					pos++;
+					named = hasLength = false;
+				} else if (c==':') {
+					if (hasLength) throw error("Two branch lengths for one node");
+					pos++;
+					skipBlank();
+					current.setBranchLength(readNumber());
+					hasLength = true;
+				} else {
+					if (named || hasLength || (isDelimiter(c) && c!='\'')) throw error("Unexpected '"+(char)c+"'");
+					current.setIdentifier(current.isLeaf() ? readLeafIdentifier() : new Identifier(readLabel()));
+					named = true;
+				}
+				skipBlank();
+			}
+			if (current!=root) throw error("Unbalanced '('");
+			if (root.isLeaf() && !named) throw error("Empty tree");
+			return new SimpleTree(root);
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message+" at byte "+(offset+pos-start));
+		}
+
+		// Skips white space and (nested) comments
+		void skipBlank() {
+			int depth = 0;
+			while (pos<end) {
+				byte c = buf.get(pos);
+				if (c=='[') {
+					depth++;
+				} else if (depth>0) {
+					if (c==']') depth--;
+				} else if (!isSpace(c)) {
+					return;
+				}
+				pos++;
+			}
+		}
+
+		// Reads a run of letters (after blanks)
+		String readWord() {
+			skipBlank();
+			int wordStart = pos;
+			while (pos<end && Character.isLetter((char)buf.get(pos))) pos++;
+			return decode(wordStart, pos);
+		}
+
+		// Reads a quoted or unquoted label (after blanks)
+		String readLabel() {
+			skipBlank();
+			if (pos<end && buf.get(pos)=='\'') return readQuoted();
+			int labelStart = pos;
+			while (pos<end && !isDelimiter(buf.get(pos))) pos++;
+			if (pos==labelStart) throw error("Expected a label");
+			return decode(labelStart, pos);
+		}
+
+		private String readQuoted() {
+			byte[] bytes = new byte[16];
+			int length = 0;
+			pos++; // opening quote
+			while (true) {
+				if (pos>=end) throw error("Unterminated quoted label");
+				byte c = buf.get(pos++);
+				if (c=='\'') {
+					if (pos<end && buf.get(pos)=='\'') {
+						pos++; // '' is an escaped quote
+					} else {
+						return new String(bytes, 0, length, StandardCharsets.UTF_8);
+					}
+				}
+				if (length==bytes.length) bytes = Arrays.copyOf(bytes, 2*length);
+				bytes[length++] = c;
+			}
+		}
+
+		private String decode(int from, int to) {
+			byte[] bytes = new byte[to-from];
+			for (int i=from; i<to; i++) bytes[i-from] = buf.get(i);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private Identifier readLeafIdentifier() {
+			if (buf.get(pos)=='\'') return translatedIdentifier(readQuoted());
+			int labelStart = pos;
+			int hash = 0;
+			while (pos<end && !isDelimiter(buf.get(pos))) hash = 31*hash + buf.get(pos++);
+			int length = pos-labelStart;
+			int mask = cacheKeys.length-1;
+			int slot = (hash ^ (hash>>>16)) & mask;
+			for (byte[] key; (key=cacheKeys[slot])!=null; slot=(slot+1)&mask) {
+				if (key.length==length && matches(key, labelStart)) return cacheValues[slot];
+			}
+			byte[] key = new byte[length];
+			for (int i=0; i<length; i++) key[i] = buf.get(labelStart+i);
+			Identifier id = translatedIdentifier(new String(key, StandardCharsets.UTF_8));
+			cacheKeys[slot] = key;
+			cacheValues[slot] = id;
+			if (++cacheSize*2>cacheKeys.length) growCache();
+			return id;
+		}
+
+		private boolean matches(byte[] key, int from) {
+			for (int i=0; i<key.length; i++) {
+				if (key[i]!=buf.get(from+i)) return false;
+			}
+			return true;
+		}
+
+		private void growCache() {
+			byte[][] oldKeys = cacheKeys;
+			Identifier[] oldValues = cacheValues;
+			cacheKeys = new byte[2*oldKeys.length][];
+			cacheValues = new Identifier[2*oldKeys.length];
+			int mask = cacheKeys.length-1;
+			for (int i=0; i<oldKeys.length; i++) {
+				byte[] key = oldKeys[i];
+				if (key==null) continue;
+				int hash = 0;
+				for (byte b : key) hash = 31*hash + b;
+				int slot = (hash ^ (hash>>>16)) & mask;
+				while (cacheKeys[slot]!=null) slot = (slot+1)&mask;
+				cacheKeys[slot] = key;
+				cacheValues[slot] = oldValues[i];
+			}
+		}
+
+		private Identifier translatedIdentifier(String label) {
+			if (translation!=null) {
+				String name = translation.get(label);
+				if (name!=null) label = name;
+			}
+			return getIdentifier(label);
+		}
+
+		/*
+		 * Reads a number without creating a String, unless it has too many digits
+		 * or too large an exponent to be converted exactly.
+		 */
+		private double readNumber() {
+			int numberStart = pos;
+			boolean negative = false;
+			if (pos<end && (buf.get(pos)=='-' || buf.get(pos)=='+')) negative = (buf.get(pos++)=='-');
+			long mantissa = 0;
+			int significant = 0;
+			int exponent = 0;
+			boolean anyDigits = false, fraction = false;
+			for (; pos<end; pos++) {
+				byte c = buf.get(pos);
+				if (c>='0' && c<='9') {
+					anyDigits = true;
+					if (mantissa!=0 || c!='0') significant++;
+					if (significant<=18) mantissa = 10*mantissa + (c-'0');
+					else if (!fraction) exponent++;
+					if (fraction && significant<=18) exponent--;
+				} else if (c=='.' && !fraction) {
+					fraction = true;
+				} else {
+					break;
+				}
+			}
+			if (!anyDigits) throw error("Expected a number");
+			if (pos<end && (buf.get(pos)=='e' || buf.get(pos)=='E')) {
+				pos++;
+				boolean negativeExponent = false;
+				if (pos<end && (buf.get(pos)=='-' || buf.get(pos)=='+')) negativeExponent = (buf.get(pos++)=='-');
+				int e = 0;
+				int digitsStart = pos;
+				while (pos<end && buf.get(pos)>='0' && buf.get(pos)<='9') {
+					if (e<100000) e = 10*e + (buf.get(pos)-'0');
+					pos++;
+				}
+				if (pos==digitsStart) throw error("Expected an exponent");
+				exponent += negativeExponent ? -e : e;
+			}
+			double value;
+			if (significant<=18 && mantissa < (1L<<53) && Math.abs(exponent)<POWERS_OF_TEN.length) {
+				// both operands exact, so the result is correctly rounded
+				value = (exponent>=0) ? mantissa*POWERS_OF_TEN[exponent] : mantissa/POWERS_OF_TEN[-exponent];
+				if (negative) value = -value;
+			} else {
+				value = Double.parseDouble(decode(numberStart, pos));
+			}
+			return value;
+		}
+
+		/*
+		 * For the body of a NEXUS translate command: pairs of labels separated by commas.
+		 */
+		Map<String,String> readTranslation() {
+			Map<String,String> map = new HashMap<String,String>();
+			skipBlank();
+			while (pos<end) {
+				String key = readLabel();
+				map.put(key, readLabel());
+				skipBlank();
+				if (pos<end && buf.get(pos)==',') {
+					pos++;
+					skipBlank();
+				}
+			}
+			return map;
+		}
+
+		// Position of the next '=' not in a quoted label or comment
+		int findEquals() {
+			while (true) {
+				skipBlank();
+				if (pos>=end) throw error("Expected '='");
+				byte c = buf.get(pos);
+				if (c=='=') return pos;
+				if (c=='\'') readQuoted(); else pos++;
+			}
+		}
+	}
+
+	/*
+	 * Top level spliterator: scans the input sequentially, parsing trees itself or
+	 * handing out batches of them to other threads.
+	 */
+	private class TreeSpliterator implements Spliterator<Tree> {
+		private final Scanner scanner = new Scanner();
+		private Parser parser = null;
+		private int batchSize = FIRST_BATCH;
+
+		public boolean tryAdvance(Consumer<? super Tree> action) {
+			Statement statement = scanner.next();
+			if (statement==null) return false;
+			if (parser==null) parser = new Parser();
+			action.accept(parser.parseTree(statement));
+			return true;
+		}
+
+		public Spliterator<Tree> trySplit() {
+			Statement[] batch = new Statement[batchSize];
+			int n = 0;
+			for (Statement statement; n<batchSize && (statement=scanner.next())!=null; ) batch[n++] = statement;
+			if (n==0) return null;
+			batchSize = Math.min(2*batchSize, MAX_BATCH);
+			return new BatchSpliterator(batch, 0, n);
+		}
+
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE;
+		}
+	}
+
+	private class BatchSpliterator implements Spliterator<Tree> {
+		private final Statement[] batch;
+		private int from;
+		private final int to;
+		private Parser parser = null;
+
+		BatchSpliterator(Statement[] batch, int from, int to) {
+			this.batch = batch;
+			this.from = from;
+			this.to = to;
+		}
+
+		public boolean tryAdvance(Consumer<? super Tree> action) {
+			if (from>=to) return false;
+			if (parser==null) parser = new Parser();
+			action.accept(parser.parseTree(batch[from]));
+			batch[from++] = null; // allow the window to be unmapped once all its trees are parsed
+			return true;
+		}
+
+		public Spliterator<Tree> trySplit() {
+			int mid = (from+to)>>>1;
+			if (mid==from) return null;
+			Spliterator<Tree> prefix = new BatchSpliterator(batch, from, mid);
+			from = mid;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return to-from;
+		}
+
+		public int characteristics() {
+			return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package palExtensions;
+
+/**
+ * Distances between taxa 0..getIdCount()-1, which may be computed on demand rather than
+ * stored (c.f. pal.distance.DistanceMatrix, which stores all n^2 of them.)
+ */
+public interface PairwiseDistances {
+	public int getIdCount();
+	public double getDistance(int i, int j);
+}
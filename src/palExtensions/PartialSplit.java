@@ -25,7 +25,7 @@ public abstract class PartialSplit extends Split {
 	 */
 	public static Split toPartialSplit(IdGroup idGroup, boolean[] rawSplit, IdGroup universalIdGroup) {
 		if (universalIdGroup.getIdCount()>SmallPartialSplit.MAXSIZE) {
-			throw new RuntimeException("Splits over 64 length not yet implemented");
+			return new LongPartialSplit(idGroup, rawSplit, universalIdGroup);
 		} else {
 			return new SmallPartialSplit(idGroup, rawSplit, universalIdGroup);
 		}
@@ -66,14 +66,16 @@ public class Quadruple {
 	}
 	/**
 	 * Returns an array of all Quadruples from an idGroup.
-	 * NOTE! Size of array is O(n^4) in size of idGroup.
+	 * NOTE! Size of array is O(n^4) in size of idGroup. QuadrupleEnumerator avoids this.
 	 * @param idGroup
 	 * @return
 	 */
 	public static Quadruple[] allQuadruples(IdGroup idGroup) {
 		int n=idGroup.getIdCount();
 		if (n<4) throw new IllegalArgumentException("IdGroup too small");
-		int nQuadruples = n*(n-1)*(n-2)*(n-3)/24; // 24 = 4!
+		long count = QuadrupleEnumerator.count(n);
+		if (count > Integer.MAX_VALUE-8) throw new IllegalArgumentException("Too many quadruples for an array: use QuadrupleEnumerator");
+		int nQuadruples = (int)count;
 		Quadruple[] all = new  Quadruple[nQuadruples];
 		int next = 0;
 		for (int i=0; i<n-3; i++)
@@ -105,19 +107,46 @@ public class Quadruple {
 	 * @return
 	 */
 	public Quartet whichQuartet(DistanceMatrix dist) {
-		if (dist.getIdCount() != idGroup.getIdCount()) 
+		checkSize(dist.getIdCount());
+		return closest(quartets.get(Quartet.RESOLVED[0]).fourPointDistance(dist),
+				quartets.get(Quartet.RESOLVED[1]).fourPointDistance(dist),
+				quartets.get(Quartet.RESOLVED[2]).fourPointDistance(dist));
+	}
+	
+	/**
+	 * As whichQuartet(DistanceMatrix), for distances computed on demand. With a
+	 * TreeDistanceOracle (countEdges=true) this finds the quartet a tree displays
+	 * without an n by n distance matrix.
+	 */
+	public Quartet whichQuartet(PairwiseDistances dist) {
+		checkSize(dist.getIdCount());
+		return closest(quartets.get(Quartet.RESOLVED[0]).fourPointDistance(dist),
+				quartets.get(Quartet.RESOLVED[1]).fourPointDistance(dist),
+				quartets.get(Quartet.RESOLVED[2]).fourPointDistance(dist));
+	}
+	
+	private void checkSize(int nDist) {
+		if (nDist != idGroup.getIdCount()) 
 			throw new IllegalArgumentException("Distance matrix is the wrong size"); 
-		double minDist = Double.MAX_VALUE;
-		Topology bestTopo = null;
-		for (Topology topo : Quartet.RESOLVED) {
-			double thisDist = quartets.get(topo).fourPointDistance(dist);
-			if (thisDist == minDist) {
-				// we've seen this distance before, so (for now) topology is unresolved.
-				bestTopo = Topology.UNRESOLVED;
-			} else if (thisDist < minDist) {
-				minDist = thisDist;
-				bestTopo = topo;
-			} 
+	}
+	
+	/*
+	 * The quartet with the lowest four point distance, given the distances of the Quartet.RESOLVED
+	 * topologies in order. If the lowest distance is tied, the quartet is (for now) unresolved.
+	 */
+	private Quartet closest(double dist0, double dist1, double dist2) {
+		double minDist = dist0;
+		Topology bestTopo = Quartet.RESOLVED[0];
+		if (dist1 == minDist) {
+			bestTopo = Topology.UNRESOLVED;
+		} else if (dist1 < minDist) {
+			minDist = dist1;
+			bestTopo = Quartet.RESOLVED[1];
+		}
+		if (dist2 == minDist) {
+			bestTopo = Topology.UNRESOLVED;
+		} else if (dist2 < minDist) {
+			bestTopo = Quartet.RESOLVED[2];
 		}
 		return quartets.get(bestTopo);
 	}
@@ -0,0 +1,268 @@
+package palExtensions;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+import palExtensions.Quartet.Topology;
+
+/**
+ * Enumerates the quadruples (sets of 4 taxa) of an IdGroup lazily, without creating a
+ * Quadruple object for each as Quadruple.allQuadruples does.
+ *
+ * Quadruples i<j<k<l are numbered by the combinatorial number system:
+ * rank = C(i,1)+C(j,2)+C(k,3)+C(l,4), which runs from 0 to C(n,4)-1 in colexicographic order
+ * (ordered by l, then k, then j, then i.) rank and unrank convert between the two.
+ *
+ * Iteration and streams supply a QuadrupleView, a flyweight which is overwritten with
+ * each new quadruple, so nothing is allocated per quadruple. Views must not be kept:
+ * use QuadrupleView.toQuadruple() to keep a copy. Spliterators divide the rank range,
+ * so parallel streams work well.
+ */
+public class QuadrupleEnumerator implements Iterable<QuadrupleEnumerator.QuadrupleView> {
+	/** Largest n for which C(n,4) fits in a long */
+	public static final int MAX_TAXA = 121977;
+	private final IdGroup idGroup;
+	private final int n;
+	private final long count;
+	private final long[][] binomial; // binomial[k][m] = C(m,k), k=1..4
+
+	public QuadrupleEnumerator(IdGroup idGroup) {
+		this.idGroup = idGroup;
+		n = idGroup.getIdCount();
+		if (n<4) throw new IllegalArgumentException("IdGroup too small");
+		if (n>MAX_TAXA) throw new IllegalArgumentException("Too many taxa to number quadruples with a long");
+		binomial = new long[5][n+1];
+		for (int m=0; m<=n; m++) {
+			binomial[1][m] = m;
+			binomial[2][m] = (long)m*(m-1)/2;
+			binomial[3][m] = binomial[2][m]*(m-2)/3;
+			binomial[4][m] = timesQuarter(binomial[3][m], m-3);
+		}
+		count = binomial[4][n];
+	}
+
+	/**
+	 * @return C(n,4), the number of quadruples of n taxa. n must be at most MAX_TAXA.
+	 */
+	public static long count(int n) {
+		if (n<4) return 0;
+		if (n>MAX_TAXA) throw new IllegalArgumentException("Too many taxa to count quadruples with a long");
+		long m = n;
+		return timesQuarter(m*(m-1)/2*(m-2)/3, m-3);
+	}
+
+	/*
+	 * c*m/4, for c*m divisible by 4, without overflow when c*m/4 fits in a long
+	 * (c*m itself overflows for n above about 86000.)
+	 */
+	private static long timesQuarter(long c, long m) {
+		return (c/4)*m + (c%4)*m/4;
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * @param i
+	 * @param j
+	 * @param k
+	 * @param l taxon indices, with i<j<k<l
+	 * @return rank of the quadruple, from 0 to count()-1
+	 */
+	public long rank(int i, int j, int k, int l) {
+		if (i<0 || i>=j || j>=k || k>=l || l>=n) throw new IllegalArgumentException("Indices must be within range in increasing order");
+		return binomial[1][i] + binomial[2][j] + binomial[3][k] + binomial[4][l];
+	}
+
+	/**
+	 * Writes the taxon indices of quadruple 'rank' (in increasing order) into dest[0..3].
+	 */
+	public void unrank(long rank, int[] dest) {
+		if (rank<0 || rank>=count) throw new IllegalArgumentException("Rank out of range");
+		int upper = n;
+		for (int k=4; k>=1; k--) {
+			// largest m<upper with C(m,k) <= rank, by binary search
+			long[] table = binomial[k];
+			int low = k-1;
+			int high = upper-1;
+			while (low<high) {
+				int mid = (low+high+1)>>>1;
+				if (table[mid]<=rank) low = mid; else high = mid-1;
+			}
+			dest[k-1] = low;
+			rank -= table[low];
+			upper = low;
+		}
+	}
+
+	public Iterator<QuadrupleView> iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	public Spliterator<QuadrupleView> spliterator() {
+		return spliterator(0, count);
+	}
+
+	/**
+	 * @return Spliterator over quadruples with rank in [from,to)
+	 */
+	public Spliterator<QuadrupleView> spliterator(long from, long to) {
+		if (from<0 || to>count || from>to) throw new IllegalArgumentException("Rank range out of range");
+		return new RankSpliterator(from, to);
+	}
+
+	public Stream<QuadrupleView> stream(boolean parallel) {
+		return StreamSupport.stream(spliterator(), parallel);
+	}
+
+	/**
+	 * A quadruple, reused for successive quadruples of an enumeration.
+	 */
+	public class QuadrupleView {
+		private final int[] index = new int[4];
+		private long rank;
+
+		public long getRank() {
+			return rank;
+		}
+
+		/**
+		 * @param i 0..3
+		 * @return index (lookup-number into IdGroup) of that member of the quadruple.
+		 */
+		public int getIndex(int i) {
+			return index[i];
+		}
+
+		/**
+		 * As Quartet.getIndex: taxa i=0,1 are at one end of the quartet with topology 'topo',
+		 * i=2,3 at the other.
+		 */
+		public int getIndex(Topology topo, int i) {
+			return index[Quartet.ORDER[topo.ordinal()][i]];
+		}
+
+		public Identifier getIdentifier(int i) {
+			return idGroup.getIdentifier(index[i]);
+		}
+
+		/**
+		 * As Quartet.fourPointDistance, for the quartet on this quadruple with topology 'topo'
+		 */
+		public double fourPointDistance(Topology topo, PairwiseDistances dist) {
+			int[] order = Quartet.ORDER[topo.ordinal()];
+			return dist.getDistance(index[order[0]], index[order[1]]) + dist.getDistance(index[order[2]], index[order[3]]);
+		}
+
+		/**
+		 * As Quadruple.whichQuartet, but returns only the topology.
+		 */
+		public Topology whichTopology(PairwiseDistances dist) {
+			double minDist = Double.MAX_VALUE;
+			Topology bestTopo = null;
+			for (Topology topo : Quartet.RESOLVED) {
+				double thisDist = fourPointDistance(topo, dist);
+				if (thisDist == minDist) {
+					bestTopo = Topology.UNRESOLVED;
+				} else if (thisDist < minDist) {
+					minDist = thisDist;
+					bestTopo = topo;
+				}
+			}
+			return bestTopo;
+		}
+
+		/**
+		 * @return a Quadruple equal to this view, which (unlike the view) will not change.
+		 */
+		public Quadruple toQuadruple() {
+			return new Quadruple(idGroup, index);
+		}
+
+		// Moves to the next quadruple in colex order
+		private void advance() {
+			rank++;
+			for (int c=0; c<3; c++) {
+				if (index[c]+1<index[c+1]) {
+					index[c]++;
+					for (int d=0; d<c; d++) index[d] = d;
+					return;
+				}
+			}
+			index[3]++;
+			for (int d=0; d<3; d++) index[d] = d;
+		}
+
+		@Override
+		public String toString() {
+			return "Quad["+getIdentifier(0).toString()+","
+			              +getIdentifier(1).toString()+","
+			              +getIdentifier(2).toString()+","
+			              +getIdentifier(3).toString()+"]";
+		}
+	}
+
+	private class RankSpliterator implements Spliterator<QuadrupleView> {
+		private long next;   // rank of next quadruple to supply
+		private final long end;
+		private QuadrupleView view = null; // positioned at rank next-1, or null if not yet positioned
+
+		RankSpliterator(long from, long to) {
+			next = from;
+			end = to;
+		}
+
+		public boolean tryAdvance(Consumer<? super QuadrupleView> action) {
+			if (next>=end) return false;
+			step();
+			action.accept(view);
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super QuadrupleView> action) {
+			while (next<end) {
+				step();
+				action.accept(view);
+			}
+		}
+
+		private void step() {
+			if (view==null) {
+				view = new QuadrupleView();
+				unrank(next, view.index);
+				view.rank = next;
+			} else {
+				view.advance();
+			}
+			next++;
+		}
+
+		public Spliterator<QuadrupleView> trySplit() {
+			long mid = next+(end-next)/2;
+			if (mid==next) return null;
+			Spliterator<QuadrupleView> prefix = new RankSpliterator(next, mid);
+			next = mid;
+			view = null;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return end-next;
+		}
+
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL;
+		}
+	}
+}
@@ -62,6 +62,15 @@ public class Quartet {
 			   dist.getDistance(this.getIndex(2), this.getIndex(3));
 	}
 	
+	/**
+	 * As fourPointDistance(DistanceMatrix), for distances computed on demand
+	 * (e.g. a TreeDistanceOracle.)
+	 */
+	public double fourPointDistance(PairwiseDistances dist) {
+		return dist.getDistance(this.getIndex(0), this.getIndex(1))+
+			   dist.getDistance(this.getIndex(2), this.getIndex(3));
+	}
+	
 	public String toString() {
 		int[] order = ORDER[topo.ordinal()];
 		if (topo!=Topology.UNRESOLVED) {
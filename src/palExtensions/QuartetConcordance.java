@@ -0,0 +1,158 @@
+package palExtensions;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import palExtensions.Quartet.Topology;
+import palExtensions.QuadrupleEnumerator.QuadrupleView;
+
+/**
+ * Counts, for every quadruple of taxa, how many trees display each of the three resolved
+ * quartets on it, giving quartet concordance factors over a collection of (gene) trees.
+ *
+ * Counts are held as three ints per quadruple, indexed by QuadrupleEnumerator rank, so
+ * C(n,4) must be under about 7*10^8 (n up to about 320.) Each tree's quartets are found by the
+ * four point condition on a TreeDistanceOracle, without creating Quartet objects.
+ *
+ * addTrees processes trees in parallel: each worker counts into its own array, which is
+ * added to the totals when the worker has finished its share of the trees. This needs
+ * (parallelism+1)*12*C(n,4) bytes at peak. addTree finds the tree's quartets (C(n,4) bytes)
+ * before taking the lock, so concurrent callers and readers only wait for the merge.
+ */
+public class QuartetConcordance {
+	private static final int N_RESOLVED = Quartet.RESOLVED.length;
+	private final IdGroup idGroup;
+	private final QuadrupleEnumerator enumerator;
+	private final int[] counts; // counts[3*rank + topology.ordinal()-1]
+	private long nTrees = 0;
+
+	/**
+	 * @param idGroup the taxa, in the order which determines quadruple ranks.
+	 */
+	public QuartetConcordance(IdGroup idGroup) {
+		this.idGroup = idGroup;
+		enumerator = new QuadrupleEnumerator(idGroup);
+		long size = N_RESOLVED*enumerator.count();
+		if (size > Integer.MAX_VALUE-8) throw new IllegalArgumentException("Too many taxa: too many quadruples to count");
+		counts = new int[(int)size];
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public QuadrupleEnumerator getEnumerator() {
+		return enumerator;
+	}
+
+	public synchronized long getTreeCount() {
+		return nTrees;
+	}
+
+	/**
+	 * Tree must have exactly the taxa of this object's IdGroup as leaf labels.
+	 */
+	public void addTree(Tree tree) {
+		final byte[] topologies = new byte[(int)enumerator.count()]; // topology ordinal of each quadruple
+		final TreeDistanceOracle oracle = new TreeDistanceOracle(tree, idGroup, true);
+		enumerator.spliterator().forEachRemaining(new Consumer<QuadrupleView>() {
+			public void accept(QuadrupleView quad) {
+				topologies[(int)quad.getRank()] = (byte)quad.whichTopology(oracle).ordinal();
+			}
+		});
+		synchronized (this) {
+			for (int rank=0; rank<topologies.length; rank++) {
+				if (topologies[rank]!=0) counts[N_RESOLVED*rank + topologies[rank]-1]++;
+			}
+			nTrees++;
+		}
+	}
+
+	public void addTrees(List<Tree> trees) {
+		addTrees(trees, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Adds the trees, processing them in parallel.
+	 */
+	public void addTrees(List<Tree> trees, ForkJoinPool pool) {
+		Tree[] array = trees.toArray(new Tree[trees.size()]);
+		int share = Math.max(1, (array.length+pool.getParallelism()-1)/pool.getParallelism());
+		pool.invoke(new CountTask(array, 0, array.length, share));
+	}
+
+	/**
+	 * @param rank of a quadruple (see QuadrupleEnumerator)
+	 * @param topology a resolved topology
+	 * @return number of trees displaying that quartet
+	 */
+	public synchronized int getCount(long rank, Topology topology) {
+		if (topology==Topology.UNRESOLVED) throw new IllegalArgumentException("Only resolved topologies are counted");
+		return counts[(int)(N_RESOLVED*rank) + topology.ordinal()-1];
+	}
+
+	/**
+	 * @return proportion of trees which display this quartet
+	 */
+	public synchronized double getConcordanceFactor(long rank, Topology topology) {
+		return (double)getCount(rank, topology)/nTrees;
+	}
+
+	/**
+	 * Writes the concordance factors of the three resolved quartets of quadruple 'rank',
+	 * in the order of Quartet.RESOLVED, into dest[0..2]. (They sum to less than one if
+	 * some trees do not resolve the quadruple.)
+	 */
+	public synchronized void getConcordanceFactors(long rank, double[] dest) {
+		int offset = (int)(N_RESOLVED*rank);
+		for (int t=0; t<N_RESOLVED; t++) dest[t] = (double)counts[offset+t]/nTrees;
+	}
+
+	private void countQuartets(Tree tree, final int[] treeCounts) {
+		final TreeDistanceOracle oracle = new TreeDistanceOracle(tree, idGroup, true);
+		Spliterator<QuadrupleView> quads = enumerator.spliterator();
+		quads.forEachRemaining(new Consumer<QuadrupleView>() {
+			public void accept(QuadrupleView quad) {
+				Topology topology = quad.whichTopology(oracle);
+				if (topology!=Topology.UNRESOLVED) treeCounts[(int)(N_RESOLVED*quad.getRank()) + topology.ordinal()-1]++;
+			}
+		});
+	}
+
+	private synchronized void merge(int[] treeCounts, int nTreesCounted) {
+		for (int i=0; i<counts.length; i++) counts[i] += treeCounts[i];
+		nTrees += nTreesCounted;
+	}
+
+	/*
+	 * Counts trees [from,to), splitting into tasks of at most 'share' trees, each with its own counters.
+	 */
+	private class CountTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Tree[] trees;
+		private final int from, to, share;
+		CountTask(Tree[] trees, int from, int to, int share) {
+			this.trees = trees;
+			this.from = from;
+			this.to = to;
+			this.share = share;
+		}
+		@Override
+		protected void compute() {
+			if (to-from<=share) {
+				if (from==to) return;
+				int[] localCounts = new int[counts.length];
+				for (int t=from; t<to; t++) countQuartets(trees[t], localCounts);
+				merge(localCounts, to-from);
+			} else {
+				int mid = (from+to)>>>1;
+				invokeAll(new CountTask(trees, from, mid, share), new CountTask(trees, mid, to, share));
+			}
+		}
+	}
+}
@@ -0,0 +1,288 @@
+package palExtensions;
+
+import java.util.HashMap;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+
+/**
+ * Quartet distance between two trees on the same taxa: the number of quadruples on which
+ * the trees' quartets (as found by Quadruple.whichQuartet) differ. Trees may be non-binary:
+ * a quadruple unresolved in one tree and resolved in the other counts as different, one
+ * unresolved in both as the same.
+ *
+ * Counting is done without enumerating quadruples. In a tree, the resolved quartet ab|cd is
+ * seen at exactly two nodes as 'two taxa in one subtree around the node, the other two in two
+ * other subtrees', and an unresolved quartet at exactly one node as 'all four in different
+ * subtrees'. For each pair of nodes (one from each tree) the numbers of shared and of differently
+ * resolved quartets seen there are calculated from the matrix of intersection sizes of the subtrees
+ * around the two nodes. Then
+ * distance = resolved1 + resolved2 - 2*shared - different.
+ *
+ * Time is O(n^2) for trees of bounded degree (O(n^2 d) for maximum degree d). Rows of the
+ * table of subtree intersection sizes are discarded once used, so memory is usually well
+ * below n^2.
+ */
+public class QuartetDistance {
+	private final long nQuadruples;
+	private final long resolved1, resolved2;
+	private final long shared;      // quadruples resolved the same way in both trees
+	private final long different;   // quadruples resolved differently in the two trees
+
+	// inputs and scratch space for the current pair of nodes
+	private final int n;
+	private final IndexedTree t1, t2;
+	private final int[][] rows; // rows[x][y] = |L1(x) intersect L2(y)| for internal nodes x of t1
+	private long[] m, rowSize, colSize, rowC2, colC2, rowTerm, colTerm, rowSquares, rowDotCol, colDotRow, colSquares;
+	private long sharedTwice = 0, differentFourTimes = 0;
+
+	/**
+	 * @param tree1
+	 * @param tree2 must have the same leaf labels as tree1
+	 */
+	public QuartetDistance(Tree tree1, Tree tree2) {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(tree1);
+		n = idGroup.getIdCount();
+		HashMap<String,Integer> taxonIndex = IdGroupUtils.indexMap(idGroup);
+		t1 = new IndexedTree(tree1, taxonIndex, n);
+		t2 = new IndexedTree(tree2, taxonIndex, n);
+		if (tree2.getExternalNodeCount()!=n) throw new IllegalArgumentException("Trees have different numbers of leaves");
+		nQuadruples = QuadrupleEnumerator.count(n);
+		resolved1 = nQuadruples - countUnresolved(t1);
+		resolved2 = nQuadruples - countUnresolved(t2);
+
+		int maxDegree = Math.max(maxDegree(t1), maxDegree(t2));
+		allocateScratch(maxDegree);
+		rows = new int[t1.nNodes][];
+		// Reverse preorder, so each node's children are done before it.
+		for (int x=t1.nNodes-1; x>=0; x--) {
+			if (t1.isLeaf(x)) continue;
+			int[] row = new int[t2.nNodes];
+			for (int c : t1.children[x]) {
+				if (t1.isLeaf(c)) {
+					for (int y=t2.leafNode[t1.taxon[c]]; y>=0; y=t2.parent[y]) row[y]++;
+				} else {
+					int[] childRow = rows[c];
+					for (int y=0; y<t2.nNodes; y++) row[y] += childRow[y];
+				}
+			}
+			rows[x] = row;
+			for (int y=0; y<t2.nNodes; y++) {
+				if (!t2.isLeaf(y)) countPair(x, y);
+			}
+			for (int c : t1.children[x]) rows[c] = null;
+		}
+		if (sharedTwice%2!=0 || differentFourTimes%4!=0) throw new RuntimeException("Quartet distance: inconsistent counts (bug)");
+		shared = sharedTwice/2;
+		different = differentFourTimes/4;
+	}
+
+	/**
+	 * @return the quartet distance between tree1 and tree2
+	 */
+	public static long distance(Tree tree1, Tree tree2) {
+		return new QuartetDistance(tree1, tree2).getDistance();
+	}
+
+	public long getDistance() {
+		return resolved1 + resolved2 - 2*shared - different;
+	}
+
+	public long getQuadrupleCount() {
+		return nQuadruples;
+	}
+
+	/**
+	 * @return number of quadruples resolved in tree1
+	 */
+	public long getResolved1() {
+		return resolved1;
+	}
+
+	/**
+	 * @return number of quadruples resolved in tree2
+	 */
+	public long getResolved2() {
+		return resolved2;
+	}
+
+	/**
+	 * @return number of quadruples resolved, and resolved the same way, in both trees
+	 */
+	public long getSharedResolved() {
+		return shared;
+	}
+
+	/**
+	 * @return number of quadruples resolved in both trees, but differently
+	 */
+	public long getDifferentlyResolved() {
+		return different;
+	}
+
+	private static int maxDegree(IndexedTree tree) {
+		int max = 0;
+		for (int x=0; x<tree.nNodes; x++) max = Math.max(max, tree.children[x].length+1);
+		return max;
+	}
+
+	private void allocateScratch(int d) {
+		m = new long[d*d];
+		rowSize = new long[d];
+		colSize = new long[d];
+		rowC2 = new long[d];
+		colC2 = new long[d];
+		rowTerm = new long[d];
+		colTerm = new long[d];
+		rowSquares = new long[d];
+		rowDotCol = new long[d];
+		colDotRow = new long[d];
+		colSquares = new long[d];
+	}
+
+	private static long choose2(long k) {
+		return k*(k-1)/2;
+	}
+
+	/*
+	 * Quadruples with all four taxa in different subtrees around some node
+	 */
+	private long countUnresolved(IndexedTree tree) {
+		long unresolved = 0;
+		for (int x=0; x<tree.nNodes; x++) {
+			if (tree.isLeaf(x)) continue;
+			// elementary symmetric polynomials of the subtree sizes around x
+			long e1 = 0, e2 = 0, e3 = 0, e4 = 0;
+			for (int i=0; i<=tree.children[x].length; i++) {
+				long size;
+				if (i<tree.children[x].length) {
+					size = tree.leafCount[tree.children[x][i]];
+				} else {
+					size = n-tree.leafCount[x]; // parent side (0 for the root)
+				}
+				e4 += e3*size;
+				e3 += e2*size;
+				e2 += e1*size;
+				e1 += size;
+			}
+			unresolved += e4;
+		}
+		return unresolved;
+	}
+
+	// |L1(a) intersect L2(b)|, for a a child of the current tree1 node
+	private long intersection(int a, int b) {
+		if (t1.isLeaf(a)) return t2.contains(b, t2.leafNode[t1.taxon[a]]) ? 1 : 0;
+		return rows[a][b];
+	}
+
+	/*
+	 * Adds the counts of quartets seen at node x of tree1 and node y of tree2.
+	 * The subtrees around a node are its children's subtrees, then (unless it is the root)
+	 * the rest of the tree.
+	 */
+	private void countPair(int x, int y) {
+		int[] xChildren = t1.children[x];
+		int[] yChildren = t2.children[y];
+		int dx = xChildren.length + (t1.parent[x]>=0 ? 1 : 0);
+		int dy = yChildren.length + (t2.parent[y]>=0 ? 1 : 0);
+		if (dx<3 || dy<3) return; // no quartets are seen at a node of degree < 3
+
+		// Intersection matrix
+		for (int k=0; k<dx; k++) {
+			boolean kChild = k<xChildren.length;
+			rowSize[k] = kChild ? t1.leafCount[xChildren[k]] : n-t1.leafCount[x];
+			for (int r=0; r<dy; r++) {
+				boolean rChild = r<yChildren.length;
+				long value;
+				if (kChild && rChild) {
+					value = intersection(xChildren[k], yChildren[r]);
+				} else if (kChild) {
+					value = t1.leafCount[xChildren[k]] - intersection(xChildren[k], y);
+				} else if (rChild) {
+					value = t2.leafCount[yChildren[r]] - rows[x][yChildren[r]];
+				} else {
+					value = n - t1.leafCount[x] - t2.leafCount[y] + rows[x][y];
+				}
+				m[k*dy+r] = value;
+			}
+		}
+		for (int r=0; r<dy; r++) colSize[r] = (r<yChildren.length) ? t2.leafCount[yChildren[r]] : n-t2.leafCount[y];
+
+		// Sums over rows and columns
+		long allC2 = 0;
+		for (int k=0; k<dx; k++) rowC2[k] = rowTerm[k] = rowSquares[k] = rowDotCol[k] = 0;
+		for (int r=0; r<dy; r++) colC2[r] = colTerm[r] = colDotRow[r] = colSquares[r] = 0;
+		for (int k=0; k<dx; k++) {
+			for (int r=0; r<dy; r++) {
+				long v = m[k*dy+r];
+				long c2 = choose2(v);
+				allC2 += c2;
+				rowC2[k] += c2;
+				colC2[r] += c2;
+				colTerm[r] += choose2(rowSize[k]-v);
+				rowTerm[k] += choose2(colSize[r]-v);
+				rowSquares[k] += v*v;
+				rowDotCol[k] += v*colSize[r];
+				colDotRow[r] += v*rowSize[k];
+				colSquares[r] += v*v;
+			}
+		}
+
+		for (int k=0; k<dx; k++) {
+			for (int r=0; r<dy; r++) {
+				long v = m[k*dy+r];
+				if (v==0) continue;
+				long rk = rowSize[k], cr = colSize[r];
+				// Shared: a pair in subtree k of x and r of y, the other two in different subtrees
+				// (other than k, r) at both nodes.
+				if (v>=2) {
+					long pairs = choose2(n - rk - cr + v)
+							- (colTerm[r] - choose2(rk-v))
+							- (rowTerm[k] - choose2(cr-v))
+							+ allC2 - rowC2[k] - colC2[r] + choose2(v);
+					sharedTwice += choose2(v)*pairs;
+				}
+				// Different: taxa c,c' in subtree k of x, a,a' in other subtrees of x; c and a in
+				// subtree r of y, c' and a' in different other subtrees of y.
+				long outsideRow = rk - v;
+				long s1 = cr - v;
+				long s2 = colDotRow[r] - v*rk;
+				long s3 = colSquares[r] - v*v;
+				long count = outsideRow*((n - rk - cr + v)*s1 - s2 + s3)
+						+ s1*(rowSquares[k] - rowDotCol[k] + v*cr - v*v)
+						- v*s3;
+				differentFourTimes += v*count;
+			}
+		}
+		differentFourTimes += offDiagonalGramSquares(dx, dy);
+	}
+
+	/*
+	 * Sum over k!=i of G[k][i]^2, where G = M M^T. As the sum of squares of all entries of M M^T
+	 * equals that of M^T M, uses whichever is smaller.
+	 */
+	private long offDiagonalGramSquares(int dx, int dy) {
+		long total = 0;
+		if (dx<=dy) {
+			for (int k=0; k<dx; k++) {
+				for (int i=k+1; i<dx; i++) {
+					long g = 0;
+					for (int r=0; r<dy; r++) g += m[k*dy+r]*m[i*dy+r];
+					total += 2*g*g;
+				}
+			}
+		} else {
+			for (int r=0; r<dy; r++) {
+				for (int s=r; s<dy; s++) {
+					long h = 0;
+					for (int k=0; k<dx; k++) h += m[k*dy+r]*m[k*dy+s];
+					total += (r==s) ? h*h : 2*h*h;
+				}
+			}
+			for (int k=0; k<dx; k++) total -= rowSquares[k]*rowSquares[k];
+		}
+		return total;
+	}
+}
@@ -0,0 +1,292 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.misc.IdGroup;
+import pal.tree.Node;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+import palExtensions.Quartet.Topology;
+
+/**
+ * Reconstructs a tree from quartets by quartet puzzling (Strimmer & von Haeseler 1996):
+ * taxa are added in a random order, each on the edge of the tree so far which violates the
+ * least weight of supported quartets. Many such puzzling steps are run, each with its own
+ * insertion order, and summarised by a majority rule consensus.
+ *
+ * For a new taxon x, a quartet ab|cx penalises inserting x on each edge of the path from a
+ * to b. All quartets on x and three taxa of the tree are first accumulated into a pair matrix
+ * P(a,b), after which the penalty of an edge is the sum of P over pairs of taxa it separates,
+ * found for all edges in one traversal. A puzzling step reads each quartet once, so takes
+ * O(n^4) time.
+ *
+ * Steps are independent, and are run in parallel in a ForkJoinPool. Step s uses substream s
+ * of the seed (ExtRandom.substream), so results do not depend on the pool.
+ */
+public class QuartetPuzzler {
+	private final QuartetSupport support;
+	private final QuadrupleEnumerator enumerator;
+	private final IdGroup idGroup;
+	private final int n;
+
+	public QuartetPuzzler(QuartetSupport support) {
+		this.support = support;
+		enumerator = support.getEnumerator();
+		idGroup = enumerator.getIdGroup();
+		n = idGroup.getIdCount();
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	/**
+	 * Majority rule consensus of nSteps puzzling steps, run in the common pool.
+	 * Internal nodes carry the proportion of steps supporting them in attribute NeoSplitUtils.SUPPORT.
+	 */
+	public Tree reconstruct(int nSteps, long seed) {
+		return puzzle(nSteps, seed, ForkJoinPool.commonPool()).getMajorityRuleConsensus();
+	}
+
+	/**
+	 * Runs nSteps puzzling steps in parallel.
+	 * @return consensus of the resulting trees, from which any type of consensus tree may be found
+	 */
+	public SplitConsensus puzzle(int nSteps, long seed, ForkJoinPool pool) {
+		SplitConsensus consensus = new SplitConsensus(idGroup);
+		pool.invoke(new PuzzleTask(consensus, seed, 0, nSteps));
+		return consensus;
+	}
+
+	/**
+	 * One puzzling step.
+	 * @return an unrooted binary tree (trifurcating root) on all the taxa
+	 */
+	public Tree puzzle(ExtRandom rng) {
+		return new Step(rng).run();
+	}
+
+	/*
+	 * A tree under construction. Taxon t is node t; internal nodes are numbered from n.
+	 * The tree is rooted at the leaf of the first taxon in the insertion order, so every
+	 * internal node has exactly two children, and every edge is identified by its lower node.
+	 */
+	private class Step {
+		private final ExtRandom rng;
+		private final int[] parent = new int[2*n];
+		private final int[][] children = new int[2*n][2];
+		private final int root;
+		private int nNodes = n;
+		private final double[] pairPenalty = new double[n*n]; // P(a,b), for taxa in the tree
+		private final int[] taxa; // insertion order
+		// scratch for computing edge penalties
+		private final int[] leafOrder = new int[n];  // tree leaves in depth first order
+		private final int[] firstLeaf = new int[2*n]; // node's leaves are leafOrder[firstLeaf..lastLeaf)
+		private final int[] lastLeaf = new int[2*n];
+		private final double[] rowSum = new double[2*n]; // sum of P(a,b) over a below node, b in tree
+		private final double[] inner = new double[2*n];  // sum of P(a,b) over pairs a<b below node
+		private final int[] postOrder = new int[2*n];
+		private final int[] stack = new int[2*n];
+
+		Step(ExtRandom rng) {
+			this.rng = rng;
+			taxa = new int[n];
+			for (int i=0; i<n; i++) taxa[i] = i;
+			for (int i=n-1; i>0; i--) {
+				int j = rng.nextInt(i+1);
+				int temp = taxa[i];
+				taxa[i] = taxa[j];
+				taxa[j] = temp;
+			}
+			// start with a star on the first three taxa
+			root = taxa[0];
+			int center = nNodes++;
+			parent[root] = -1;
+			children[root][0] = center;
+			parent[center] = root;
+			children[center][0] = taxa[1];
+			children[center][1] = taxa[2];
+			parent[taxa[1]] = center;
+			parent[taxa[2]] = center;
+		}
+
+		Tree run() {
+			for (int k=3; k<n; k++) {
+				int x = taxa[k];
+				fillPairPenalties(x, k);
+				insert(x, bestEdge(k));
+			}
+			return toTree();
+		}
+
+		/*
+		 * P(a,b) = weight of quartets ab|cx, for a,b,c among the first k taxa.
+		 */
+		private void fillPairPenalties(int x, int k) {
+			for (int p=0; p<k; p++) {
+				for (int q=0; q<k; q++) pairPenalty[taxa[p]*n+taxa[q]] = 0;
+			}
+			int[] sorted = new int[k];
+			System.arraycopy(taxa, 0, sorted, 0, k);
+			Arrays.sort(sorted);
+			int[] quad = new int[4];
+			for (int a=0; a<k; a++) {
+				for (int b=a+1; b<k; b++) {
+					for (int c=b+1; c<k; c++) {
+						// merge x into sorted[a]<sorted[b]<sorted[c]
+						int xPos = (sorted[a]<x ? 1 : 0) + (sorted[b]<x ? 1 : 0) + (sorted[c]<x ? 1 : 0);
+						for (int i=0, j=a; i<4; i++) {
+							if (i==xPos) {
+								quad[i] = x;
+							} else {
+								quad[i] = sorted[j];
+								j = (j==a) ? b : c;
+							}
+						}
+						long rank = enumerator.rank(quad[0], quad[1], quad[2], quad[3]);
+						Topology topology = support.getQuartetTopology(rank);
+						int partner;
+						switch (topology) {
+						case P01V23: partner = xPos^1; break;
+						case P02V13: partner = xPos^2; break;
+						case P03V12: partner = 3-xPos; break;
+						default: continue;
+						}
+						double weight = support.getQuartetWeight(rank);
+						// the two positions which are neither x nor its partner
+						int first = -1, second = -1;
+						for (int i=0; i<4; i++) {
+							if (i==xPos || i==partner) continue;
+							if (first<0) first = quad[i]; else second = quad[i];
+						}
+						pairPenalty[first*n+second] += weight;
+						pairPenalty[second*n+first] += weight;
+					}
+				}
+			}
+		}
+
+		/*
+		 * Finds the (lower node of the) edge with least penalty, choosing randomly between ties.
+		 * k = number of taxa in the tree.
+		 */
+		private int bestEdge(int k) {
+			// iterative depth first traversal, below the root, recording leaf ranges and post-order
+			int nPost = 0;
+			int nLeaves = 0;
+			int depth = 0;
+			stack[depth++] = children[root][0];
+			while (depth>0) {
+				int node = stack[--depth];
+				if (node>=0) {
+					firstLeaf[node] = nLeaves;
+					if (node<n) {
+						leafOrder[nLeaves++] = node;
+						lastLeaf[node] = nLeaves;
+						postOrder[nPost++] = node;
+					} else {
+						stack[depth++] = ~node; // revisit after children
+						stack[depth++] = children[node][1];
+						stack[depth++] = children[node][0];
+					}
+				} else {
+					node = ~node;
+					lastLeaf[node] = nLeaves;
+					postOrder[nPost++] = node;
+				}
+			}
+			for (int p=0; p<nPost; p++) {
+				int node = postOrder[p];
+				if (node<n) {
+					double sum = 0;
+					for (int q=0; q<k; q++) sum += pairPenalty[node*n+taxa[q]];
+					rowSum[node] = sum;
+					inner[node] = 0;
+				} else {
+					int left = children[node][0];
+					int right = children[node][1];
+					double cross = 0;
+					for (int a=firstLeaf[left]; a<lastLeaf[left]; a++) {
+						int rowStart = leafOrder[a]*n;
+						for (int b=firstLeaf[right]; b<lastLeaf[right]; b++) cross += pairPenalty[rowStart+leafOrder[b]];
+					}
+					rowSum[node] = rowSum[left]+rowSum[right];
+					inner[node] = inner[left]+inner[right]+cross;
+				}
+			}
+			// penalty of edge above node = sum of P(a,b), a below, b not below
+			double best = Double.MAX_VALUE;
+			int bestNode = -1;
+			int nTies = 0;
+			for (int p=0; p<nPost; p++) {
+				int node = postOrder[p];
+				double penalty = rowSum[node]-2*inner[node];
+				if (penalty<best) {
+					best = penalty;
+					bestNode = node;
+					nTies = 1;
+				} else if (penalty==best && rng.nextInt(++nTies)==0) {
+					bestNode = node; // reservoir sampling between ties
+				}
+			}
+			return bestNode;
+		}
+
+		// inserts leaf x on the edge above 'node'
+		private void insert(int x, int node) {
+			int w = nNodes++;
+			int p = parent[node];
+			int[] siblings = children[p];
+			if (siblings[0]==node) siblings[0] = w; else siblings[1] = w;
+			parent[w] = p;
+			children[w][0] = node;
+			children[w][1] = x;
+			parent[node] = w;
+			parent[x] = w;
+		}
+
+		private Tree toTree() {
+			Node[] nodes = new Node[nNodes];
+			for (int i=0; i<nNodes; i++) {
+				nodes[i] = new SimpleNode();
+				if (i<n) nodes[i].setIdentifier(idGroup.getIdentifier(i));
+			}
+			int top = children[root][0];
+			for (int i=0; i<nNodes; i++) {
+				if (i!=root && i!=top) nodes[parent[i]].addChild(nodes[i]);
+			}
+			nodes[top].addChild(nodes[root]);
+			return new SimpleTree(nodes[top]);
+		}
+	}
+
+	/*
+	 * Runs puzzling steps [from,to), adding the trees to the consensus
+	 */
+	private class PuzzleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final SplitConsensus consensus;
+		private final long seed;
+		private final int from, to;
+		PuzzleTask(SplitConsensus consensus, long seed, int from, int to) {
+			this.consensus = consensus;
+			this.seed = seed;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>1) {
+				int mid = (from+to)>>>1;
+				invokeAll(new PuzzleTask(consensus, seed, from, mid), new PuzzleTask(consensus, seed, mid, to));
+				return;
+			}
+			for (int step=from; step<to; step++) {
+				consensus.addTree(puzzle(ExtRandom.substream(seed, step)));
+			}
+		}
+	}
+}
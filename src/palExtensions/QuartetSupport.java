@@ -0,0 +1,24 @@
+package palExtensions;
+
+import palExtensions.Quartet.Topology;
+
+/**
+ * A source of quartet topologies with weights, indexed by quadruple rank
+ * (see QuadrupleEnumerator), e.g. as input to QuartetPuzzler.
+ */
+public interface QuartetSupport {
+	/**
+	 * @return enumerator defining the taxa and the quadruple ranks
+	 */
+	public QuadrupleEnumerator getEnumerator();
+
+	/**
+	 * @return the supported topology on quadruple 'rank' (UNRESOLVED if none)
+	 */
+	public Topology getQuartetTopology(long rank);
+
+	/**
+	 * @return weight of the supported topology on quadruple 'rank' (0 if none)
+	 */
+	public double getQuartetWeight(long rank);
+}
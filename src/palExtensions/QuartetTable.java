@@ -0,0 +1,212 @@
+package palExtensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import palExtensions.Quartet.Topology;
+import palExtensions.QuadrupleEnumerator.QuadrupleView;
+
+/**
+ * The topology of every quartet displayed by a tree, stored in 2 bits per quadruple
+ * (the ordinal of Quartet.Topology), indexed by the quadruple's rank in QuadrupleEnumerator.
+ * 32 quadruples are packed per long.
+ *
+ * The table is stored either on the heap (in chunks, so it may exceed 2^31 longs) or in a
+ * memory-mapped file. It is filled in parallel, each task filling whole longs, using a
+ * TreeDistanceOracle to find each quartet's topology by the four point condition.
+ */
+public class QuartetTable implements QuartetSupport {
+	private static final int HEAP_CHUNK_BITS = 24;   // longs per on-heap chunk = 2^24 (128MB)
+	private static final int MAPPED_CHUNK_BITS = 27; // longs per mapped chunk = 2^27 (1GB)
+	private static final int TASK_WORDS = 1<<12;     // longs filled per fork/join task
+
+	private final QuadrupleEnumerator enumerator;
+	private final long nQuadruples;
+	private final long nWords;
+	private final int chunkBits;
+	private final long[][] heapChunks;    // if on heap
+	private final LongBuffer[] fileChunks; // if in a file
+	private final long[] topologyCounts = new long[Topology.values().length];
+
+	/**
+	 * On-heap table, filled in the common ForkJoinPool.
+	 * @param tree
+	 * @param idGroup the taxa, in the order which determines quadruple ranks
+	 */
+	public QuartetTable(Tree tree, IdGroup idGroup) {
+		this(tree, idGroup, null, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param tree
+	 * @param idGroup the taxa, in the order which determines quadruple ranks
+	 * @param file if not null, the table is stored in this file (which is overwritten)
+	 *        rather than on the heap.
+	 * @param pool used to fill the table
+	 */
+	public QuartetTable(Tree tree, IdGroup idGroup, File file, ForkJoinPool pool) {
+		enumerator = new QuadrupleEnumerator(idGroup);
+		nQuadruples = enumerator.count();
+		nWords = (nQuadruples+31)/32;
+		if (file==null) {
+			chunkBits = HEAP_CHUNK_BITS;
+			fileChunks = null;
+			heapChunks = new long[nChunks()][];
+			for (int c=0; c<heapChunks.length; c++) heapChunks[c] = new long[chunkLength(c)];
+		} else {
+			chunkBits = MAPPED_CHUNK_BITS;
+			heapChunks = null;
+			fileChunks = new LongBuffer[nChunks()];
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					raf.setLength(nWords*8);
+					FileChannel channel = raf.getChannel();
+					for (int c=0; c<fileChunks.length; c++) {
+						fileChunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, ((long)c<<chunkBits)*8, (long)chunkLength(c)*8)
+								.order(ByteOrder.nativeOrder()).asLongBuffer();
+					}
+				} finally {
+					raf.close(); // mappings remain valid
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not map quartet table file "+file, e);
+			}
+		}
+		pool.invoke(new FillTask(new TreeDistanceOracle(tree, idGroup, true), 0, nWords));
+	}
+
+	private int nChunks() {
+		return (int)((nWords+(1L<<chunkBits)-1)>>>chunkBits);
+	}
+
+	private int chunkLength(int c) {
+		return (int)Math.min(1L<<chunkBits, nWords-((long)c<<chunkBits));
+	}
+
+	private long getWord(long w) {
+		int chunk = (int)(w>>>chunkBits);
+		int offset = (int)(w & ((1L<<chunkBits)-1));
+		return (heapChunks!=null) ? heapChunks[chunk][offset] : fileChunks[chunk].get(offset);
+	}
+
+	private void setWord(long w, long value) {
+		int chunk = (int)(w>>>chunkBits);
+		int offset = (int)(w & ((1L<<chunkBits)-1));
+		if (heapChunks!=null) {
+			heapChunks[chunk][offset] = value;
+		} else {
+			fileChunks[chunk].put(offset, value);
+		}
+	}
+
+	public QuadrupleEnumerator getEnumerator() {
+		return enumerator;
+	}
+
+	public IdGroup getIdGroup() {
+		return enumerator.getIdGroup();
+	}
+
+	/**
+	 * @return number of quadruples (i.e. entries in the table)
+	 */
+	public long size() {
+		return nQuadruples;
+	}
+
+	/**
+	 * @param rank of the quadruple, as given by QuadrupleEnumerator
+	 * @return topology of the quartet the tree displays on this quadruple
+	 */
+	public Topology get(long rank) {
+		if (rank<0 || rank>=nQuadruples) throw new IllegalArgumentException("Rank out of range");
+		return Quartet.Topology.values()[getCode(rank)];
+	}
+
+	/**
+	 * @return topology of the quartet on taxa i<j<k<l (positions relative to this order)
+	 */
+	public Topology get(int i, int j, int k, int l) {
+		return get(enumerator.rank(i, j, k, l));
+	}
+
+	public Topology getQuartetTopology(long rank) {
+		return get(rank);
+	}
+
+	/**
+	 * @return 1 if the tree resolves quadruple 'rank', else 0
+	 */
+	public double getQuartetWeight(long rank) {
+		return (get(rank)==Topology.UNRESOLVED) ? 0 : 1;
+	}
+
+	/**
+	 * @return Topology ordinal of quadruple 'rank', without range checking
+	 */
+	int getCode(long rank) {
+		return (int)(getWord(rank>>>5) >>> ((rank&31)<<1)) & 3;
+	}
+
+	/**
+	 * @return number of quadruples on which the tree displays this topology.
+	 */
+	public long count(Topology topology) {
+		return topologyCounts[topology.ordinal()];
+	}
+
+	/*
+	 * Fills words [from,to) of the table
+	 */
+	private class FillTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final TreeDistanceOracle oracle;
+		private final long from, to;
+
+		FillTask(TreeDistanceOracle oracle, long from, long to) {
+			this.oracle = oracle;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from>TASK_WORDS) {
+				long mid = (from+to)>>>1;
+				invokeAll(new FillTask(oracle, from, mid), new FillTask(oracle, mid, to));
+				return;
+			}
+			final long firstRank = from*32;
+			long lastRank = Math.min(to*32, nQuadruples);
+			Spliterator<QuadrupleView> quads = enumerator.spliterator(firstRank, lastRank);
+			final long[] counts = new long[topologyCounts.length];
+			quads.forEachRemaining(new Consumer<QuadrupleView>() {
+				private long word = 0;
+				public void accept(QuadrupleView quad) {
+					long rank = quad.getRank();
+					int code = quad.whichTopology(oracle).ordinal();
+					counts[code]++;
+					word |= (long)code << ((rank&31)<<1);
+					if ((rank&31)==31 || rank==nQuadruples-1) {
+						setWord(rank>>>5, word);
+						word = 0;
+					}
+				}
+			});
+			synchronized (topologyCounts) {
+				for (int t=0; t<counts.length; t++) topologyCounts[t] += counts[t];
+			}
+		}
+	}
+}
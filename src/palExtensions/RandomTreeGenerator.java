@@ -0,0 +1,116 @@
+package palExtensions;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+import pal.tree.Tree;
+import pal.tree.TreeGenerator;
+import pal.util.AlgorithmCallback;
+
+/**
+ * Base class for random tree generators (YuleTree, BirthDeathTree, CoalescentTree, UniformTree.)
+ * Subclasses implement generate(), which must take all its randomness from the ExtRandom it is given.
+ *
+ * getNextTree generates trees one at a time from this generator's own random number generator.
+ * getTrees generates batches of trees in parallel: tree i of a batch uses substream i of the
+ * batch seed (ExtRandom.substream), so depends on nothing else. A large ensemble
+ * can be generated in pieces, or on any number of threads, with the same result.
+ */
+public abstract class RandomTreeGenerator implements TreeGenerator {
+	private final Identifier[] leaves_;         // shuffled by successive calls to getNextTree
+	private final Identifier[] originalLeaves_; // the order batches start from
+	private final ExtRandom rng_;
+
+	/**
+	 * Unseeded: random number generator is seeded from the system time.
+	 */
+	protected RandomTreeGenerator(IdGroup leafIDs) {
+		this(leafIDs, new ExtRandom());
+	}
+
+	protected RandomTreeGenerator(IdGroup leafIDs, long seed) {
+		this(leafIDs, new ExtRandom(seed));
+	}
+
+	private RandomTreeGenerator(IdGroup leafIDs, ExtRandom rng) {
+		int nLeaves = leafIDs.getIdCount();
+		leaves_ = new Identifier[nLeaves];
+		for (int i=0; i<nLeaves; i++) {
+			leaves_[i] = leafIDs.getIdentifier(i);
+		}
+		originalLeaves_ = leaves_.clone();
+		rng_ = rng;
+	}
+
+	public int getLeafCount() {
+		return leaves_.length;
+	}
+
+	/**
+	 * I ignore the AlgorithmCallback. Nothing in here should take very long anyway.
+	 */
+	public Tree getNextTree(AlgorithmCallback callback) {
+		return generate(leaves_, rng_);
+	}
+
+	/**
+	 * Convenience method: trees [0,nTrees) of a batch, generated in the common pool. See getTrees(long,int,int,ForkJoinPool)
+	 */
+	public Tree[] getTrees(long seed, int nTrees) {
+		return getTrees(seed, 0, nTrees, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Generates trees number [from,to) of a batch, in parallel. Each tree uses the substream of
+	 * 'seed' given by the tree's number, so the trees do not depend on
+	 * the pool, on 'from' and 'to' (other than which trees are returned), or on this generator's
+	 * own random number generator.
+	 * @return array of to-from trees
+	 */
+	public Tree[] getTrees(long seed, int from, int to, ForkJoinPool pool) {
+		if (from>to) throw new IllegalArgumentException("Empty range of trees");
+		Tree[] trees = new Tree[to-from];
+		pool.invoke(new BatchTask(trees, seed, from, 0, to-from));
+		return trees;
+	}
+
+	/**
+	 * Generates one tree.
+	 * @param leaves the leaf identifiers. The method may reorder this array (e.g. shuffle it to
+	 *        assign identifiers to leaves at random.)
+	 * @param rng the only source of randomness
+	 */
+	protected abstract Tree generate(Identifier[] leaves, ExtRandom rng);
+
+	/*
+	 * Generates trees [offset,offset+length) of the result array, which are tree numbers first+offset...
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Tree[] trees;
+		private final long seed;
+		private final int first, offset, length;
+		BatchTask(Tree[] trees, long seed, int first, int offset, int length) {
+			this.trees = trees;
+			this.seed = seed;
+			this.first = first;
+			this.offset = offset;
+			this.length = length;
+		}
+		@Override
+		protected void compute() {
+			if (length>1) {
+				int half = length>>>1;
+				invokeAll(new BatchTask(trees, seed, first, offset, half), new BatchTask(trees, seed, first, offset+half, length-half));
+				return;
+			}
+			for (int i=offset; i<offset+length; i++) {
+				// each tree starts from the original leaf order, so depends only on its own seed
+				ExtRandom rng = ExtRandom.substream(seed, first+i);
+				trees[i] = generate(originalLeaves_.clone(), rng);
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+
+/**
+ * Robinson-Foulds (symmetric difference of non-trivial splits) distances between
+ * trees on the same taxa.
+ *
+ * Each tree's splits are extracted once, and stored as a sorted block of words. A pair of
+ * trees is compared by merging their blocks. The all-pairs computation divides the upper
+ * triangle between threads of a ForkJoinPool.
+ */
+public class RobinsonFoulds {
+	// Minimum number of tree pairs to compare in one fork/join task
+	private static final int TASK_PAIRS = 2048;
+	private final IdGroup idGroup;
+	private final int nWords;
+	private final int nTrees;
+	private final long[][] splits; // splits[t] = sorted splits of tree t, nWords words per split
+	private final int[] nSplits;
+
+	public RobinsonFoulds(IdGroup idGroup, List<Tree> trees) {
+		this(idGroup, trees.toArray(new Tree[trees.size()]), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param idGroup the taxa. Trees may omit some taxa, but not have extra ones.
+	 * @param trees
+	 * @param pool used to extract splits from trees in parallel
+	 */
+	public RobinsonFoulds(IdGroup idGroup, Tree[] trees, ForkJoinPool pool) {
+		this.idGroup = IdGroupUtils.isOrdered(idGroup) ? idGroup : IdGroupUtils.copyOrdered(idGroup);
+		nWords = SplitWordUtils.nWords(idGroup.getIdCount());
+		nTrees = trees.length;
+		splits = new long[nTrees][];
+		nSplits = new int[nTrees];
+		pool.invoke(new ExtractTask(trees, IdGroupUtils.indexMap(this.idGroup), 0, nTrees));
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public int getTreeCount() {
+		return nTrees;
+	}
+
+	/**
+	 * @return the number of non-trivial splits in tree i
+	 */
+	public int getSplitCount(int i) {
+		return nSplits[i];
+	}
+
+	/**
+	 * @return RF distance between trees i and j
+	 */
+	public int distance(int i, int j) {
+		return nSplits[i] + nSplits[j] - 2*countShared(i, j);
+	}
+
+	/**
+	 * Convenience method for a single pair of trees
+	 */
+	public static int distance(IdGroup idGroup, Tree tree1, Tree tree2) {
+		return new RobinsonFoulds(idGroup, new Tree[]{tree1, tree2}, ForkJoinPool.commonPool()).distance(0, 1);
+	}
+
+	/**
+	 * @return distances between all pairs of trees in the common pool. See computeAll(ForkJoinPool).
+	 */
+	public int[] computeAll() {
+		return computeAll(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes distances between all pairs of trees, in parallel.
+	 * @return upper triangle of the distance matrix by rows, i.e. distance(i,j) for i<j is at
+	 *         index triangleIndex(i,j).
+	 */
+	public int[] computeAll(ForkJoinPool pool) {
+		final int[] result = new int[TreeDistanceTriangle.size(nTrees)];
+		TreeDistanceTriangle.computeAll(nTrees, metric(), new TreeDistanceTriangle.Sink() {
+			public void put(int index, int i, int j, long distance) {
+				result[index] = (int)distance;
+			}
+		}, TASK_PAIRS, pool);
+		return result;
+	}
+
+	/**
+	 * Index of distance(i,j) in the array returned by computeAll.
+	 */
+	public int triangleIndex(int i, int j) {
+		return TreeDistanceTriangle.index(nTrees, i, j);
+	}
+
+	/**
+	 * All-pairs distances as a DistanceMatrix.
+	 * @param treeNames identifiers for the trees (in order), e.g. new SimpleIdGroup(n) if unimportant
+	 */
+	public DistanceMatrix computeDistanceMatrix(IdGroup treeNames) {
+		return TreeDistanceTriangle.computeDistanceMatrix(nTrees, treeNames, metric(), TASK_PAIRS, ForkJoinPool.commonPool());
+	}
+
+	private TreeDistanceTriangle.Metric metric() {
+		return new TreeDistanceTriangle.Metric() {
+			public long distance(int i, int j) {
+				return RobinsonFoulds.this.distance(i, j);
+			}
+		};
+	}
+
+	private void extractSplits(int t, Tree tree, HashMap<String,Integer> taxonIndex) {
+		SplitHashTable table = NeoSplitUtils.getSplitTable(idGroup, taxonIndex, tree);
+		final int n = table.size();
+		final long[] unsorted = new long[n*nWords];
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++) {
+			table.getWords(i, unsorted, i*nWords);
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return compareRows(unsorted, a*nWords, unsorted, b*nWords);
+			}
+		});
+		long[] sorted = new long[n*nWords];
+		for (int i=0; i<n; i++) System.arraycopy(unsorted, order[i]*nWords, sorted, i*nWords, nWords);
+		splits[t] = sorted;
+		nSplits[t] = n;
+	}
+
+	private int compareRows(long[] a, int aOffset, long[] b, int bOffset) {
+		for (int w=0; w<nWords; w++) {
+			int c = Long.compare(a[aOffset+w], b[bOffset+w]);
+			if (c!=0) return c;
+		}
+		return 0;
+	}
+
+	// number of splits in both tree i and tree j, by merging the sorted lists
+	private int countShared(int i, int j) {
+		long[] a = splits[i];
+		long[] b = splits[j];
+		int aEnd = nSplits[i]*nWords;
+		int bEnd = nSplits[j]*nWords;
+		int shared = 0;
+		for (int x=0, y=0; x<aEnd && y<bEnd; ) {
+			int c = compareRows(a, x, b, y);
+			if (c<0) {
+				x += nWords;
+			} else if (c>0) {
+				y += nWords;
+			} else {
+				shared++;
+				x += nWords;
+				y += nWords;
+			}
+		}
+		return shared;
+	}
+
+	/*
+	 * Extracts splits of trees [from,to)
+	 */
+	private class ExtractTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Tree[] trees;
+		private final HashMap<String,Integer> taxonIndex;
+		private final int from, to;
+		ExtractTask(Tree[] trees, HashMap<String,Integer> taxonIndex, int from, int to) {
+			this.trees = trees;
+			this.taxonIndex = taxonIndex;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from<=1) {
+				for (int t=from; t<to; t++) extractSplits(t, trees[t], taxonIndex);
+			} else {
+				int mid = (from+to)>>>1;
+				invokeAll(new ExtractTask(trees, taxonIndex, from, mid), new ExtractTask(trees, taxonIndex, mid, to));
+			}
+		}
+	}
+}
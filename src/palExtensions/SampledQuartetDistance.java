@@ -0,0 +1,211 @@
+package palExtensions;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.misc.IdGroup;
+import pal.statistics.NormalDistribution;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+
+/**
+ * Estimates the quartet distance between two trees (as QuartetDistance, but for trees too
+ * large to compare exactly) from a random sample of quadruples.
+ *
+ * Each sampled quadruple is classified in O(1) time by the four point condition on edge counts,
+ * using a TreeDistanceOracle (LCA queries) on each tree. Sampling continues until the Wilson score
+ * confidence interval for the proportion of differing quadruples is narrow enough, so easy
+ * cases (trees nearly identical or very different) need few samples.
+ *
+ * Samples are drawn in batches, batch b from substream b of the seed (ExtRandom.substream),
+ * and rounds of batches are run in parallel. The interval is checked after each batch in order,
+ * so results depend only on the seed, not on the number of threads.
+ */
+public class SampledQuartetDistance {
+	private static final int BATCH = 256; // samples per batch, i.e. between checks of the interval width
+	private static final int ROUND = 64;  // batches run in parallel at a time
+	private final IdGroup idGroup;
+	private final int n;
+	private final TreeDistanceOracle oracle1, oracle2;
+
+	/**
+	 * @param tree1
+	 * @param tree2 must have the same leaf labels as tree1
+	 */
+	public SampledQuartetDistance(Tree tree1, Tree tree2) {
+		idGroup = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree1));
+		n = idGroup.getIdCount();
+		if (n<4) throw new IllegalArgumentException("Need at least 4 taxa");
+		oracle1 = new TreeDistanceOracle(tree1, idGroup, true);
+		oracle2 = new TreeDistanceOracle(tree2, idGroup, true);
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	/**
+	 * @param width required width of the confidence interval for the proportion of differing quadruples
+	 * @param confidence e.g. 0.95
+	 * @param seed
+	 */
+	public Estimate estimate(double width, double confidence, long seed) {
+		return estimate(width, confidence, Long.MAX_VALUE, seed, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param width required width of the confidence interval for the proportion of differing quadruples
+	 * @param confidence e.g. 0.95
+	 * @param maxSamples stop after this many samples even if the interval is still too wide
+	 * @param seed
+	 * @param pool
+	 */
+	public Estimate estimate(double width, double confidence, long maxSamples, long seed, ForkJoinPool pool) {
+		if (!(width>0)) throw new IllegalArgumentException("Width must be positive");
+		if (!(confidence>0 && confidence<1)) throw new IllegalArgumentException("Confidence must be in (0,1)");
+		if (maxSamples<1) throw new IllegalArgumentException("Need at least one sample");
+		double z = NormalDistribution.quantile(0.5+confidence/2, 0, 1);
+		long nSamples = 0;
+		long nDifferent = 0;
+		int[] batchDifferent = new int[ROUND];
+		for (long firstBatch=0; ; firstBatch+=ROUND) {
+			pool.invoke(new BatchTask(seed, maxSamples, firstBatch, batchDifferent, 0, ROUND));
+			for (int b=0; b<ROUND; b++) {
+				nSamples = Math.min(maxSamples, (firstBatch+b+1)*BATCH);
+				nDifferent += batchDifferent[b];
+				Estimate estimate = new Estimate(nSamples, nDifferent, z);
+				if (nSamples==maxSamples || estimate.getUpper()-estimate.getLower()<=width) return estimate;
+			}
+		}
+	}
+
+	/*
+	 * Number of sampled quadruples in batch b (of at most maxSamples samples in total) on which the trees differ
+	 */
+	private int countBatch(long seed, long maxSamples, long b) {
+		long start = b*BATCH;
+		if (start>=maxSamples) return 0;
+		int size = (int)Math.min(BATCH, maxSamples-start);
+		ExtRandom rng = ExtRandom.substream(seed, b);
+		int[] quad = new int[4];
+		int nDifferent = 0;
+		for (int i=0; i<size; i++) {
+			sample(rng, quad);
+			if (topology(oracle1, quad)!=topology(oracle2, quad)) nDifferent++;
+		}
+		return nDifferent;
+	}
+
+	// four distinct taxa, uniformly at random, in increasing order
+	private void sample(ExtRandom rng, int[] quad) {
+		for (int i=0; i<4; i++) {
+			int taxon;
+			boolean repeat;
+			do {
+				taxon = rng.nextInt(n);
+				repeat = false;
+				for (int j=0; j<i; j++) repeat = repeat || quad[j]==taxon;
+			} while (repeat);
+			// insertion sort
+			int j = i;
+			for (; j>0 && quad[j-1]>taxon; j--) quad[j] = quad[j-1];
+			quad[j] = taxon;
+		}
+	}
+
+	/*
+	 * Topology ordinal of the quartet on quad (UNRESOLVED if the smallest four point sum is not unique)
+	 */
+	private static int topology(TreeDistanceOracle oracle, int[] quad) {
+		double s1 = oracle.getDistance(quad[0], quad[1]) + oracle.getDistance(quad[2], quad[3]);
+		double s2 = oracle.getDistance(quad[0], quad[2]) + oracle.getDistance(quad[1], quad[3]);
+		double s3 = oracle.getDistance(quad[0], quad[3]) + oracle.getDistance(quad[1], quad[2]);
+		if (s1<s2 && s1<s3) return Quartet.Topology.P01V23.ordinal();
+		if (s2<s1 && s2<s3) return Quartet.Topology.P02V13.ordinal();
+		if (s3<s1 && s3<s2) return Quartet.Topology.P03V12.ordinal();
+		return Quartet.Topology.UNRESOLVED.ordinal();
+	}
+
+	/*
+	 * Counts batches firstBatch+[from,to) into batchDifferent[from,to)
+	 */
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long seed, maxSamples, firstBatch;
+		private final int[] batchDifferent;
+		private final int from, to;
+		BatchTask(long seed, long maxSamples, long firstBatch, int[] batchDifferent, int from, int to) {
+			this.seed = seed;
+			this.maxSamples = maxSamples;
+			this.firstBatch = firstBatch;
+			this.batchDifferent = batchDifferent;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from>1) {
+				int mid = (from+to)>>>1;
+				invokeAll(new BatchTask(seed, maxSamples, firstBatch, batchDifferent, from, mid),
+						new BatchTask(seed, maxSamples, firstBatch, batchDifferent, mid, to));
+				return;
+			}
+			for (int b=from; b<to; b++) batchDifferent[b] = countBatch(seed, maxSamples, firstBatch+b);
+		}
+	}
+
+	/**
+	 * Result of an estimate: the sample counts, the estimated proportion of quadruples on
+	 * which the trees differ, and its confidence interval.
+	 */
+	public class Estimate {
+		private final long nSamples, nDifferent;
+		private final double lower, upper;
+
+		private Estimate(long nSamples, long nDifferent, double z) {
+			this.nSamples = nSamples;
+			this.nDifferent = nDifferent;
+			// Wilson score interval
+			double p = (double)nDifferent/nSamples;
+			double z2n = z*z/nSamples;
+			double center = (p + z2n/2)/(1+z2n);
+			double half = z/(1+z2n)*Math.sqrt(p*(1-p)/nSamples + z2n/(4*nSamples));
+			lower = Math.max(0, center-half);
+			upper = Math.min(1, center+half);
+		}
+
+		public long getSampleCount() {
+			return nSamples;
+		}
+
+		public long getDifferentCount() {
+			return nDifferent;
+		}
+
+		/**
+		 * @return estimated proportion of quadruples on which the trees differ
+		 */
+		public double getProportion() {
+			return (double)nDifferent/nSamples;
+		}
+
+		public double getLower() {
+			return lower;
+		}
+
+		public double getUpper() {
+			return upper;
+		}
+
+		/**
+		 * @return estimated quartet distance (number of differing quadruples)
+		 */
+		public double getDistance() {
+			return getProportion()*QuadrupleEnumerator.count(n);
+		}
+
+		public String toString() {
+			return String.format("%.5f [%.5f, %.5f] from %d samples", getProportion(), lower, upper, nSamples);
+		}
+	}
+}
@@ -72,19 +72,21 @@ public class SmallPartialSplit extends PartialSplit {
 	/**
 	 * Set partial split without changing the partial split or universal taxon sets.
 	 * idOrder can have different ordering to existing partial split set, but must
-	 * have the same taxa.
+	 * have the same taxa. The permutation from idOrder is cached
+	 * (IdGroupUtils.permuteToOrderCached), keyed on the idOrder object: idOrder must not
+	 * be modified while this runs.
 	 * @param split
 	 */
 	public void setSplit(IdGroup idOrder, boolean[] split) {
 		if (idOrder.equals(idGroup)) {
 			setSplit(split);
 		} else {
-			int[] perm = IdGroupUtils.permuteToOrder(idGroup, idOrder);
+			int[] perm = IdGroupUtils.permuteToOrderCached(idGroup, idOrder);
 			boolean[] permuted = new boolean[nTaxa];
 			for (int i=0; i<nTaxa; i++) {
 				permuted[i] = split[perm[i]];
 			}
-			setSplit(split);
+			setSplit(permuted);
 		}
 	}
 
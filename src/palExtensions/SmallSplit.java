@@ -30,6 +30,17 @@ public class SmallSplit extends Split {
 		setSplit(split,idGroup);
 	}
 
+	/**
+	 * From normalised words in SplitWordUtils layout (taxon i is bit i, rather than bit nTaxa-1-i
+	 * as here.) idGroup must be ordered.
+	 */
+	SmallSplit(IdGroup idGroup, long[] words) {
+		super(idGroup);
+		if (this.idGroup != idGroup) throw new IllegalArgumentException("IdGroup must be ordered");
+		if (nTaxa >64) throw new IllegalArgumentException("SmallSplit can only handle up to 64 taxa");
+		encoded = (nTaxa==0) ? 0 : Long.reverse(words[0]) >>> (64-nTaxa);
+	}
+
 	/**
 	 * Only for use when we know the boolean array is in the right order for
 	 * this split's IdGroup.
@@ -51,12 +62,14 @@ public class SmallSplit extends Split {
     /**
      * Set the split from a boolean array in the case where the order of the taxa in the array
      * might not be orthographic, hence some reordering is necessary.
+     * The permutation from idOrder is cached (IdGroupUtils.permuteToOrderCached), keyed on the
+     * idOrder object: idOrder must not be modified while this runs.
      */
     public void setSplit(boolean[] split, IdGroup idOrder) {
     	if (IdGroupUtils.isOrdered(idOrder)) {
     		setSplit(split);
     	} else {
-			int[] perm = IdGroupUtils.permuteToOrder(idGroup, idOrder);
+			int[] perm = IdGroupUtils.permuteToOrderCached(idGroup, idOrder);
 			// (t,f) = (0,1) if split[0], (1,0) otherwise. 
 			// This ensures Identifier 0 is encoded with a 0 bit, for consistency.
 			long t = split[perm[0]] ? 0 : 1;
@@ -80,7 +93,9 @@ public class SmallSplit extends Split {
 			if (!IdGroupUtils.equals(this.idGroup, other.idGroup))
 				throw new IllegalArgumentException("Attempting to compare splits on different taxa sets");
 			long otherEncoded = ((SmallSplit)other).encoded;
-			return ((encoded & otherEncoded) == encoded || (encoded & otherEncoded) == otherEncoded);
+			// Taxon 0 is a zero bit in both, so compatible iff the one sides are disjoint or nested.
+			long both = encoded & otherEncoded;
+			return (both == 0 || both == encoded || both == otherEncoded);
 		} else {
 			// Can throw IllegalArgumentException
 			return Split.compatible(this, other);
@@ -90,7 +105,12 @@ public class SmallSplit extends Split {
 	@Override
 	protected boolean isMember(int i) {
 		if (i<0 || i>=nTaxa) throw new IllegalArgumentException("Illegal taxon index");
-		return (encoded & (1 << (nTaxa-i-1)))!=0;
+		return (encoded & (1L << (nTaxa-i-1)))!=0;
+	}
+	
+	@Override
+	public long[] getLongArray() {
+		return new long[]{(nTaxa==0) ? 0 : Long.reverse(encoded) >>> (64-nTaxa)};
 	}
 	
 	@Override
@@ -106,10 +126,8 @@ public class SmallSplit extends Split {
 	// Found from Mathematica by: RandomPrime[{10^18, 9 10^18}]
 	private static final long LARGE_PRIME = 5941310150097163001L;
 	/**
-	 * Has a drawback: If two identical splits have equivalent
-	 * IdGroup (contain equal strings in the same order) but
-	 * are not the same object, hashCodes will not be equal.
-	 * Good practice in creating Splits will not do this, however.
+	 * Consistent with equals(Object): identical splits on equivalent IdGroups (equal strings
+	 * in the same order) have equal hashCodes, even if the IdGroups are different objects.
 	 */
 	@Override
 	public int hashCode() {
@@ -118,14 +136,17 @@ public class SmallSplit extends Split {
 		 *  the 64 bit 'encoded' by: (int)((encoded)^(encoded>>>32)
 		 *  but I think unsafe as correlations between high and low 32 bits are likely.
 		 */
-		//return idGroup.hashCode() ^ (int)((encoded*LARGE_PRIME)>>>32);
-		int temp1 =  idGroup.hashCode();
-		long temp2 = encoded*LARGE_PRIME;
-		long temp3 = temp2>>>32;
-		int temp4 = (int)temp3;
-		int temp5 = temp1 & temp4;
-		return temp5;
-		// temp variables to aid debugging trace
+		return idGroupHashCode() ^ (int)((encoded*LARGE_PRIME)>>>32);
+	}
+
+	/**
+	 * The hashCode of a SmallSplit on nTaxa (at most 64) taxa whose IdGroup has content hash
+	 * idGroupHash, holding the normalised word 'word' (SplitWordUtils layout.) For other Split
+	 * classes on up to 64 taxa, so that they hash alike with equal SmallSplits.
+	 */
+	static int hashCode(int idGroupHash, long word, int nTaxa) {
+		long encoded = (nTaxa==0) ? 0 : Long.reverse(word) >>> (64-nTaxa);
+		return idGroupHash ^ (int)((encoded*LARGE_PRIME)>>>32);
 	}
 	
 	private int countSetBits() {
@@ -18,6 +18,7 @@ import pal.misc.Identifier;
 public abstract class Split implements IdGroup {
 	protected IdGroup idGroup;
 	protected int nTaxa;
+	private transient int idGroupHash; // IdGroupUtils.hashCode(idGroup), or 0 if not yet found
 	
 	protected Split(IdGroup idGroup) {
 		if (IdGroupUtils.isOrdered(idGroup)) {
@@ -33,20 +34,68 @@ public abstract class Split implements IdGroup {
 	 */
 	public static Split toSplit(IdGroup idGroup, boolean[] rawSplit) {
 		if (rawSplit.length>64) {
-			throw new RuntimeException("Splits over 64 length not yet implemented");
+			return new LongSplit(idGroup, rawSplit);
 		} else {
 			return new SmallSplit(idGroup, rawSplit);
 		}
 	}
 	
 	/**
-	 * If two splits have the same IdGroup and same split hex-encoding,
+	 * As toSplit(IdGroup, boolean[]), but from normalised words in the layout described
+	 * in SplitWordUtils. The words are interpreted in the order of idGroup, which must
+	 * therefore be ordered.
+	 */
+	public static Split toSplit(IdGroup idGroup, long[] words) {
+		if (idGroup.getIdCount()>64) {
+			return new LongSplit(idGroup, words);
+		} else {
+			return new SmallSplit(idGroup, words);
+		}
+	}
+	
+	/**
+	 * If two splits have equal IdGroups and same split hex-encoding,
 	 * they are the same split so we want to ensure they have the same 
 	 * hashcode. Expect this to be overridden in subclasses
 	 */
 	@Override
 	public int hashCode() {
-		return idGroup.hashCode()+this.toHexString().hashCode();
+		return idGroupHashCode()+this.toHexString().hashCode();
+	}
+
+	/**
+	 * Content hash of the IdGroup (see IdGroupUtils.hashCode), for use in hashCode. It is the same
+	 * for all equal IdGroups, so is unaffected by setIdGroup.
+	 *
+	 * Cached in a single int field, as String.hashCode is, so a thread sees either 0 (and
+	 * recomputes it) or the right value. A hash which really is 0 is recomputed each time.
+	 */
+	protected final int idGroupHashCode() {
+		int hash = idGroupHash;
+		if (hash==0) {
+			hash = IdGroupUtils.hashCode(idGroup);
+			idGroupHash = hash;
+		}
+		return hash;
+	}
+
+	/**
+	 * Two splits are equal if they are on equal IdGroups (same labels in the same order) and
+	 * divide the taxa the same way, as for equals(Split). Unlike equals(Split), splits on
+	 * different taxa are simply unequal. A PartialSplit is only equal to a PartialSplit of the
+	 * same class on equal universal taxa.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this==other) return true;
+		if (!(other instanceof Split)) return false;
+		Split split = (Split)other;
+		if (this instanceof PartialSplit || split instanceof PartialSplit) {
+			if (getClass()!=split.getClass()) return false;
+			if (!IdGroupUtils.equals(((PartialSplit)this).universalIdGroup, ((PartialSplit)split).universalIdGroup)) return false;
+		}
+		if (!IdGroupUtils.equals(idGroup, split.idGroup)) return false;
+		return equals(split);
 	}
 	
 	public IdGroup getIdGroup() {
@@ -83,6 +132,19 @@ public abstract class Split implements IdGroup {
 		return array;
 	}
 	
+	/**
+	 * Note that this output must be interpreted in the context (i.e. order) of the split's IdGroup.
+	 * @return Split as normalised words, in the layout described in SplitWordUtils
+	 */
+	public long[] getLongArray() {
+		long[] words = new long[SplitWordUtils.nWords(nTaxa)];
+		for (int i=0; i<nTaxa; i++) {
+			if (isMember(i)) SplitWordUtils.setMember(words, 0, i);
+		}
+		SplitWordUtils.normalise(words, 0, nTaxa);
+		return words;
+	}
+	
 	/**
 	 * Note that this output must be interpreted in the context (i.e. order) of the split's IdGroup.
 	 * @return Split as a boolean array
@@ -0,0 +1,166 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+
+/**
+ * Consensus trees (strict, majority-rule, greedy/extended majority-rule) of a stream of
+ * trees on the same taxa.
+ *
+ * Trees are added one at a time, and only the frequency of each distinct split is kept
+ * (in a SplitHashTable), so memory is bounded by the number of distinct splits rather
+ * than the number of trees. addTree may be called from several threads at once.
+ *
+ * Internal nodes of the consensus trees carry the split frequency (proportion of
+ * trees containing the split) in attribute NeoSplitUtils.SUPPORT.
+ */
+public class SplitConsensus {
+	private final IdGroup idGroup; // ordered
+	private final HashMap<String,Integer> taxonIndex;
+	private final SplitHashTable splitCounts;
+	private long nTrees = 0;
+
+	public SplitConsensus(IdGroup idGroup) {
+		this.idGroup = IdGroupUtils.isOrdered(idGroup) ? idGroup : IdGroupUtils.copyOrdered(idGroup);
+		taxonIndex = IdGroupUtils.indexMap(this.idGroup);
+		splitCounts = new SplitHashTable(idGroup.getIdCount());
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	/**
+	 * Tree must have leaves labelled by (a subset of) the taxa of this consensus.
+	 */
+	public void addTree(Tree tree) {
+		// The expensive part (split extraction) is done outside the lock.
+		SplitHashTable treeSplits = NeoSplitUtils.getSplitTable(idGroup, taxonIndex, tree);
+		int nWords = treeSplits.getWordCount();
+		long[] words = new long[treeSplits.size()*nWords];
+		for (int i=0; i<treeSplits.size(); i++) treeSplits.getWords(i, words, i*nWords);
+		synchronized (this) {
+			for (int i=0; i<treeSplits.size(); i++) splitCounts.add(words, i*nWords);
+			nTrees++;
+		}
+	}
+
+	public void addTrees(Iterable<Tree> trees) {
+		for (Tree tree : trees) addTree(tree);
+	}
+
+	public synchronized long getTreeCount() {
+		return nTrees;
+	}
+
+	/**
+	 * @return number of distinct non-trivial splits seen so far
+	 */
+	public synchronized int getSplitCount() {
+		return splitCounts.size();
+	}
+
+	/**
+	 * Tree of the splits present in all trees.
+	 */
+	public Tree getStrictConsensus() {
+		return getThresholdConsensus(1.0, true);
+	}
+
+	/**
+	 * Tree of the splits present in more than half the trees.
+	 */
+	public Tree getMajorityRuleConsensus() {
+		return getThresholdConsensus(0.5, false);
+	}
+
+	/**
+	 * Tree of the splits present in a proportion of trees greater than 'threshold'
+	 * (or equal to it, if 'inclusive'.) Threshold must be at least 0.5, to guarantee the
+	 * splits are compatible.
+	 */
+	public synchronized Tree getThresholdConsensus(double threshold, boolean inclusive) {
+		if (threshold<0.5) throw new IllegalArgumentException("Threshold below 0.5 may give incompatible splits: use getGreedyConsensus");
+		if (nTrees==0) throw new IllegalStateException("No trees have been added");
+		int nWords = splitCounts.getWordCount();
+		int nSplits = splitCounts.size();
+		long[] words = new long[nSplits*nWords];
+		double[] support = new double[nSplits];
+		int nKept = 0;
+		for (int i=0; i<nSplits; i++) {
+			double frequency = (double)splitCounts.getCount(i)/nTrees;
+			if (frequency>threshold || (inclusive && frequency==threshold)) {
+				splitCounts.getWords(i, words, nKept*nWords);
+				support[nKept++] = frequency;
+			}
+		}
+		return NeoSplitUtils.treeFromSplits(idGroup, words, nKept, support);
+	}
+
+	/**
+	 * Greedy (extended majority-rule) consensus: splits are considered in order of decreasing
+	 * frequency, and each is kept if it is compatible with all splits kept so far.
+	 * Ties are broken by the order in which splits were first seen.
+	 */
+	public synchronized Tree getGreedyConsensus() {
+		if (nTrees==0) throw new IllegalStateException("No trees have been added");
+		int nTaxa = idGroup.getIdCount();
+		int nWords = splitCounts.getWordCount();
+		int nSplits = splitCounts.size();
+
+		// sort row numbers by decreasing count (stable, so ties stay in order first seen)
+		long[] keys = new long[nSplits];
+		for (int i=0; i<nSplits; i++) keys[i] = (-splitCounts.getCount(i) << 32) | i;
+		Arrays.sort(keys);
+
+		int maxSplits = Math.max(nTaxa-3, 0); // a fully resolved tree can't take any more
+		long[] words = new long[Math.min(nSplits, maxSplits)*nWords];
+		double[] support = new double[Math.min(nSplits, maxSplits)];
+		long[] candidate = new long[nWords];
+		int nKept = 0;
+		for (int k=0; k<nSplits && nKept<maxSplits; k++) {
+			int i = (int)(keys[k] & 0xffffffffL);
+			splitCounts.getWords(i, candidate, 0);
+			boolean compatible = true;
+			for (int j=0; j<nKept && compatible; j++) {
+				compatible = SplitWordUtils.compatible(candidate, 0, words, j*nWords, nWords);
+			}
+			if (compatible) {
+				System.arraycopy(candidate, 0, words, nKept*nWords, nWords);
+				support[nKept++] = (double)splitCounts.getCount(i)/nTrees;
+			}
+		}
+		return NeoSplitUtils.treeFromSplits(idGroup, words, nKept, support);
+	}
+
+	/**
+	 * @return the splits seen so far, with frequency (proportion of trees) at least minFrequency
+	 */
+	public synchronized NeoSplitSystem getSplits(double minFrequency) {
+		NeoSplitSystem splits = new NeoSplitSystem(idGroup);
+		for (int i=0; i<splitCounts.size(); i++) {
+			if ((double)splitCounts.getCount(i)/nTrees >= minFrequency) {
+				splits.add(Split.toSplit(idGroup, splitCounts.getWords(i)));
+			}
+		}
+		return splits;
+	}
+
+	/**
+	 * As getSplits, but as a SplitMatrix with each split's number of trees in the count column
+	 * and its frequency in the weight column.
+	 */
+	public synchronized SplitMatrix getSplitMatrix(double minFrequency) {
+		SplitMatrix matrix = new SplitMatrix(idGroup, true, true);
+		for (int i=0; i<splitCounts.size(); i++) {
+			long count = splitCounts.getCount(i);
+			if ((double)count/nTrees >= minFrequency) {
+				matrix.addRow(splitCounts.getWords(i), 0, (double)count/nTrees, count);
+			}
+		}
+		return matrix;
+	}
+}
@@ -0,0 +1,148 @@
+package palExtensions;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table of splits, keyed on their bits (see SplitWordUtils for
+ * the layout) with no per-split objects. All splits must be on the same (ordered) taxon set.
+ *
+ * Each distinct split is given a row number (0,1,2,... in order of first addition)
+ * and a count of how many times it has been added.
+ */
+public class SplitHashTable {
+	private final int nTaxa;
+	private final int nWords;
+	private long[] rows;   // row r occupies rows[r*nWords] to rows[(r+1)*nWords-1]
+	private int[] hashes;  // hash code of each row
+	private long[] counts; // number of times each row has been added
+	private int size;      // number of rows
+	private int[] slots;   // row number + 1, or 0 for an empty slot
+	private int slotMask;
+
+	public SplitHashTable(int nTaxa) {
+		this(nTaxa, 16);
+	}
+
+	public SplitHashTable(int nTaxa, int expectedSize) {
+		this.nTaxa = nTaxa;
+		this.nWords = SplitWordUtils.nWords(nTaxa);
+		int capacity = Math.max(expectedSize, 4);
+		rows = new long[capacity*nWords];
+		hashes = new int[capacity];
+		counts = new long[capacity];
+		int nSlots = Integer.highestOneBit(capacity*2-1)*2;
+		slots = new int[nSlots];
+		slotMask = nSlots-1;
+	}
+
+	public int getTaxonCount() {
+		return nTaxa;
+	}
+
+	/**
+	 * @return number of words per split
+	 */
+	public int getWordCount() {
+		return nWords;
+	}
+
+	/**
+	 * @return number of distinct splits in the table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds one occurrence of the (normalised) split held in words[offset..offset+getWordCount()-1]
+	 * @return the row number of the split
+	 */
+	public int add(long[] words, int offset) {
+		return add(words, offset, 1);
+	}
+
+	/**
+	 * Adds 'count' occurrences of the (normalised) split held in words[offset..offset+getWordCount()-1]
+	 * @return the row number of the split
+	 */
+	public int add(long[] words, int offset, long count) {
+		int hash = SplitWordUtils.hashCode(words, offset, nWords);
+		int slot = findSlot(words, offset, hash);
+		int row = slots[slot]-1;
+		if (row<0) {
+			row = size++;
+			if (row==hashes.length) grow();
+			System.arraycopy(words, offset, rows, row*nWords, nWords);
+			hashes[row] = hash;
+			slots[slot] = row+1;
+			if (size*2>slots.length) rehash();
+		}
+		counts[row] += count;
+		return row;
+	}
+
+	/**
+	 * @return the row number of the split, or -1 if it is not in the table
+	 */
+	public int indexOf(long[] words, int offset) {
+		int slot = findSlot(words, offset, SplitWordUtils.hashCode(words, offset, nWords));
+		return slots[slot]-1;
+	}
+
+	public long getCount(int row) {
+		if (row<0 || row>=size) throw new IndexOutOfBoundsException("No such row: "+row);
+		return counts[row];
+	}
+
+	/**
+	 * Copies the split in 'row' into 'dest' starting at 'offset'
+	 */
+	public void getWords(int row, long[] dest, int offset) {
+		if (row<0 || row>=size) throw new IndexOutOfBoundsException("No such row: "+row);
+		System.arraycopy(rows, row*nWords, dest, offset, nWords);
+	}
+
+	public long[] getWords(int row) {
+		long[] words = new long[nWords];
+		getWords(row, words, 0);
+		return words;
+	}
+
+	public void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(counts, 0, size, 0);
+		size = 0;
+	}
+
+	// Slot holding the split, or the empty slot where it would go.
+	private int findSlot(long[] words, int offset, int hash) {
+		int slot = mix(hash) & slotMask;
+		while (slots[slot]!=0) {
+			int row = slots[slot]-1;
+			if (hashes[row]==hash && SplitWordUtils.equals(rows, row*nWords, words, offset, nWords)) break;
+			slot = (slot+1) & slotMask;
+		}
+		return slot;
+	}
+
+	private static int mix(int hash) {
+		return hash ^ (hash>>>16);
+	}
+
+	private void grow() {
+		int capacity = hashes.length*2;
+		rows = Arrays.copyOf(rows, capacity*nWords);
+		hashes = Arrays.copyOf(hashes, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+	}
+
+	private void rehash() {
+		slots = new int[slots.length*2];
+		slotMask = slots.length-1;
+		for (int row=0; row<size; row++) {
+			int slot = mix(hashes[row]) & slotMask;
+			while (slots[slot]!=0) slot = (slot+1) & slotMask;
+			slots[slot] = row+1;
+		}
+	}
+}
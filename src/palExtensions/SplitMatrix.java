@@ -0,0 +1,462 @@
+package palExtensions;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+
+/**
+ * A NeoSplitSystem stored by columns rather than as Split objects: the splits are rows of one
+ * flat long[] (normalised words, in the layout described in SplitWordUtils), with optional
+ * weight and count columns. This needs a few words per split rather than a Split object (plus an
+ * array, for more than 64 taxa) each, and whole-system operations such as isCompatible run over
+ * the flat array.
+ *
+ * get(i) and iteration return lightweight Split views of rows, made on demand. A view refers to its
+ * row by index, so inserting or removing rows invalidates views of later rows. Adding a Split copies
+ * its words; the Split itself is not kept (or modified, unlike NeoSplitSystem.add.)
+ * contains and indexOf compare splits by content, using a hash index of the rows, so take O(1)
+ * time. As in NeoSplitSystem, the index is built when first needed, kept up to date by appending
+ * and discarded by other changes.
+ *
+ * The IdGroup is converted to a TaxonSet, so that making views is cheap.
+ */
+public class SplitMatrix extends NeoSplitSystem {
+	private static final long serialVersionUID = 1L;
+	private final int nTaxa;
+	private final int nWords;
+	private long[] words;
+	private double[] weights; // null if there is no weight column
+	private long[] counts;    // null if there is no count column
+	private int nRows = 0;
+	private transient Rows rows; // made when first needed, as it isn't serialised
+	private transient SplitHashTable index; // distinct rows, or null if not built
+	private transient int[] indexRows;      // first row holding each split in 'index'
+
+	public SplitMatrix(IdGroup idGroup) {
+		this(idGroup, false, false);
+	}
+
+	/**
+	 * @param idGroup the taxa
+	 * @param hasWeights if true, each split has a weight (default 0)
+	 * @param hasCounts if true, each split has a count (default 0)
+	 */
+	public SplitMatrix(IdGroup idGroup, boolean hasWeights, boolean hasCounts) {
+		super(TaxonSet.of(idGroup));
+		nTaxa = idGroup.getIdCount();
+		nWords = SplitWordUtils.nWords(nTaxa);
+		words = new long[16*nWords];
+		if (hasWeights) weights = new double[16];
+		if (hasCounts) counts = new long[16];
+	}
+
+	public boolean hasWeights() {
+		return weights!=null;
+	}
+
+	public boolean hasCounts() {
+		return counts!=null;
+	}
+
+	/**
+	 * @return number of words per split
+	 */
+	public int getWordCount() {
+		return nWords;
+	}
+
+	/**
+	 * Appends a split.
+	 * @param src words of the split, in the order of getIdGroup(). Need not be normalised.
+	 * @param offset position of the split in src
+	 * @param weight ignored if there is no weight column
+	 * @param count ignored if there is no count column
+	 * @return row of the new split
+	 */
+	public int addRow(long[] src, int offset, double weight, long count) {
+		insertRow(nRows, src, offset, weight, count);
+		rows().changed();
+		return nRows-1;
+	}
+
+	/**
+	 * Copies the words of split 'row' into dest[offset..offset+getWordCount())
+	 */
+	public void getWords(int row, long[] dest, int offset) {
+		checkRow(row);
+		System.arraycopy(words, row*nWords, dest, offset, nWords);
+	}
+
+	public double getWeight(int row) {
+		checkRow(row);
+		if (weights==null) throw new UnsupportedOperationException("SplitMatrix has no weight column");
+		return weights[row];
+	}
+
+	public void setWeight(int row, double weight) {
+		checkRow(row);
+		if (weights==null) throw new UnsupportedOperationException("SplitMatrix has no weight column");
+		weights[row] = weight;
+	}
+
+	public long getCount(int row) {
+		checkRow(row);
+		if (counts==null) throw new UnsupportedOperationException("SplitMatrix has no count column");
+		return counts[row];
+	}
+
+	public void setCount(int row, long count) {
+		checkRow(row);
+		if (counts==null) throw new UnsupportedOperationException("SplitMatrix has no count column");
+		counts[row] = count;
+	}
+
+	/**
+	 * @return first row holding the same split as src[offset..] (normalised), or -1 if none. O(1) time.
+	 */
+	public int findRow(long[] src, int offset) {
+		int i = index().indexOf(src, offset);
+		return (i<0) ? -1 : indexRows[i];
+	}
+
+	@Override
+	public int getSplitCount() {
+		return nRows;
+	}
+
+	@Override
+	public boolean isCompatible() {
+		for (int i=0; i<nRows-1; i++) {
+			for (int j=i+1; j<nRows; j++) {
+				if (!SplitWordUtils.compatible(words, i*nWords, words, j*nWords, nWords)) return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * The index, built if necessary
+	 */
+	private SplitHashTable index() {
+		if (index==null) {
+			index = new SplitHashTable(nTaxa, nRows+16);
+			indexRows = new int[nRows+16];
+			for (int row=0; row<nRows; row++) indexRow(row);
+		}
+		return index;
+	}
+
+	private void indexRow(int row) {
+		int size = index.size();
+		int i = index.add(words, row*nWords);
+		if (i==size) {
+			if (i==indexRows.length) indexRows = Arrays.copyOf(indexRows, 2*i);
+			indexRows[i] = row;
+		}
+	}
+
+	// The rows have changed other than by appending: index must be rebuilt
+	private void invalidateIndex() {
+		index = null;
+		indexRows = null;
+	}
+
+	private void checkRow(int row) {
+		if (row<0 || row>=nRows) throw new IndexOutOfBoundsException("Row "+row+" of "+nRows);
+	}
+
+	private void insertRow(int row, long[] src, int offset, double weight, long count) {
+		if (row<0 || row>nRows) throw new IndexOutOfBoundsException("Row "+row+" of "+nRows);
+		if ((nRows+1)*nWords>words.length) {
+			int capacity = 2*(nRows+1);
+			words = Arrays.copyOf(words, capacity*nWords);
+			if (weights!=null) weights = Arrays.copyOf(weights, capacity);
+			if (counts!=null) counts = Arrays.copyOf(counts, capacity);
+		}
+		System.arraycopy(words, row*nWords, words, (row+1)*nWords, (nRows-row)*nWords);
+		if (weights!=null) System.arraycopy(weights, row, weights, row+1, nRows-row);
+		if (counts!=null) System.arraycopy(counts, row, counts, row+1, nRows-row);
+		setWords(row, src, offset);
+		if (weights!=null) weights[row] = weight;
+		if (counts!=null) counts[row] = count;
+		nRows++;
+		if (index!=null && row==nRows-1) {
+			indexRow(row);
+		} else {
+			invalidateIndex();
+		}
+	}
+
+	private void setWords(int row, long[] src, int offset) {
+		System.arraycopy(src, offset, words, row*nWords, nWords);
+		if (nTaxa>0) {
+			words[row*nWords+nWords-1] &= SplitWordUtils.lastWordMask(nTaxa);
+			SplitWordUtils.normalise(words, row*nWords, nTaxa);
+		}
+	}
+
+	private void deleteRow(int row) {
+		checkRow(row);
+		System.arraycopy(words, (row+1)*nWords, words, row*nWords, (nRows-row-1)*nWords);
+		if (weights!=null) System.arraycopy(weights, row+1, weights, row, nRows-row-1);
+		if (counts!=null) System.arraycopy(counts, row+1, counts, row, nRows-row-1);
+		nRows--;
+		invalidateIndex();
+	}
+
+	// words of a split on the same taxa as this matrix, else exception
+	private long[] wordsOf(Split split) {
+		if (split instanceof RowSplit && ((RowSplit)split).matrix()==this) {
+			RowSplit view = (RowSplit)split;
+			return Arrays.copyOfRange(words, view.row*nWords, (view.row+1)*nWords);
+		}
+		if (!IdGroupUtils.equals(split.getIdGroup(), getIdGroup()))
+			throw new IllegalArgumentException("Split has a different set of taxa");
+		return split.getLongArray();
+	}
+
+	/*
+	 * Collection and List interfaces: all go through 'rows'
+	 */
+	@Override
+	public boolean add(Split split) { return rows().add(split); }
+	@Override
+	public boolean addAll(Collection<? extends Split> splitCollection) { return rows().addAll(splitCollection); }
+	@Override
+	public void add(int index, Split split) { rows().add(index, split); }
+	@Override
+	public boolean addAll(int index, Collection<? extends Split> splitCollection) { return rows().addAll(index, splitCollection); }
+	@Override
+	public Iterator<Split> iterator() { return rows().iterator(); }
+	@Override
+	public void clear() {
+		nRows = 0;
+		invalidateIndex();
+		rows().changed();
+	}
+	@Override
+	public boolean contains(Object split) { return rows().contains(split); }
+	@Override
+	public boolean containsAll(Collection<?> splitCollection) { return rows().containsAll(splitCollection); }
+	@Override
+	public boolean isEmpty() { return nRows==0; }
+	@Override
+	public boolean remove(Object split) { return rows().remove(split); }
+	@Override
+	public boolean removeAll(Collection<?> splitCollection) { return rows().removeAll(splitCollection); }
+	@Override
+	public boolean retainAll(Collection<?> splitCollection) { return rows().retainAll(splitCollection); }
+	@Override
+	public int size() { return nRows; }
+	@Override
+	public Object[] toArray() { return rows().toArray(); }
+	@Override
+	public <T> T[] toArray(T[] array) { return rows().toArray(array); }
+	@Override
+	public Split get(int index) { return rows().get(index); }
+	@Override
+	public int indexOf(Object split) { return rows().indexOf(split); }
+	@Override
+	public int lastIndexOf(Object split) { return rows().lastIndexOf(split); }
+	@Override
+	public ListIterator<Split> listIterator() { return rows().listIterator(); }
+	@Override
+	public ListIterator<Split> listIterator(int index) { return rows().listIterator(index); }
+	@Override
+	public Split remove(int index) { return rows().remove(index); }
+	@Override
+	public Split set(int index, Split split) { return rows().set(index, split); }
+	@Override
+	public List<Split> subList(int fromIndex, int toIndex) { return rows().subList(fromIndex, toIndex); }
+
+	private Rows rows() {
+		if (rows==null) rows = new Rows();
+		return rows;
+	}
+
+	/*
+	 * The rows as a List<Split>. Removed and replaced splits are returned as standalone copies.
+	 */
+	private class Rows extends AbstractList<Split> {
+		@Override
+		public Split get(int index) {
+			checkRow(index);
+			return new RowSplit(index);
+		}
+		@Override
+		public int size() {
+			return nRows;
+		}
+		void changed() {
+			modCount++;
+		}
+		@Override
+		public Split set(int index, Split split) {
+			checkRow(index);
+			long[] newWords = wordsOf(split);
+			Split old = Split.toSplit(getIdGroup(), Arrays.copyOfRange(words, index*nWords, (index+1)*nWords));
+			setWords(index, newWords, 0);
+			invalidateIndex();
+			return old;
+		}
+		@Override
+		public void add(int index, Split split) {
+			insertRow(index, wordsOf(split), 0, 0, 0);
+			modCount++;
+		}
+		@Override
+		public Split remove(int index) {
+			checkRow(index);
+			Split old = Split.toSplit(getIdGroup(), Arrays.copyOfRange(words, index*nWords, (index+1)*nWords));
+			deleteRow(index);
+			modCount++;
+			return old;
+		}
+		@Override
+		public int indexOf(Object o) {
+			long[] target = comparableWords(o);
+			if (target==null) return -1;
+			return findRow(target, 0);
+		}
+		@Override
+		public int lastIndexOf(Object o) {
+			long[] target = comparableWords(o);
+			if (target==null) return -1;
+			for (int row=nRows-1; row>=0; row--) {
+				if (SplitWordUtils.equals(words, row*nWords, target, 0, nWords)) return row;
+			}
+			return -1;
+		}
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(o)>=0;
+		}
+		@Override
+		public boolean remove(Object o) {
+			int row = indexOf(o);
+			if (row<0) return false;
+			remove(row);
+			return true;
+		}
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			return removeIf(c, true);
+		}
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			return removeIf(c, false);
+		}
+		// removes rows which are (if inC) or are not (if !inC) splits in c, comparing by content
+		private boolean removeIf(Collection<?> c, boolean inC) {
+			SplitHashTable other = new SplitHashTable(nTaxa, c.size());
+			for (Object o : c) {
+				long[] target = comparableWords(o);
+				if (target!=null) other.add(target, 0);
+			}
+			int kept = 0;
+			for (int row=0; row<nRows; row++) {
+				boolean found = other.indexOf(words, row*nWords)>=0;
+				if (found!=inC) {
+					System.arraycopy(words, row*nWords, words, kept*nWords, nWords);
+					if (weights!=null) weights[kept] = weights[row];
+					if (counts!=null) counts[kept] = counts[row];
+					kept++;
+				}
+			}
+			boolean changed = (kept<nRows);
+			nRows = kept;
+			if (changed) {
+				invalidateIndex();
+				modCount++;
+			}
+			return changed;
+		}
+		// words of o, if it is a split on the same taxa, else null
+		private long[] comparableWords(Object o) {
+			if (!(o instanceof Split)) return null;
+			Split split = (Split)o;
+			if (!IdGroupUtils.equals(split.getIdGroup(), getIdGroup())) return null;
+			return wordsOf(split);
+		}
+	}
+
+	/*
+	 * Flyweight view of one row
+	 */
+	@SuppressWarnings("serial")
+	private class RowSplit extends Split {
+		private final int row;
+
+		RowSplit(int row) {
+			super(SplitMatrix.this.getIdGroup());
+			this.row = row;
+		}
+
+		SplitMatrix matrix() {
+			return SplitMatrix.this;
+		}
+
+		@Override
+		protected boolean isMember(int i) {
+			if (i<0 || i>=nTaxa) throw new IllegalArgumentException("Illegal taxon index");
+			return SplitWordUtils.isMember(words, row*nWords, i);
+		}
+
+		@Override
+		public long[] getLongArray() {
+			return Arrays.copyOfRange(words, row*nWords, (row+1)*nWords);
+		}
+
+		@Override
+		public boolean equals(Split other) {
+			if (!IdGroupUtils.equals(this, other)) throw new IllegalArgumentException("Attempting to compare splits on different taxa sets");
+			return SplitWordUtils.equals(words, row*nWords, wordsOf(other), 0, nWords);
+		}
+
+		@Override
+		public boolean compatible(Split other) {
+			if (!IdGroupUtils.equals(this, other)) throw new IllegalArgumentException("Attempting to compare splits on different taxa sets");
+			if (other instanceof RowSplit && ((RowSplit)other).matrix()==SplitMatrix.this) {
+				return SplitWordUtils.compatible(words, row*nWords, words, ((RowSplit)other).row*nWords, nWords);
+			}
+			return SplitWordUtils.compatible(words, row*nWords, wordsOf(other), 0, nWords);
+		}
+
+		/**
+		 * Same as the hashCode of the equivalent SmallSplit or LongSplit
+		 */
+		@Override
+		public int hashCode() {
+			if (nTaxa<=64) return SmallSplit.hashCode(idGroupHashCode(), (nWords==0) ? 0 : words[row*nWords], nTaxa);
+			return idGroupHashCode() ^ SplitWordUtils.hashCode(words, row*nWords, nWords);
+		}
+
+		@Override
+		public int sizeOfSmaller() {
+			int bitCount = SplitWordUtils.bitCount(words, row*nWords, nWords);
+			return (bitCount*2>nTaxa) ? nTaxa - bitCount : bitCount;
+		}
+
+		@Override
+		public Set<Identifier> smallerSubset() {
+			Set<Identifier> set = new HashSet<Identifier>(nTaxa/2);
+			int bitCount = SplitWordUtils.bitCount(words, row*nWords, nWords);
+			// if there are more one bits than zero bits, the zero bits are the smaller subset
+			boolean wanted = (bitCount*2<=nTaxa);
+			for (int i=0; i<nTaxa; i++) {
+				if (SplitWordUtils.isMember(words, row*nWords, i)==wanted) {
+					set.add(idGroup.getIdentifier(i));
+				}
+			}
+			return set;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package palExtensions;
+
+/**
+ * Bit-twiddling on splits stored as arrays of 64 bit words.
+ *
+ * Layout: taxon i (in the order of the split's ordered IdGroup) is bit i%64 of
+ * word i/64. Unused high bits of the last word are always zero.
+ * A split is 'normalised' when taxon 0 is a zero bit, so that a split and its
+ * complement have the same encoding (cf. SmallSplit.)
+ *
+ * Most methods take an offset so that they can act on rows of a larger flat array.
+ */
+public class SplitWordUtils {
+
+	/**
+	 * @param nTaxa
+	 * @return number of 64 bit words needed to hold a split on nTaxa taxa
+	 */
+	public static int nWords(int nTaxa) {
+		return (nTaxa+63)>>>6;
+	}
+
+	/**
+	 * @param nTaxa
+	 * @return mask of the bits of the last word which are actually used
+	 */
+	public static long lastWordMask(int nTaxa) {
+		int spare = nTaxa & 63;
+		return (spare==0) ? -1L : (1L<<spare)-1;
+	}
+
+	public static boolean isMember(long[] words, int offset, int i) {
+		return ((words[offset+(i>>>6)] >>> (i & 63)) & 1L) != 0;
+	}
+
+	public static void setMember(long[] words, int offset, int i) {
+		words[offset+(i>>>6)] |= 1L<<(i & 63);
+	}
+
+	/**
+	 * Complements the split if necessary so that taxon 0 is a zero bit.
+	 */
+	public static void normalise(long[] words, int offset, int nTaxa) {
+		if ((words[offset] & 1L) == 0) return;
+		int n = nWords(nTaxa);
+		for (int w=0; w<n; w++) words[offset+w] = ~words[offset+w];
+		words[offset+n-1] &= lastWordMask(nTaxa);
+	}
+
+	/**
+	 * Normalised words from a boolean array which is in the order of the (ordered) IdGroup.
+	 */
+	public static long[] fromBooleanArray(boolean[] split) {
+		long[] words = new long[nWords(split.length)];
+		boolean flip = split[0];
+		for (int i=1; i<split.length; i++) {
+			if (split[i]^flip) setMember(words, 0, i);
+		}
+		return words;
+	}
+
+	/**
+	 * As fromBooleanArray(boolean[]), but split[perm[i]] gives the membership of taxon i.
+	 * (perm as returned by IdGroupUtils.permuteToOrder)
+	 */
+	public static long[] fromBooleanArray(boolean[] split, int[] perm) {
+		long[] words = new long[nWords(split.length)];
+		boolean flip = split[perm[0]];
+		for (int i=1; i<split.length; i++) {
+			if (split[perm[i]]^flip) setMember(words, 0, i);
+		}
+		return words;
+	}
+
+	public static int bitCount(long[] words, int offset, int nWords) {
+		int count = 0;
+		for (int w=0; w<nWords; w++) count += Long.bitCount(words[offset+w]);
+		return count;
+	}
+
+	public static boolean equals(long[] a, int aOffset, long[] b, int bOffset, int nWords) {
+		for (int w=0; w<nWords; w++) {
+			if (a[aOffset+w]!=b[bOffset+w]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compatibility test for two normalised splits on the same taxa.
+	 * As taxon 0 is on the zero side of both, the splits are compatible iff
+	 * the one sides are disjoint or one contains the other.
+	 */
+	public static boolean compatible(long[] a, int aOffset, long[] b, int bOffset, int nWords) {
+		boolean qAB = false; // there exists a label in both 'a' and 'b'.
+		boolean qAb = false; // there exists a label in 'a' but not in 'b'.
+		boolean qaB = false; // there exists a label in 'b' but not in 'a'.
+		for (int w=0; w<nWords; w++) {
+			long x = a[aOffset+w];
+			long y = b[bOffset+w];
+			qAB = qAB || (x & y)!=0;
+			qAb = qAb || (x & ~y)!=0;
+			qaB = qaB || (~x & y)!=0;
+			if (qAB && qAb && qaB) return false;
+		}
+		return true;
+	}
+
+	// Found from Mathematica by: RandomPrime[{10^18, 9 10^18}] (as for SmallSplit)
+	private static final long LARGE_PRIME = 5941310150097163001L;
+
+	public static int hashCode(long[] words, int offset, int nWords) {
+		long hash = nWords;
+		for (int w=0; w<nWords; w++) {
+			hash = (hash ^ words[offset+w])*LARGE_PRIME;
+			hash ^= hash>>>29;
+		}
+		return (int)(hash>>>32);
+	}
+}
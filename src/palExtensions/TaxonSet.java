@@ -0,0 +1,126 @@
+package palExtensions;
+
+import java.io.ObjectStreamException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+
+/**
+ * An immutable IdGroup, sorted into lexicographic order, with a hash index from name to
+ * position. TaxonSets are interned: there is only one TaxonSet for each set of names, so two
+ * TaxonSets are equal (in the sense of IdGroupUtils.equals) iff they are the same object.
+ *
+ * IdGroupUtils recognises TaxonSets, so isOrdered is O(1), equals and sameLabels are identity
+ * checks, and whichIdNumber (used by isSubset and permuteToOrder) is a hash lookup. Splits and
+ * split systems built on a TaxonSet therefore skip most of the cost of checking their IdGroup.
+ *
+ * Interned TaxonSets are never released, which is fine for the handful of taxon sets a program
+ * normally uses.
+ */
+public final class TaxonSet implements IdGroup {
+	private static final long serialVersionUID = 1L;
+	private static final ConcurrentHashMap<List<String>,TaxonSet> INTERNED = new ConcurrentHashMap<List<String>,TaxonSet>();
+
+	private final Identifier[] ids;
+	private final List<String> names;
+	private final transient HashMap<String,Integer> index;
+	private final int hash; // as IdGroupUtils.hashCode
+
+	private TaxonSet(Identifier[] sortedIds, List<String> names) {
+		ids = sortedIds;
+		this.names = names;
+		hash = names.hashCode();
+		index = new HashMap<String,Integer>(2*ids.length);
+		for (int i=0; i<ids.length; i++) index.put(ids[i].getName(), i);
+	}
+
+	/**
+	 * @return the TaxonSet with the same labels as 'group' (which is returned if it is a TaxonSet.)
+	 * If the set is new, it holds copies of the Identifiers of 'group', so later changes to 'group'
+	 * do not affect it.
+	 */
+	public static TaxonSet of(IdGroup group) {
+		if (group instanceof TaxonSet) return (TaxonSet)group;
+		Identifier[] ids = new Identifier[group.getIdCount()];
+		for (int i=0; i<ids.length; i++) ids[i] = group.getIdentifier(i);
+		return intern(ids);
+	}
+
+	public static TaxonSet of(String... names) {
+		Identifier[] ids = new Identifier[names.length];
+		for (int i=0; i<ids.length; i++) ids[i] = new Identifier(names[i]);
+		return intern(ids);
+	}
+
+	private static TaxonSet intern(Identifier[] ids) {
+		Arrays.sort(ids, IdentifierUtils.COMPARATOR);
+		String[] names = new String[ids.length];
+		for (int i=0; i<ids.length; i++) {
+			names[i] = ids[i].getName();
+			if (i>0 && names[i].equals(names[i-1])) throw new IllegalArgumentException("Duplicate taxon name "+names[i]);
+		}
+		List<String> key = Collections.unmodifiableList(Arrays.asList(names));
+		TaxonSet set = INTERNED.get(key);
+		if (set!=null) return set;
+		Identifier[] copies = new Identifier[ids.length];
+		for (int i=0; i<ids.length; i++) copies[i] = new Identifier(names[i]);
+		set = new TaxonSet(copies, key);
+		TaxonSet previous = INTERNED.putIfAbsent(key, set);
+		return (previous==null) ? set : previous;
+	}
+
+	// deserialised TaxonSets are replaced by the interned one
+	private Object readResolve() throws ObjectStreamException {
+		return intern(ids.clone());
+	}
+
+	public int getIdCount() {
+		return ids.length;
+	}
+
+	/**
+	 * The Identifier is shared with every user of this TaxonSet: callers must not setName it.
+	 */
+	public Identifier getIdentifier(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * Not supported: TaxonSets are immutable.
+	 */
+	public void setIdentifier(int i, Identifier id) {
+		throw new UnsupportedOperationException("TaxonSet is immutable");
+	}
+
+	/**
+	 * @return position of the taxon with this name, or -1 if there is none. O(1) time.
+	 */
+	public int whichIdNumber(String name) {
+		Integer i = index.get(name);
+		return (i==null) ? -1 : i;
+	}
+
+	/**
+	 * @return the names of the taxa, in order (unmodifiable)
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * Equal to IdGroupUtils.hashCode(this), so a TaxonSet hashes like any IdGroup with the same labels
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	public String toString() {
+		return names.toString();
+	}
+}
@@ -0,0 +1,134 @@
+package palExtensions;
+
+import pal.tree.Node;
+import pal.tree.Tree;
+
+/**
+ * 64 or 128 bit fingerprints of tree topologies, computed in one traversal without
+ * reordering nodes or building strings. Suitable as hash keys when deduplicating
+ * large numbers of trees (c.f. ExTreeUtils.toTopologyString, which is exact but slow.)
+ *
+ * Each leaf gets a pseudo-random key derived from its name (independently in each 64 bit
+ * lane, so a pair of names colliding in one lane need not collide in the other), and each cluster (set of
+ * leaves below a node) the XOR of its leaves' keys. A rooted topology is hashed as the sum
+ * of scrambled cluster keys. An unrooted topology is hashed as the sum over non-trivial
+ * splits of (scrambled key of one side + scrambled key of the other side), which does not
+ * depend on where the tree is rooted. Sums do not depend on the order of children.
+ *
+ * Equal topologies (on the same leaf names) always get equal fingerprints;
+ * different topologies get equal fingerprints with probability about 2^-64 (or 2^-128.)
+ * Nodes with a single child are ignored.
+ */
+public class TopologyHash {
+	private static final long[] LANE_SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL};
+	private static final long UNROOTED_SEED = 0x165667B19E3779F9L;
+
+	private final int nLanes;
+	private final boolean rooted;
+	private long[] sum;
+	// for unrooted trees: cluster keys and sizes of the edges, which are only turned into
+	// split hashes once the key of the whole leaf set is known.
+	private long[][] edgeKeys;
+	private int[] edgeSize;
+	private int nEdges;
+
+	private TopologyHash(int nLanes, boolean rooted, int nNodes) {
+		this.nLanes = nLanes;
+		this.rooted = rooted;
+		sum = new long[nLanes];
+		if (!rooted) {
+			edgeKeys = new long[nLanes][nNodes];
+			edgeSize = new int[nNodes];
+		}
+	}
+
+	/**
+	 * @param tree
+	 * @param rooted if false, the result does not depend on the position of the root
+	 * @return 64 bit topology fingerprint
+	 */
+	public static long hash64(Tree tree, boolean rooted) {
+		return new TopologyHash(1, rooted, nodeCount(tree)).compute(tree.getRoot())[0];
+	}
+
+	/**
+	 * @param tree
+	 * @param rooted if false, the result does not depend on the position of the root
+	 * @return 128 bit topology fingerprint, as two longs
+	 */
+	public static long[] hash128(Tree tree, boolean rooted) {
+		return new TopologyHash(2, rooted, nodeCount(tree)).compute(tree.getRoot());
+	}
+
+	private static int nodeCount(Tree tree) {
+		return tree.getExternalNodeCount()+tree.getInternalNodeCount();
+	}
+
+	private long[] compute(Node root) {
+		long[] allKeys = new long[nLanes];
+		int nLeaves = visit(root, allKeys);
+		long[] result = new long[nLanes];
+		for (int lane=0; lane<nLanes; lane++) {
+			long total = sum[lane];
+			if (!rooted) {
+				for (int e=0; e<nEdges; e++) {
+					// skip trivial splits, as they are determined by the leaf set
+					if (edgeSize[e]<2 || edgeSize[e]>nLeaves-2) continue;
+					long key = edgeKeys[lane][e];
+					total += mix(key ^ UNROOTED_SEED) + mix(key ^ allKeys[lane] ^ UNROOTED_SEED);
+				}
+			}
+			result[lane] = mix(total + mix(allKeys[lane]) + nLeaves + (rooted ? 0 : UNROOTED_SEED));
+		}
+		return result;
+	}
+
+	/*
+	 * Adds the cluster keys of node and its descendents to 'keys', and returns the number of leaves.
+	 */
+	private int visit(Node node, long[] keys) {
+		int nChild = node.getChildCount();
+		if (nChild==0) {
+			String name = node.getIdentifier().getName();
+			for (int lane=0; lane<nLanes; lane++) keys[lane] ^= nameHash(name, LANE_SEEDS[lane]);
+			return 1;
+		}
+		long[] cluster = new long[nLanes];
+		int nLeaves = 0;
+		for (int i=0; i<nChild; i++) {
+			nLeaves += visit(node.getChild(i), cluster);
+		}
+		for (int lane=0; lane<nLanes; lane++) keys[lane] ^= cluster[lane];
+		if (nChild==1) return nLeaves;
+		if (rooted) {
+			for (int lane=0; lane<nLanes; lane++) sum[lane] += mix(cluster[lane]);
+		} else if (!node.isRoot() && !isSecondChildOfBinaryRoot(node)) {
+			// Both children of a two child root induce the same split, so only count one of them.
+			for (int lane=0; lane<nLanes; lane++) edgeKeys[lane][nEdges] = cluster[lane];
+			edgeSize[nEdges++] = nLeaves;
+		}
+		return nLeaves;
+	}
+
+	private static boolean isSecondChildOfBinaryRoot(Node node) {
+		Node parent = node.getParent();
+		return parent.isRoot() && parent.getChildCount()==2 && parent.getChild(1)==node;
+	}
+
+	// 64 bit hash of a name, keyed by a lane seed: each character is mixed in with the SplitMix64
+	// finaliser, so lanes with different seeds hash names independently.
+	private static long nameHash(String name, long seed) {
+		long hash = seed ^ name.length();
+		for (int i=0; i<name.length(); i++) {
+			hash = mix(hash + name.charAt(i) + seed);
+		}
+		return mix(hash);
+	}
+
+	// SplitMix64 finaliser
+	static long mix(long z) {
+		z = (z ^ (z>>>30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z>>>27)) * 0x94D049BB133111EBL;
+		return z ^ (z>>>31);
+	}
+}
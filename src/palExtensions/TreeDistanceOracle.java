@@ -0,0 +1,136 @@
+package palExtensions;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Node;
+import pal.tree.Tree;
+
+/**
+ * Distances between the leaves of a tree, computed on demand in O(1) time each, rather
+ * than precomputing an n by n matrix as ExTreeUtils.treeToDistanceMatrix does.
+ *
+ * Preprocessing makes an Euler tour of the tree, recording each node's distance from the root,
+ * and a sparse table for range minimum queries on the tour depths. The distance between two leaves
+ * is then rootDistance(i) + rootDistance(j) - 2*rootDistance(lca(i,j)), where the
+ * lowest common ancestor is the shallowest node in the tour between the two leaves.
+ * Memory is O(n log n) ints.
+ *
+ * The oracle does not refer to the tree after construction, so later changes to the
+ * tree do not affect it.
+ */
+public class TreeDistanceOracle implements PairwiseDistances {
+	private final IdGroup idGroup;
+	private final int[] depth;          // per node (nodes numbered in preorder)
+	private final double[] rootDistance; // per node
+	private final int[] leafNode;       // node number of each taxon
+	private final int[] first;          // position of each taxon in the Euler tour
+	private final int[][] minTable;     // minTable[k][p] = shallowest node in tour[p..p+2^k)
+
+	/**
+	 * @param tree
+	 * @param order the taxa, in the order to be used for indices. Must have the same labels as the tree's leaves.
+	 * @param countEdges if true, every edge has length 1, else branch lengths are used.
+	 */
+	public TreeDistanceOracle(Tree tree, IdGroup order, boolean countEdges) {
+		idGroup = order;
+		int n = order.getIdCount();
+		if (tree.getExternalNodeCount()!=n) throw new IllegalArgumentException("Tree and IdGroup have different numbers of taxa");
+		HashMap<String,Integer> taxonIndex = IdGroupUtils.indexMap(order);
+		int nNodes = tree.getExternalNodeCount()+tree.getInternalNodeCount();
+		depth = new int[nNodes];
+		rootDistance = new double[nNodes];
+		leafNode = new int[n];
+		first = new int[n];
+		Arrays.fill(first, -1);
+		int tourLength = 2*nNodes-1;
+		int[] tour = new int[tourLength];
+
+		// Iterative depth first traversal, recording a node each time it is entered or returned to.
+		Node[] stack = new Node[nNodes];
+		int[] stackNumber = new int[nNodes];
+		int[] nextChild = new int[nNodes];
+		int top = 0, nextNumber = 1, t = 0;
+		stack[0] = tree.getRoot();
+		while (top>=0) {
+			Node node = stack[top];
+			int number = stackNumber[top];
+			tour[t++] = number;
+			if (node.isLeaf()) {
+				Integer index = taxonIndex.get(node.getIdentifier().getName());
+				if (index==null) throw new IllegalArgumentException("INCOMPATIBLE IDENTIFIER ("+node.getIdentifier().getName()+")");
+				if (first[index]>=0) throw new IllegalArgumentException("Tree has two leaves labelled "+node.getIdentifier().getName());
+				first[index] = t-1;
+				leafNode[index] = number;
+				top--;
+			} else if (nextChild[top]<node.getChildCount()) {
+				Node child = node.getChild(nextChild[top]++);
+				int childNumber = nextNumber++;
+				depth[childNumber] = depth[number]+1;
+				rootDistance[childNumber] = rootDistance[number] + (countEdges ? 1 : child.getBranchLength());
+				top++;
+				stack[top] = child;
+				stackNumber[top] = childNumber;
+				nextChild[top] = 0;
+			} else {
+				top--;
+			}
+		}
+
+		int levels = 32-Integer.numberOfLeadingZeros(tourLength);
+		minTable = new int[levels][];
+		minTable[0] = tour;
+		for (int k=1; k<levels; k++) {
+			int[] previous = minTable[k-1];
+			int half = 1<<(k-1);
+			int[] table = new int[tourLength-(1<<k)+1];
+			for (int p=0; p<table.length; p++) {
+				table[p] = shallower(previous[p], previous[p+half]);
+			}
+			minTable[k] = table;
+		}
+	}
+
+	private int shallower(int node1, int node2) {
+		return (depth[node1]<=depth[node2]) ? node1 : node2;
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public int getIdCount() {
+		return leafNode.length;
+	}
+
+	/**
+	 * @return distance between taxa i and j (indices into the IdGroup)
+	 */
+	public double getDistance(int i, int j) {
+		if (i==j) return 0;
+		int a = first[i], b = first[j];
+		if (a>b) {
+			int temp = a; a = b; b = temp;
+		}
+		int k = 31-Integer.numberOfLeadingZeros(b-a+1);
+		int[] table = minTable[k];
+		int lca = shallower(table[a], table[b-(1<<k)+1]);
+		return rootDistance[leafNode[i]] + rootDistance[leafNode[j]] - 2*rootDistance[lca];
+	}
+
+	/**
+	 * Materialises all distances, e.g. for code which needs a DistanceMatrix.
+	 */
+	public DistanceMatrix toDistanceMatrix() {
+		int n = getIdCount();
+		double[][] dist = new double[n][n];
+		for (int i=0; i<n; i++) {
+			for (int j=i+1; j<n; j++) {
+				dist[i][j] = dist[j][i] = getDistance(i, j);
+			}
+		}
+		return new DistanceMatrix(dist, idGroup);
+	}
+}
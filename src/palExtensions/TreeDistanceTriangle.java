@@ -0,0 +1,113 @@
+package palExtensions;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+
+/**
+ * All-pairs distances between trees 0..nTrees-1 under some metric, computed in parallel over the
+ * upper triangle of the distance matrix. Shared by RobinsonFoulds and TripletDistance, which
+ * supply the metric.
+ *
+ * The triangle is numbered by rows: distance(i,j) for i<j is entry index(nTrees,i,j).
+ */
+class TreeDistanceTriangle {
+	/**
+	 * Distance between trees i and j (i<j). Called from several threads at once.
+	 */
+	interface Metric {
+		long distance(int i, int j);
+	}
+
+	/**
+	 * Receives distance(i,j), the entry 'index' of the triangle. Each entry is received once,
+	 * from any thread.
+	 */
+	interface Sink {
+		void put(int index, int i, int j, long distance);
+	}
+
+	private TreeDistanceTriangle() {}
+
+	/**
+	 * @return number of entries in the triangle, nTrees*(nTrees-1)/2
+	 */
+	static int size(int nTrees) {
+		long size = (long)nTrees*(nTrees-1)/2;
+		if (size>Integer.MAX_VALUE) throw new IllegalArgumentException("Too many trees for a triangular array");
+		return (int)size;
+	}
+
+	static int index(int nTrees, int i, int j) {
+		if (i>j) return index(nTrees, j, i);
+		if (i==j) throw new IllegalArgumentException("No entry for i==j");
+		return (int)((long)i*(2*nTrees-i-1)/2) + (j-i-1);
+	}
+
+	/**
+	 * Computes every entry of the triangle, passing each to 'sink'.
+	 * @param taskPairs minimum number of tree pairs to compare in one fork/join task
+	 */
+	static void computeAll(int nTrees, Metric metric, Sink sink, int taskPairs, ForkJoinPool pool) {
+		size(nTrees);
+		pool.invoke(new TriangleTask(nTrees, metric, sink, taskPairs, 0, nTrees));
+	}
+
+	/**
+	 * All-pairs distances as a DistanceMatrix.
+	 * @param treeNames identifiers for the trees (in order)
+	 */
+	static DistanceMatrix computeDistanceMatrix(int nTrees, IdGroup treeNames, Metric metric, int taskPairs, ForkJoinPool pool) {
+		if (treeNames.getIdCount()!=nTrees) throw new IllegalArgumentException("Need one tree name per tree");
+		final double[][] dist = new double[nTrees][nTrees];
+		computeAll(nTrees, metric, new Sink() {
+			public void put(int index, int i, int j, long distance) {
+				dist[i][j] = dist[j][i] = distance;
+			}
+		}, taskPairs, pool);
+		return new DistanceMatrix(dist, treeNames);
+	}
+
+	/*
+	 * Computes rows [fromRow,toRow) of the upper triangle. Row i has nTrees-1-i entries, so
+	 * the range is split where the number of pairs on each side is about equal.
+	 */
+	private static class TriangleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int nTrees;
+		private final Metric metric;
+		private final Sink sink;
+		private final int taskPairs;
+		private final int fromRow, toRow;
+		TriangleTask(int nTrees, Metric metric, Sink sink, int taskPairs, int fromRow, int toRow) {
+			this.nTrees = nTrees;
+			this.metric = metric;
+			this.sink = sink;
+			this.taskPairs = taskPairs;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+		@Override
+		protected void compute() {
+			long pairs = pairsBefore(toRow)-pairsBefore(fromRow);
+			if (pairs<=taskPairs || toRow-fromRow==1) {
+				for (int i=fromRow; i<toRow; i++) {
+					int k = (int)pairsBefore(i);
+					for (int j=i+1; j<nTrees; j++) sink.put(k++, i, j, metric.distance(i, j));
+				}
+			} else {
+				long half = pairsBefore(fromRow) + pairs/2;
+				int mid = fromRow+1;
+				while (mid<toRow-1 && pairsBefore(mid+1)<=half) mid++;
+				invokeAll(new TriangleTask(nTrees, metric, sink, taskPairs, fromRow, mid),
+						new TriangleTask(nTrees, metric, sink, taskPairs, mid, toRow));
+			}
+		}
+		// number of pairs (i,j) with i<j, i<row
+		private long pairsBefore(long row) {
+			return row*(2L*nTrees-row-1)/2;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package palExtensions;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+
+/**
+ * Triplet distances between rooted trees on the same taxa: the number of 3-taxon subsets
+ * on which the trees induce different rooted triples (ab|c, ac|b, bc|a or an unresolved fan.)
+ *
+ * A resolved triple ab|c is seen only at the node lca(a,b,c), as a pair in one child subtree
+ * and a taxon in another; a fan is seen there as three taxa in three child subtrees. So for
+ * each pair of nodes (one per tree), the numbers of triples resolved the same and differently
+ * at those nodes follow from the matrix M of intersection sizes of their child subtrees:
+ *   shared += sum C(M_ij,2) * (total - rowSum_i - colSum_j + M_ij)
+ *   different += sum M_ij * (rowSum_i - M_ij) * (colSum_j - M_ij)
+ * and distance = resolved1 + resolved2 - 2*shared - different.
+ * This takes O(n^2) time per pair of trees, with small constants. All-pairs distances
+ * for a collection of trees are computed in parallel.
+ *
+ * This is not one of the sub-quadratic (O(n log^2 n) or O(n log n)) triplet distance
+ * algorithms: it is quadratic in the number of taxa, though far better than enumerating the
+ * O(n^3) triples. Memory is also O(n) rows of O(n) counts in the worst case, as the row of each
+ * node of tree 1 is kept until its parent is done, so for deep trees of many thousands of
+ * taxa a pair may need O(n^2) memory.
+ */
+public class TripletDistance {
+	// Minimum number of tree pairs to compare in one fork/join task
+	private static final int TASK_PAIRS = 16;
+	private final IdGroup idGroup;
+	private final int nTaxa;
+	private final int nTrees;
+	private final IndexedTree[] trees;
+	private final long[] resolved;
+
+	public TripletDistance(IdGroup idGroup, List<Tree> trees) {
+		this(idGroup, trees.toArray(new Tree[trees.size()]), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param idGroup the taxa. Every tree must have exactly these leaf labels.
+	 * @param trees
+	 * @param pool used to index the trees in parallel
+	 */
+	public TripletDistance(IdGroup idGroup, Tree[] trees, ForkJoinPool pool) {
+		this.idGroup = idGroup;
+		nTaxa = idGroup.getIdCount();
+		nTrees = trees.length;
+		this.trees = new IndexedTree[nTrees];
+		resolved = new long[nTrees];
+		pool.invoke(new IndexTask(trees, IdGroupUtils.indexMap(idGroup), 0, nTrees));
+	}
+
+	private void indexTree(int t, Tree tree, HashMap<String,Integer> taxonIndex) {
+		if (tree.getExternalNodeCount()!=nTaxa) throw new IllegalArgumentException("Tree has the wrong number of leaves");
+		IndexedTree indexed = new IndexedTree(tree, taxonIndex, nTaxa);
+		trees[t] = indexed;
+		// Unresolved triples: three taxa in different child subtrees of a node
+		long unresolved = 0;
+		for (int x=0; x<indexed.nNodes; x++) {
+			long e1 = 0, e2 = 0, e3 = 0;
+			for (int c : indexed.children[x]) {
+				long size = indexed.leafCount[c];
+				e3 += e2*size;
+				e2 += e1*size;
+				e1 += size;
+			}
+			unresolved += e3;
+		}
+		resolved[t] = count(nTaxa) - unresolved;
+	}
+
+	/**
+	 * @return C(n,3), the number of triples of n taxa.
+	 */
+	public static long count(int n) {
+		long m = n;
+		return (n<3) ? 0 : m*(m-1)/2*(m-2)/3;
+	}
+
+	/**
+	 * Convenience method for a single pair of trees
+	 */
+	public static long distance(Tree tree1, Tree tree2) {
+		return new TripletDistance(TreeUtils.getLeafIdGroup(tree1), new Tree[]{tree1, tree2}, ForkJoinPool.commonPool()).distance(0, 1);
+	}
+
+	public IdGroup getIdGroup() {
+		return idGroup;
+	}
+
+	public int getTreeCount() {
+		return nTrees;
+	}
+
+	/**
+	 * @return number of resolved triples in tree i
+	 */
+	public long getResolvedCount(int i) {
+		return resolved[i];
+	}
+
+	/**
+	 * @return triplet distance between trees i and j
+	 */
+	public long distance(int i, int j) {
+		if (i==j) return 0;
+		IndexedTree t1 = trees[i];
+		IndexedTree t2 = trees[j];
+		long shared = 0, different = 0;
+		int[][] rows = new int[t1.nNodes][]; // rows[x][y] = |L1(x) intersect L2(y)|
+		long[] colSum = new long[4];
+		// Reverse preorder, so each node's children are done before it.
+		for (int x=t1.nNodes-1; x>=0; x--) {
+			if (t1.isLeaf(x)) continue;
+			int[] row = new int[t2.nNodes];
+			int[] xChildren = t1.children[x];
+			for (int c : xChildren) {
+				if (t1.isLeaf(c)) {
+					for (int y=t2.leafNode[t1.taxon[c]]; y>=0; y=t2.parent[y]) row[y]++;
+				} else {
+					int[] childRow = rows[c];
+					for (int y=0; y<t2.nNodes; y++) row[y] += childRow[y];
+				}
+			}
+			rows[x] = row;
+			for (int y=0; y<t2.nNodes; y++) {
+				long total = row[y];
+				if (total<3 || t2.isLeaf(y)) continue; // no triples seen here
+				int[] yChildren = t2.children[y];
+				if (colSum.length<yChildren.length) colSum = new long[yChildren.length];
+				for (int r=0; r<yChildren.length; r++) colSum[r] = 0;
+				for (int c : xChildren) {
+					for (int r=0; r<yChildren.length; r++) colSum[r] += intersection(t1, t2, rows, c, yChildren[r]);
+				}
+				for (int c : xChildren) {
+					long rowSum = intersection(t1, t2, rows, c, y);
+					if (rowSum==0) continue;
+					for (int r=0; r<yChildren.length; r++) {
+						long v = intersection(t1, t2, rows, c, yChildren[r]);
+						if (v==0) continue;
+						shared += v*(v-1)/2 * (total - rowSum - colSum[r] + v);
+						different += v * (rowSum - v) * (colSum[r] - v);
+					}
+				}
+			}
+			for (int c : xChildren) rows[c] = null;
+		}
+		return resolved[i] + resolved[j] - 2*shared - different;
+	}
+
+	// |L1(c) intersect L2(e)|, where c's row is available if c is not a leaf
+	private static long intersection(IndexedTree t1, IndexedTree t2, int[][] rows, int c, int e) {
+		if (t1.isLeaf(c)) return t2.contains(e, t2.leafNode[t1.taxon[c]]) ? 1 : 0;
+		return rows[c][e];
+	}
+
+	/**
+	 * @return distances between all pairs of trees in the common pool. See computeAll(ForkJoinPool).
+	 */
+	public long[] computeAll() {
+		return computeAll(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes distances between all pairs of trees, in parallel.
+	 * @return upper triangle of the distance matrix by rows, i.e. distance(i,j) for i<j is at
+	 *         index triangleIndex(i,j).
+	 */
+	public long[] computeAll(ForkJoinPool pool) {
+		final long[] result = new long[TreeDistanceTriangle.size(nTrees)];
+		TreeDistanceTriangle.computeAll(nTrees, metric(), new TreeDistanceTriangle.Sink() {
+			public void put(int index, int i, int j, long distance) {
+				result[index] = distance;
+			}
+		}, TASK_PAIRS, pool);
+		return result;
+	}
+
+	/**
+	 * Index of distance(i,j) in the array returned by computeAll.
+	 */
+	public int triangleIndex(int i, int j) {
+		return TreeDistanceTriangle.index(nTrees, i, j);
+	}
+
+	/**
+	 * All-pairs distances as a DistanceMatrix.
+	 * @param treeNames identifiers for the trees (in order), e.g. new SimpleIdGroup(n) if unimportant
+	 */
+	public DistanceMatrix computeDistanceMatrix(IdGroup treeNames) {
+		return TreeDistanceTriangle.computeDistanceMatrix(nTrees, treeNames, metric(), TASK_PAIRS, ForkJoinPool.commonPool());
+	}
+
+	private TreeDistanceTriangle.Metric metric() {
+		return new TreeDistanceTriangle.Metric() {
+			public long distance(int i, int j) {
+				return TripletDistance.this.distance(i, j);
+			}
+		};
+	}
+
+	/*
+	 * Indexes trees [from,to)
+	 */
+	private class IndexTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Tree[] trees;
+		private final HashMap<String,Integer> taxonIndex;
+		private final int from, to;
+		IndexTask(Tree[] trees, HashMap<String,Integer> taxonIndex, int from, int to) {
+			this.trees = trees;
+			this.taxonIndex = taxonIndex;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to-from<=1) {
+				for (int t=from; t<to; t++) indexTree(t, trees[t], taxonIndex);
+			} else {
+				int mid = (from+to)>>>1;
+				invokeAll(new IndexTask(trees, taxonIndex, from, mid), new IndexTask(trees, taxonIndex, mid, to));
+			}
+		}
+	}
+}
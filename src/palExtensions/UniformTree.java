@@ -0,0 +1,102 @@
+package palExtensions;
+
+import pal.misc.IdGroup;
+import pal.misc.Identifier;
+import pal.misc.SimpleIdGroup;
+import pal.tree.Node;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+
+/**
+ * Random binary tree topologies, uniform over all labelled topologies (the PDA model),
+ * rooted or unrooted. All branch lengths are 1.
+ *
+ * Leaves are added one at a time, each on an edge chosen uniformly from the current tree
+ * (including the edge above the root, for rooted trees), which gives each topology the same
+ * probability. The tree is kept in arrays until complete, so generation is O(n).
+ * Unrooted trees are returned with a trifurcating root.
+ */
+public class UniformTree extends RandomTreeGenerator {
+	private final boolean rooted_;
+
+	public UniformTree(IdGroup leafIDs, boolean rooted, long seed) {
+		super(leafIDs, seed);
+		rooted_ = rooted;
+	}
+
+	public UniformTree(String[] leafNames, boolean rooted, long seed) {
+		this(new SimpleIdGroup(leafNames), rooted, seed);
+	}
+
+	protected Tree generate(Identifier[] leaves, ExtRandom rng) {
+		int nLeaves = leaves.length;
+		if (nLeaves<(rooted_ ? 1 : 3)) throw new IllegalArgumentException("Too few leaves");
+		// Leaf i is node i, internal nodes are numbered from nLeaves. Unrooted trees are kept
+		// rooted at leaf 0, so every edge is the edge above some node other than the root.
+		int[] parent = new int[2*nLeaves];
+		int[][] children = new int[2*nLeaves][2];
+		int[] nodeList = new int[2*nLeaves]; // nodes in the tree, in order added
+		int nNodes = 0;
+		int root = 0;
+		parent[0] = -1;
+		nodeList[nNodes++] = 0;
+		int nextInternal = nLeaves;
+		for (int leaf=1; leaf<nLeaves; leaf++) {
+			int below;
+			if (rooted_) {
+				below = nodeList[rng.nextInt(nNodes)];
+			} else if (leaf==1) {
+				below = -1; // leaf 1 becomes the only child of the root
+			} else {
+				below = nodeList[1+rng.nextInt(nNodes-1)]; // any edge: not above the root
+			}
+			nodeList[nNodes++] = leaf;
+			if (below<0) {
+				parent[leaf] = 0;
+				children[0][0] = leaf;
+				continue;
+			}
+			int w = nextInternal++;
+			nodeList[nNodes++] = w;
+			int p = parent[below];
+			if (p<0) {
+				root = w;
+			} else if (children[p][0]==below) {
+				children[p][0] = w;
+			} else {
+				children[p][1] = w;
+			}
+			parent[w] = p;
+			children[w][0] = below;
+			children[w][1] = leaf;
+			parent[below] = w;
+			parent[leaf] = w;
+		}
+		rng.shuffle(leaves);
+		Node[] nodes = new Node[nextInternal];
+		for (int i=0; i<nextInternal; i++) {
+			nodes[i] = new SimpleNode();
+			if (i<nLeaves) nodes[i].setIdentifier(leaves[i]);
+		}
+		if (rooted_) {
+			for (int i=0; i<nextInternal; i++) {
+				if (i!=root) {
+					nodes[i].setBranchLength(1);
+					nodes[parent[i]].addChild(nodes[i]);
+				}
+			}
+			return new SimpleTree(nodes[root]);
+		}
+		// unrooted: re-root at the neighbour of leaf 0
+		int top = children[0][0];
+		for (int i=1; i<nextInternal; i++) {
+			if (i==top) continue;
+			nodes[i].setBranchLength(1);
+			nodes[parent[i]].addChild(nodes[i]);
+		}
+		nodes[0].setBranchLength(1);
+		nodes[top].addChild(nodes[0]);
+		return new SimpleTree(nodes[top]);
+	}
+}
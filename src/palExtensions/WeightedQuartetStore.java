@@ -0,0 +1,125 @@
+package palExtensions;
+
+import palExtensions.Quartet.Topology;
+
+/**
+ * A compact list of quartets: for each entry, a quadruple rank (see QuadrupleEnumerator),
+ * a topology (one byte) and a weight (a float.) Entries are in increasing order of rank.
+ * If the store is complete, entry i is quadruple i and ranks are not stored.
+ *
+ * Arrays are chunked, so the store can hold more than 2^31 entries.
+ * As a QuartetSupport, quadruples with no entry are unresolved.
+ */
+public class WeightedQuartetStore implements QuartetSupport {
+	static final int CHUNK_BITS = 24;
+	private static final int CHUNK_MASK = (1<<CHUNK_BITS)-1;
+	private static final Topology[] TOPOLOGIES = Topology.values();
+
+	private final QuadrupleEnumerator enumerator;
+	private final long size;
+	private final byte[][] topologies;
+	private final float[][] weights;
+	private final long[][] ranks; // null if complete
+
+	/**
+	 * @param enumerator
+	 * @param size number of entries
+	 * @param complete if true, size must be enumerator.count() and entry i is quadruple i.
+	 */
+	WeightedQuartetStore(QuadrupleEnumerator enumerator, long size, boolean complete) {
+		if (complete && size!=enumerator.count()) throw new IllegalArgumentException("A complete store needs one entry per quadruple");
+		this.enumerator = enumerator;
+		this.size = size;
+		int nChunks = (int)((size+CHUNK_MASK)>>>CHUNK_BITS);
+		topologies = new byte[nChunks][];
+		weights = new float[nChunks][];
+		ranks = complete ? null : new long[nChunks][];
+		for (int c=0; c<nChunks; c++) {
+			int length = (int)Math.min(1<<CHUNK_BITS, size-((long)c<<CHUNK_BITS));
+			topologies[c] = new byte[length];
+			weights[c] = new float[length];
+			if (!complete) ranks[c] = new long[length];
+		}
+	}
+
+	public QuadrupleEnumerator getEnumerator() {
+		return enumerator;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return true if there is an entry for every quadruple (with entry index = rank)
+	 */
+	public boolean isComplete() {
+		return ranks==null;
+	}
+
+	public long getRank(long index) {
+		return (ranks==null) ? index : ranks[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)];
+	}
+
+	public Topology getTopology(long index) {
+		return TOPOLOGIES[topologies[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)]];
+	}
+
+	public float getWeight(long index) {
+		return weights[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)];
+	}
+
+	/**
+	 * @return index of the entry for quadruple 'rank', or -1 if there is none
+	 */
+	public long indexOf(long rank) {
+		if (ranks==null) return (rank>=0 && rank<size) ? rank : -1;
+		long low = 0;
+		long high = size-1;
+		while (low<=high) {
+			long mid = (low+high)>>>1;
+			long midRank = getRank(mid);
+			if (midRank<rank) {
+				low = mid+1;
+			} else if (midRank>rank) {
+				high = mid-1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public Topology getQuartetTopology(long rank) {
+		long index = indexOf(rank);
+		return (index<0) ? Topology.UNRESOLVED : getTopology(index);
+	}
+
+	public double getQuartetWeight(long rank) {
+		long index = indexOf(rank);
+		return (index<0) ? 0 : getWeight(index);
+	}
+
+	void set(long index, long rank, Topology topology, float weight) {
+		int chunk = (int)(index>>>CHUNK_BITS);
+		int offset = (int)(index&CHUNK_MASK);
+		topologies[chunk][offset] = (byte)topology.ordinal();
+		weights[chunk][offset] = weight;
+		if (ranks!=null) ranks[chunk][offset] = rank;
+	}
+
+	/**
+	 * @return number of entries with this topology
+	 */
+	public long count(Topology topology) {
+		byte code = (byte)topology.ordinal();
+		long count = 0;
+		for (byte[] chunk : topologies) {
+			for (byte b : chunk) if (b==code) count++;
+		}
+		return count;
+	}
+}
@@ -6,41 +6,29 @@ import pal.misc.SimpleIdGroup;
 import pal.tree.SimpleNode;
 import pal.tree.SimpleTree;
 import pal.tree.Tree;
-import pal.tree.TreeGenerator;
-import pal.util.AlgorithmCallback;
 
 /**
  * A very quick random tree generator, based on the Yule process.
  *
- * I ignore the AlgorithmCallback. Nothing in here should take very long anyway.
+ * Generation takes O(n) time: rather than adding each waiting time to the branch length of
+ * every current leaf, the time each node was born is recorded, and its branch length set once,
+ * when it speciates or at the end.
+ *
+ * See RandomTreeGenerator for generating batches of trees in parallel.
  * 
  * @author Michael Woodhams
- *
- *
- * TODO:
- * Alternative constructors taking array of Strings, IdGroup, or just number of leaves.
  */
 
-public class YuleTree implements TreeGenerator {
-	private Identifier[] leaves_;
-	private ExtRandom rng_;
-	private int nLeaves_;
-	private SimpleNode[] leafList_; // working space: nonpersistent.
+public class YuleTree extends RandomTreeGenerator {
 	private double speciationRate_;
 	
 	public YuleTree(IdGroup leafIDs, double rate, long seed) {
-		this(leafIDs,rate);
-		rng_.setSeed(seed);
+		super(leafIDs, seed);
+		speciationRate_ = rate;
 	}
 	
 	public YuleTree(IdGroup leafIDs, double rate) {
-		nLeaves_ = leafIDs.getIdCount();
-		leaves_ = new Identifier[nLeaves_];
-		for (int i=0; i<nLeaves_; i++) {
-			leaves_[i] = leafIDs.getIdentifier(i);
-		}
-		rng_ = new ExtRandom(); // seeds from system time.
-		leafList_ = new SimpleNode[nLeaves_]; // preallocate storage.
+		super(leafIDs); // seeds from system time.
 		speciationRate_ = rate;
 	}
 	
@@ -52,27 +40,32 @@ public class YuleTree implements TreeGenerator {
 		this(new SimpleIdGroup(leafNames), rate, seed);
 	}
 	
-	public Tree getNextTree(AlgorithmCallback callback) { 
+	protected Tree generate(Identifier[] leaves, ExtRandom rng) {
+		int nLeaves = leaves.length;
+		SimpleNode[] leafList = new SimpleNode[nLeaves];
+		double[] birthTime = new double[nLeaves]; // time each node in leafList was born
 		SimpleNode root = new SimpleNode();
-		leafList_[0] = root;
+		leafList[0] = root;
+		double time = 0;
 		int size = 1; // current number of leaves in leafList.
-		while (size < nLeaves_) {
-			int toBranch = rng_.nextInt(size);
-			SimpleNode parent = leafList_[toBranch];
+		while (size < nLeaves) {
+			int toBranch = rng.nextInt(size);
+			SimpleNode parent = leafList[toBranch];
+			parent.setBranchLength(time-birthTime[toBranch]);
 			SimpleNode child1 = new SimpleNode();
 			SimpleNode child2 = new SimpleNode();
 			parent.addChild(child1);
 			parent.addChild(child2);
-			leafList_[toBranch] = child1; // replaces parent, which is no longer a leaf.
-			leafList_[size++]   = child2;
-			double x = rng_.nextExponential(1/(speciationRate_*size));
-			for (int i=0; i<size; i++) {
-				leafList_[i].setBranchLength(leafList_[i].getBranchLength()+x);
-			}
+			leafList[toBranch] = child1; // replaces parent, which is no longer a leaf.
+			birthTime[toBranch] = time;
+			leafList[size] = child2;
+			birthTime[size++] = time;
+			time += rng.nextExponential(1/(speciationRate_*size));
 		}
-		rng_.shuffle(leaves_);
-		for (int i=0; i<nLeaves_; i++) {
-			leafList_[i].setIdentifier(leaves_[i]);
+		rng.shuffle(leaves);
+		for (int i=0; i<nLeaves; i++) {
+			leafList[i].setBranchLength(time-birthTime[i]);
+			leafList[i].setIdentifier(leaves[i]);
 		}
 		return new SimpleTree(root);
 	}
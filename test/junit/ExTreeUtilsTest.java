@@ -1,7 +1,12 @@
 package junit;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Set;
+
 import org.junit.Test;
 
 import pal.math.MersenneTwisterFast;
@@ -38,4 +43,30 @@ public class ExTreeUtilsTest {
 			}
 		}
 	}
+	
+	@Test
+	public void testTopologyHash() {
+		// Same topology, different child order and root position
+		Tree tree1 = ExTreeUtils.stringToTree("((A,B),(C,D),(E,F));");
+		Tree tree2 = ExTreeUtils.stringToTree("((F,E),((D,C),(B,A)));");
+		Tree tree3 = ExTreeUtils.stringToTree("((A,C),(B,D),(E,F));");
+		assertEquals(ExTreeUtils.topologyHash(tree1,false), ExTreeUtils.topologyHash(tree2,false));
+		assertArrayEquals(ExTreeUtils.topologyHash128(tree1,false), ExTreeUtils.topologyHash128(tree2,false));
+		assertFalse(ExTreeUtils.topologyHash(tree1,true) == ExTreeUtils.topologyHash(tree2,true));
+		assertFalse(ExTreeUtils.topologyHash(tree1,false) == ExTreeUtils.topologyHash(tree3,false));
+		
+		// Unrooted hashes agree iff split sets agree, and don't depend on the root.
+		String[] leafNames = new String[]{"A","B","C","D","E","F","G"};
+		TreeGenerator generator = new YuleTree(leafNames,1.0,5); // 5 = RNG seed
+		Tree reference = generator.getNextTree(null);
+		Set<String> referenceSplits = TestUtils.splitSet(reference);
+		long referenceHash = ExTreeUtils.topologyHash(reference,false);
+		for (int i=0; i<50; i++) {
+			Tree tree = generator.getNextTree(null);
+			long hash = ExTreeUtils.topologyHash(tree,false);
+			assertEquals(referenceSplits.equals(TestUtils.splitSet(tree)), hash==referenceHash);
+			ExTreeUtils.reroot(tree, tree.getInternalNode(tree.getInternalNodeCount()/2));
+			assertEquals(hash, ExTreeUtils.topologyHash(tree,false));
+		}
+	}
 }
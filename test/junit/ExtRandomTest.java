@@ -0,0 +1,118 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import palExtensions.AliasSampler;
+import palExtensions.ExtRandom;
+
+public class ExtRandomTest {
+
+	@Test
+	public void testSubstreams() {
+		Set<Long> seeds = new HashSet<Long>();
+		for (long i=0; i<100000; i++) seeds.add(ExtRandom.substreamSeed(42, i));
+		assertEquals(100000, seeds.size()); // no collisions within one master seed
+		assertFalse(ExtRandom.substreamSeed(42, 0)==ExtRandom.substreamSeed(43, 0));
+		// same master seed and index, same stream
+		ExtRandom a = ExtRandom.substream(42, 7);
+		ExtRandom b = ExtRandom.substream(42, 7);
+		for (int i=0; i<100; i++) assertEquals(a.nextInt(1000), b.nextInt(1000));
+		// split is deterministic given the parent's state
+		ExtRandom c = new ExtRandom(5).split();
+		ExtRandom d = new ExtRandom(5).split();
+		assertEquals(c.nextDouble(), d.nextDouble(), 0.0);
+	}
+
+	/*
+	 * Indices past 2^32 would repeat the seeds of smaller ones
+	 */
+	@Test
+	public void testSubstreamRange() {
+		ExtRandom.substreamSeed(42, 0xffffffffL);
+		for (long index : new long[]{-1, 1L<<32, (1L<<32)+7}) {
+			try {
+				ExtRandom.substream(42, index);
+				fail();
+			} catch (IllegalArgumentException e) {}
+		}
+	}
+
+	@Test(expected=RuntimeException.class)
+	public void testUnseededSplit() {
+		ExtRandom.forbidUnseeded();
+		try {
+			new ExtRandom().split();
+		} finally {
+			ExtRandom.allowUnseeded();
+		}
+	}
+
+	private static double mean(double[] x) {
+		double sum = 0;
+		for (double v : x) sum += v;
+		return sum/x.length;
+	}
+
+	private static double variance(double[] x) {
+		double m = mean(x);
+		double sum = 0;
+		for (double v : x) sum += (v-m)*(v-m);
+		return sum/(x.length-1);
+	}
+
+	/*
+	 * Means and variances of bulk draws are close to the distributions'
+	 */
+	@Test
+	public void testDistributions() {
+		ExtRandom rng = new ExtRandom(40);
+		double[] x = new double[200000];
+		rng.nextDoubles(x);
+		assertEquals(0.5, mean(x), 0.005);
+		assertEquals(1./12, variance(x), 0.002);
+		rng.nextExponentials(x, 2.0);
+		assertEquals(2.0, mean(x), 0.02);
+		assertEquals(4.0, variance(x), 0.1);
+		rng.nextNormals(x, 1.0, 3.0);
+		assertEquals(1.0, mean(x), 0.03);
+		assertEquals(9.0, variance(x), 0.15);
+		int beyond = 0; // tail beyond 3 sd: probability 0.0027
+		for (double v : x) if (Math.abs(v-1.0)>9.0) beyond++;
+		assertEquals(0.0027*x.length, beyond, 5*Math.sqrt(0.0027*x.length));
+		for (double shape : new double[]{0.3, 1.0, 4.5}) {
+			rng.nextGammas(x, shape, 2.0);
+			assertEquals(shape*2, mean(x), 0.02*shape*2+0.01);
+			assertEquals(shape*4, variance(x), 0.05*shape*4);
+		}
+	}
+
+	@Test
+	public void testAliasSampler() {
+		double[] weights = {1, 0, 3, 6};
+		AliasSampler sampler = new AliasSampler(weights);
+		int[] draws = new int[100000];
+		sampler.sample(new ExtRandom(41), draws);
+		int[] counts = new int[weights.length];
+		for (int d : draws) counts[d]++;
+		assertEquals(0, counts[1]);
+		for (int i=0; i<weights.length; i++) {
+			double expected = weights[i]/10*draws.length;
+			assertEquals(expected, counts[i], 5*Math.sqrt(expected)+1);
+		}
+	}
+
+	@Test(expected=RuntimeException.class)
+	public void testUnseededNormal() {
+		ExtRandom.forbidUnseeded();
+		try {
+			new ExtRandom().nextNormal();
+		} finally {
+			ExtRandom.allowUnseeded();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.FourPointInference;
+import palExtensions.IdGroupUtils;
+import palExtensions.Quadruple;
+import palExtensions.Quartet.Topology;
+import palExtensions.WeightedQuartetStore;
+import palExtensions.YuleTree;
+
+public class FourPointInferenceTest {
+
+	private static float[] toFloats(DistanceMatrix dist) {
+		int n = dist.getIdCount();
+		float[] flat = new float[n*n];
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<n; j++) flat[i*n+j] = (float)dist.getDistance(i, j);
+		}
+		return flat;
+	}
+
+	/*
+	 * On a tree's path length matrix, inference agrees with Quadruple.whichQuartet
+	 * and weights are the internal edge lengths.
+	 */
+	@Test
+	public void testAll() {
+		Tree tree = ExTreeUtils.stringToTree("((A,B,C),(D,E),F,(G,(H,I,J)));");
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+		DistanceMatrix dist = ExTreeUtils.treeToDistanceMatrix(tree, order, true, 0);
+		FourPointInference inference = new FourPointInference(dist);
+		WeightedQuartetStore store = inference.inferAll();
+		assertTrue(store.isComplete());
+		Quadruple[] quads = Quadruple.allQuadruples(order);
+		assertEquals(quads.length, store.size());
+		for (Quadruple quad : quads) {
+			Topology topo = quad.whichQuartet(dist).getTopology();
+			long r = store.getEnumerator().rank(quad.getIndex(0), quad.getIndex(1), quad.getIndex(2), quad.getIndex(3));
+			assertEquals(topo, store.getTopology(r));
+			assertEquals(r, store.getRank(r));
+			if (topo==Topology.UNRESOLVED) {
+				assertEquals(0f, store.getWeight(r), 0f);
+			} else {
+				assertTrue(store.getWeight(r)>=1);
+			}
+		}
+		// a tolerance larger than any internal path makes everything unresolved
+		inference = new FourPointInference(order, toFloats(dist));
+		inference.setTieTolerance(100);
+		assertEquals(quads.length, inference.inferAll().count(Topology.UNRESOLVED));
+	}
+
+	/*
+	 * Sampled inference: ranks increase, topologies agree with the full store, the sample
+	 * depends only on the seed, and its size is about right.
+	 */
+	@Test
+	public void testSample() {
+		String[] leafNames = new String[40];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		Tree tree = new YuleTree(leafNames,1.0,14).getNextTree(null); // 14 = RNG seed
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+		FourPointInference inference = new FourPointInference(ExTreeUtils.treeToDistanceMatrix(tree, order, false, 0));
+		WeightedQuartetStore all = inference.inferAll();
+		WeightedQuartetStore sample = inference.inferSample(0.1, 99);
+		WeightedQuartetStore again = inference.inferSample(0.1, 99);
+		assertFalse(sample.isComplete());
+		assertEquals(sample.size(), again.size());
+		double expected = 0.1*all.size();
+		assertEquals(expected, sample.size(), 5*Math.sqrt(expected));
+		long lastRank = -1;
+		for (long i=0; i<sample.size(); i++) {
+			long rank = sample.getRank(i);
+			assertTrue(rank>lastRank);
+			assertEquals(rank, again.getRank(i));
+			assertEquals(all.getTopology(rank), sample.getTopology(i));
+			assertEquals(all.getWeight(rank), sample.getWeight(i), 0f);
+			lastRank = rank;
+		}
+	}
+
+	/*
+	 * Fractions so small that log(1-fraction) would round to 0 give few (valid) samples
+	 */
+	@Test
+	public void testTinySample() {
+		String[] leafNames = new String[20];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		Tree tree = new YuleTree(leafNames,1.0,14).getNextTree(null);
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+		FourPointInference inference = new FourPointInference(ExTreeUtils.treeToDistanceMatrix(tree, order, false, 0));
+		for (double fraction : new double[]{1e-17, 1e-300, Double.MIN_VALUE}) {
+			WeightedQuartetStore sample = inference.inferSample(fraction, 3);
+			assertTrue(sample.size()<=1);
+			for (long i=0; i<sample.size(); i++) assertTrue(sample.getRank(i)>=0);
+		}
+	}
+}
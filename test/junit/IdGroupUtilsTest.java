@@ -2,11 +2,15 @@ package junit;
 
 import static org.junit.Assert.*;
 
+import java.lang.ref.WeakReference;
+
 import org.junit.Test;
 
 import pal.misc.IdGroup;
+import pal.misc.Identifier;
 import pal.misc.SimpleIdGroup;
 import palExtensions.IdGroupUtils;
+import palExtensions.TaxonSet;
 
 public class IdGroupUtilsTest {
 	private static IdGroup groupABC = new SimpleIdGroup(new String[]{"a","b","c"});
@@ -46,4 +50,88 @@ public class IdGroupUtilsTest {
 		assertFalse(IdGroupUtils.sameLabels(groupABC, groupBAD));
 	}
 
+	@Test
+	public void testTaxonSet() {
+		TaxonSet abc = TaxonSet.of(groupCAB);
+		assertSame(abc, TaxonSet.of("b","c","a"));
+		assertSame(abc, TaxonSet.of(abc));
+		assertNotSame(abc, TaxonSet.of(groupBAD));
+		assertTrue(IdGroupUtils.isOrdered(abc));
+		assertTrue(IdGroupUtils.equals(abc, groupABC));
+		assertFalse(IdGroupUtils.equals(abc, TaxonSet.of(groupBAD)));
+		assertTrue(IdGroupUtils.sameLabels(groupCAB, abc));
+		assertEquals(2, abc.whichIdNumber("c"));
+		assertEquals(-1, abc.whichIdNumber("d"));
+		assertTrue(IdGroupUtils.isSubset(TaxonSet.of("a","c"), abc));
+		assertFalse(IdGroupUtils.isSubset(groupBAD, abc));
+		int[] perm = IdGroupUtils.permuteToOrder(groupCAB, abc);
+		for (int i=0; i<perm.length; i++) assertEquals(groupCAB.getIdentifier(i).getName(), abc.getIdentifier(perm[i]).getName());
+		try {
+			TaxonSet.of("a","a");
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+	/*
+	 * Neither the names list nor the group a TaxonSet was made from can change it
+	 */
+	@Test
+	public void testTaxonSetImmutable() {
+		TaxonSet xy = TaxonSet.of("x","y");
+		try {
+			xy.getNames().set(0, "zz");
+			fail();
+		} catch (UnsupportedOperationException e) {}
+		assertSame(xy, TaxonSet.of("x","y"));
+		SimpleIdGroup group = new SimpleIdGroup(new String[] {"p","q"});
+		TaxonSet pq = TaxonSet.of(group);
+		group.getIdentifier(0).setName("zz");
+		assertEquals("p", pq.getIdentifier(0).getName());
+		assertSame(pq, TaxonSet.of("q","p"));
+	}
+
+	@Test
+	public void testPermutationCache() {
+		IdGroupUtils.clearPermutationCache();
+		int[] perm = IdGroupUtils.permuteToOrderCached(groupABC, groupCAB);
+		assertArrayEquals(IdGroupUtils.permuteToOrder(groupABC, groupCAB), perm);
+		assertSame(perm, IdGroupUtils.permuteToOrderCached(groupABC, groupCAB));
+		assertEquals(1, IdGroupUtils.getPermutationCacheHits());
+		assertEquals(1, IdGroupUtils.getPermutationCacheMisses());
+		// keyed by reference: a copy with the same content is a different key
+		IdGroupUtils.permuteToOrderCached(groupABC, new SimpleIdGroup(groupCAB));
+		assertEquals(2, IdGroupUtils.getPermutationCacheMisses());
+	}
+
+	/*
+	 * A group modified after its permutation was cached gets a fresh permutation
+	 */
+	@Test
+	public void testPermutationCacheMutation() {
+		IdGroup reorder = new SimpleIdGroup(groupCAB);
+		int[] perm = IdGroupUtils.permuteToOrderCached(groupABC, reorder);
+		assertArrayEquals(new int[]{1,2,0}, perm);
+		// now b,a,c
+		reorder.setIdentifier(0, new Identifier("b"));
+		reorder.setIdentifier(1, new Identifier("a"));
+		reorder.setIdentifier(2, new Identifier("c"));
+		assertArrayEquals(new int[]{1,0,2}, IdGroupUtils.permuteToOrderCached(groupABC, reorder));
+	}
+
+	/*
+	 * The cache does not keep IdGroups alive
+	 */
+	@Test
+	public void testPermutationCacheWeak() throws InterruptedException {
+		IdGroup reorder = new SimpleIdGroup(groupCAB);
+		IdGroupUtils.permuteToOrderCached(groupABC, reorder);
+		WeakReference<IdGroup> ref = new WeakReference<IdGroup>(reorder);
+		reorder = null;
+		for (int attempt=0; attempt<50 && ref.get()!=null; attempt++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(ref.get());
+	}
+
 }
@@ -0,0 +1,182 @@
+package junit;
+
+/**
+ * Tests LongSplit and LongPartialSplit classes, mostly by comparison against
+ * the general (boolean array based) methods in Split.
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pal.math.MersenneTwisterFast;
+import pal.misc.IdGroup;
+import pal.misc.SimpleIdGroup;
+import palExtensions.ExtRandom;
+import palExtensions.LongPartialSplit;
+import palExtensions.LongSplit;
+import palExtensions.PartialSplit;
+import palExtensions.SmallSplit;
+import palExtensions.Split;
+
+public class LongSplitTest {
+	private static final int N_TAXA = 150;
+	private static final int N_SPLITS = 60;
+	private static final IdGroup STANDARD = makeGroup(N_TAXA, 0);
+	private static final IdGroup REORDERED = makeGroup(N_TAXA, 37);
+
+	/*
+	 * Taxa t000, t001, ..., rotated by 'shift' so that the group is not in order if shift>0
+	 */
+	private static IdGroup makeGroup(int n, int shift) {
+		String[] names = new String[n];
+		for (int i=0; i<n; i++) names[i] = String.format("t%03d", (i+shift)%n);
+		return new SimpleIdGroup(names);
+	}
+
+	/*
+	 * Random splits. To ensure there are some compatible pairs, most splits are
+	 * intervals of a random cyclic order.
+	 */
+	private static boolean[][] randomSplits(MersenneTwisterFast rng) {
+		int[] order = rng.shuffled(N_TAXA);
+		boolean[][] splits = new boolean[N_SPLITS][N_TAXA];
+		for (int s=0; s<N_SPLITS; s++) {
+			if (s%4==0) {
+				for (int i=0; i<N_TAXA; i++) splits[s][i] = rng.nextBoolean();
+			} else {
+				int start = rng.nextInt(N_TAXA);
+				int length = 2+rng.nextInt(N_TAXA-3);
+				for (int i=0; i<length; i++) splits[s][order[(start+i)%N_TAXA]] = true;
+			}
+		}
+		return splits;
+	}
+
+	private static int countTrue(boolean[] array) {
+		int count = 0;
+		for (boolean b : array) count += (b ? 1 : 0);
+		return count;
+	}
+
+	@Test
+	public void testAgainstGeneralMethods() {
+		MersenneTwisterFast rng = new ExtRandom(7);
+		boolean[][] raw = randomSplits(rng);
+		Split[] splits = new Split[N_SPLITS];
+		for (int s=0; s<N_SPLITS; s++) {
+			splits[s] = Split.toSplit(STANDARD, raw[s]);
+			assertTrue(splits[s] instanceof LongSplit);
+			int count = countTrue(raw[s]);
+			assertEquals(Math.min(count, N_TAXA-count), splits[s].sizeOfSmaller());
+			assertEquals(splits[s].sizeOfSmaller(), splits[s].smallerSubset().size());
+		}
+		for (int s=0; s<N_SPLITS; s++) {
+			for (int t=0; t<N_SPLITS; t++) {
+				assertEquals(Split.compatible(splits[s], splits[t]), splits[s].compatible(splits[t]));
+				assertEquals(Split.equals(splits[s], splits[t]), splits[s].equals(splits[t]));
+			}
+		}
+	}
+
+	@Test
+	public void testReorderedIdGroup() {
+		MersenneTwisterFast rng = new ExtRandom(11);
+		boolean[][] raw = randomSplits(rng);
+		for (int s=0; s<N_SPLITS; s++) {
+			// Express the same split in the order of REORDERED (which is STANDARD rotated by 37)
+			boolean[] rotated = new boolean[N_TAXA];
+			for (int i=0; i<N_TAXA; i++) rotated[i] = raw[s][(i+37)%N_TAXA];
+			LongSplit a = new LongSplit(STANDARD, raw[s]);
+			LongSplit b = new LongSplit(REORDERED, rotated);
+			assertTrue(a.equals(b));
+			assertTrue(a.compatible(b));
+			// complement is the same split
+			boolean[] complement = new boolean[N_TAXA];
+			for (int i=0; i<N_TAXA; i++) complement[i] = !raw[s][i];
+			assertTrue(a.equals(new LongSplit(STANDARD, complement)));
+		}
+	}
+
+	@Test
+	public void testDifferentTaxa() {
+		boolean[] raw = new boolean[N_TAXA];
+		raw[3] = raw[4] = true;
+		LongSplit a = new LongSplit(STANDARD, raw);
+		LongSplit b = new LongSplit(makeGroup(N_TAXA+1, 0), new boolean[N_TAXA+1]);
+		try {
+			a.compatible(b);
+			fail();
+		} catch (IllegalArgumentException e) {} catch (Exception e) { fail(); }
+	}
+
+	@Test
+	public void testPartialSplits() {
+		MersenneTwisterFast rng = new ExtRandom(13);
+		boolean[][] raw = randomSplits(rng);
+		Split[] partials = new Split[N_SPLITS];
+		boolean[][] present = new boolean[N_SPLITS][N_TAXA];
+		for (int s=0; s<N_SPLITS; s++) {
+			// each partial split omits a random ~third of the taxa
+			int nPresent = 0;
+			for (int i=0; i<N_TAXA; i++) {
+				present[s][i] = rng.nextInt(3)!=0;
+				if (present[s][i]) nPresent++;
+			}
+			String[] names = new String[nPresent];
+			boolean[] partial = new boolean[nPresent];
+			int k = 0;
+			for (int i=0; i<N_TAXA; i++) {
+				if (present[s][i]) {
+					names[k] = STANDARD.getIdentifier(i).getName();
+					partial[k++] = raw[s][i];
+				}
+			}
+			partials[s] = PartialSplit.toPartialSplit(new SimpleIdGroup(names), partial, STANDARD);
+			assertTrue(partials[s] instanceof LongPartialSplit);
+			for (int i=0; i<N_TAXA; i++) assertEquals(present[s][i], ((PartialSplit)partials[s]).isInPartial(i));
+		}
+		for (int s=0; s<N_SPLITS; s++) {
+			for (int t=0; t<N_SPLITS; t++) {
+				// brute force: look for all four combinations on the common taxa
+				boolean[][] seen = new boolean[2][2];
+				for (int i=0; i<N_TAXA; i++) {
+					if (present[s][i] && present[t][i]) seen[raw[s][i]?1:0][raw[t][i]?1:0] = true;
+				}
+				boolean expected = !(seen[0][0] && seen[0][1] && seen[1][0] && seen[1][1]);
+				assertEquals(expected, partials[s].compatible(partials[t]));
+			}
+			assertTrue(partials[s].equals(partials[s]));
+		}
+	}
+
+	/*
+	 * On up to 64 taxa, a LongSplit equals the SmallSplit with the same bits (even on a different,
+	 * reordered IdGroup object), and so must have the same hashCode.
+	 */
+	@Test
+	public void testMixedClasses() {
+		MersenneTwisterFast rng = new ExtRandom(11); // 11 = RNG seed
+		for (int n : new int[]{4, 40, 64}) {
+			IdGroup standard = makeGroup(n, 0);
+			IdGroup reordered = makeGroup(n, 3);
+			Set<Split> set = new HashSet<Split>();
+			for (int trial=0; trial<20; trial++) {
+				boolean[] split = new boolean[n];
+				for (int i=0; i<n; i++) split[i] = rng.nextBoolean();
+				boolean[] reorderedSplit = new boolean[n];
+				for (int i=0; i<n; i++) reorderedSplit[i] = split[(i+3)%n];
+				Split small = new SmallSplit(standard, split);
+				Split large = new LongSplit(reordered, reorderedSplit);
+				assertTrue(small.equals((Object)large));
+				assertTrue(large.equals((Object)small));
+				assertEquals(small.hashCode(), large.hashCode());
+				set.add(small);
+				assertTrue(set.contains(large));
+			}
+		}
+	}
+}
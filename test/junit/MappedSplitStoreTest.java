@@ -0,0 +1,140 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.MappedSplitStore;
+import palExtensions.NeoSplitUtils;
+import palExtensions.Split;
+import palExtensions.SplitConsensus;
+import palExtensions.SplitHashTable;
+import palExtensions.TaxonSet;
+import palExtensions.YuleTree;
+
+public class MappedSplitStoreTest {
+
+	/*
+	 * Store the splits of many trees, reopen the file, and check the split counts agree with
+	 * SplitConsensus (which counts each split once per tree.) One-word and multi-word splits.
+	 */
+	@Test
+	public void testPersistence() throws IOException {
+		for (int n : new int[]{20, 64, 100}) {
+			YuleTree generator = new YuleTree(TestUtils.leafNames(n),1.0,5); // 5 = RNG seed
+			Tree first = generator.getNextTree(null);
+			IdGroup idGroup = TreeUtils.getLeafIdGroup(first);
+			SplitConsensus consensus = new SplitConsensus(idGroup);
+			File file = File.createTempFile("MappedSplitStoreTest", ".splits");
+			file.deleteOnExit();
+			MappedSplitStore store = MappedSplitStore.create(file, idGroup);
+			long nRows = 0;
+			Split firstSplit = null;
+			for (int t=0; t<200; t++) {
+				Tree tree = (t==0) ? first : generator.getNextTree(null);
+				consensus.addTree(tree);
+				for (Split split : NeoSplitUtils.getSplits(idGroup, tree)) {
+					if (firstSplit==null) firstSplit = split;
+					assertEquals(nRows++, store.append(split));
+				}
+			}
+			store.close();
+
+			MappedSplitStore reopened = MappedSplitStore.open(file, false);
+			assertEquals(nRows, reopened.size());
+			assertEquals(n, reopened.getIdGroup().getIdCount());
+			assertEquals(firstSplit.toHexString(), reopened.getSplit(0).toHexString());
+			SplitHashTable counts = reopened.getSplitCounts();
+			assertEquals(consensus.getSplitCount(), counts.size());
+			long[] words = new long[reopened.getWordCount()];
+			long total = 0;
+			for (int i=0; i<counts.size(); i++) {
+				counts.getWords(i, words, 0);
+				assertEquals(counts.getCount(i), reopened.count(words, 0));
+				total += counts.getCount(i);
+			}
+			assertEquals(nRows, total);
+			assertEquals(reopened.count(firstSplit), reopened.count(firstSplit.getLongArray(), 0));
+			// compatibility scan against brute force
+			long compatible = 0;
+			for (long r=0; r<reopened.size(); r++) {
+				if (reopened.getSplit(r).compatible(firstSplit)) compatible++;
+			}
+			assertEquals(compatible, reopened.countCompatible(firstSplit));
+			reopened.close();
+
+			// append after reopening
+			MappedSplitStore appending = MappedSplitStore.open(file, true);
+			appending.append(firstSplit);
+			appending.close();
+			MappedSplitStore last = MappedSplitStore.open(file, false);
+			assertEquals(nRows+1, last.size());
+			assertEquals(firstSplit.toHexString(), last.getSplit(nRows).toHexString());
+			last.close();
+		}
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testReadOnly() throws IOException {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(8),1.0,1).getNextTree(null));
+		File file = File.createTempFile("MappedSplitStoreTest", ".splits");
+		file.deleteOnExit();
+		MappedSplitStore.create(file, idGroup).close();
+		MappedSplitStore store = MappedSplitStore.open(file, false);
+		try {
+			store.append(new long[]{0x6L}, 0);
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotAStore() throws IOException {
+		File file = File.createTempFile("MappedSplitStoreTest", ".splits");
+		file.deleteOnExit();
+		java.io.FileWriter writer = new java.io.FileWriter(file);
+		writer.write("((A,B),C,D); this is not a split store");
+		writer.close();
+		MappedSplitStore.open(file, false);
+	}
+
+	@Test(timeout=10000)
+	public void testNoTaxa() throws IOException {
+		File file = File.createTempFile("MappedSplitStoreTest", ".splits");
+		file.deleteOnExit();
+		try {
+			MappedSplitStore.create(file, TaxonSet.of());
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+
+	/*
+	 * Queries need not be normalised, and closing trims the file to the rows present.
+	 */
+	@Test
+	public void testQueryAndTruncate() throws IOException {
+		File file = File.createTempFile("MappedSplitStoreTest", ".splits");
+		file.deleteOnExit();
+		MappedSplitStore store = MappedSplitStore.create(file, TaxonSet.of("a","b","c","d","e"));
+		store.append(new long[]{0x6L}, 0); // {b,c}
+		store.append(new long[]{0x18L}, 0); // {d,e}
+		assertEquals(1, store.count(new long[]{0x6L}, 0));
+		assertEquals(1, store.count(new long[]{0x19L}, 0)); // complement {a,d,e}
+		assertEquals(1, store.count(new long[]{0x6L | (1L<<40)}, 0)); // bits beyond the taxa are ignored
+		assertEquals(2, store.countCompatible(new long[]{0x19L}, 0));
+		assertEquals(1, store.countCompatible(new long[]{0xeL}, 0)); // {b,c,d}
+		store.close();
+		long headerLength = file.length()-2*8;
+		assertEquals(64, headerLength); // 32 fixed, 5 names of 4+1 bytes, rounded up to a multiple of 8
+		MappedSplitStore reopened = MappedSplitStore.open(file, true);
+		reopened.append(new long[]{0x3L}, 0);
+		reopened.close();
+		assertEquals(headerLength+3*8, file.length());
+	}
+}
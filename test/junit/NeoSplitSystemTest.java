@@ -3,6 +3,8 @@ package junit;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -15,6 +17,8 @@ import pal.tree.Tree;
 import palExtensions.NeoSplitSystem;
 import palExtensions.NeoSplitUtils;
 import palExtensions.SmallSplit;
+import palExtensions.Split;
+import palExtensions.YuleTree;
 
 public class NeoSplitSystemTest {
 	/*
@@ -119,4 +123,83 @@ public class NeoSplitSystemTest {
 		assertTrue(Arrays.equals(splitSysToHexArray(splitSys), expected));
 	}
 
+	/*
+	 * contains, indexOf and remove(Object) find equal splits (made from a different tree, so
+	 * on a different IdGroup object), and stay right through every kind of change to the list.
+	 */
+	@Test
+	public void testIndex() {
+		String[] names = new String[80];
+		for (int i=0; i<names.length; i++) names[i] = "taxon"+i;
+		for (int n : new int[]{20, 80}) {
+			YuleTree generator = new YuleTree(Arrays.copyOf(names, n),1.0,2); // 2 = RNG seed
+			for (int trial=0; trial<5; trial++) {
+				Tree tree = generator.getNextTree(null);
+				NeoSplitSystem splits = NeoSplitUtils.getSplits(tree);
+				NeoSplitSystem copies = NeoSplitUtils.getSplits(tree);
+				assertNotSame(splits.get(0).getIdGroup(), copies.get(0).getIdGroup());
+				for (int i=0; i<splits.size(); i++) {
+					Split copy = copies.get(i);
+					assertTrue(splits.get(i).equals((Object)copy));
+					assertEquals(splits.get(i).hashCode(), copy.hashCode());
+					assertTrue(splits.contains(copy));
+					assertEquals(i, splits.indexOf(copy));
+					assertEquals(i, splits.lastIndexOf(copy));
+				}
+				Split last = copies.get(copies.size()-1);
+				Split first = copies.get(0);
+				assertTrue(splits.remove(last)); // from the end: index updated in place
+				assertFalse(splits.contains(last));
+				splits.remove(0); // from the start: index rebuilt
+				assertFalse(splits.contains(first));
+				assertEquals(0, splits.indexOf(copies.get(1)));
+				splits.add(0, first);
+				assertEquals(0, splits.indexOf(first));
+				assertEquals(1, splits.indexOf(copies.get(1)));
+				// changes through iterators and subLists
+				Iterator<Split> iter = splits.iterator();
+				iter.next();
+				iter.remove();
+				assertFalse(splits.contains(first));
+				List<Split> sub = splits.subList(0, 2);
+				sub.add(0, first);
+				assertEquals(0, splits.indexOf(first));
+				sub.remove(1);
+				assertFalse(splits.contains(copies.get(1)));
+				splits.set(1, last);
+				assertEquals(1, splits.indexOf(last));
+				assertFalse(splits.contains(copies.get(2)));
+				splits.clear();
+				assertFalse(splits.contains(first));
+			}
+		}
+	}
+
+	@Test
+	public void testRejectDuplicates() {
+		NeoSplitSystem splitSys = new NeoSplitSystem(IDGROUP, 0, true);
+		assertTrue(splitSys.add(SP_CF));
+		assertTrue(splitSys.add(SP_BC));
+		assertFalse(splitSys.add(new SmallSplit(IDGROUP, B01100)));
+		assertFalse(splitSys.addAll(Arrays.asList(SP_CF, SP_BC)));
+		assertEquals(2, splitSys.size());
+		try {
+			splitSys.add(0, new SmallSplit(IDGROUP, B11000));
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			splitSys.set(0, SP_BC);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		splitSys.set(1, SP_BC); // replacing a split by itself is fine
+		assertEquals(2, splitSys.size());
+		// without rejection, duplicates are kept
+		NeoSplitSystem permissive = new NeoSplitSystem(IDGROUP, 0);
+		permissive.add(SP_CF);
+		permissive.add(new SmallSplit(IDGROUP, B01100));
+		assertEquals(2, permissive.size());
+		assertEquals(0, permissive.indexOf(SP_CF));
+		assertEquals(1, permissive.lastIndexOf(SP_CF));
+	}
+
 }
@@ -1,6 +1,8 @@
 package junit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
@@ -10,8 +12,12 @@ import pal.tree.TreeGenerator;
 import pal.tree.TreeUtils;
 import palExtensions.ExTreeUtils;
 import palExtensions.ExtRandom;
+import palExtensions.LongSplit;
 import palExtensions.NeoSplitSystem;
 import palExtensions.NeoSplitUtils;
+import palExtensions.Split;
+import palExtensions.SplitWordUtils;
+import palExtensions.TaxonSet;
 import palExtensions.YuleTree;
 
 public class NeoSplitUtilsTest {
@@ -42,9 +48,61 @@ public class NeoSplitUtilsTest {
 				NeoSplitSystem splits = NeoSplitUtils.getSplits(tree);
 				Tree newTree = NeoSplitUtils.treeFromSplits(splits);
 				ExTreeUtils.reroot(newTree, TreeUtils.getNodeByName(newTree, "A").getParent());
-				String finalTopology = ExTreeUtils.toTopologyString(tree);
+				String finalTopology = ExTreeUtils.toTopologyString(newTree);
 				assertTrue(startTopology.equals(finalTopology));
 			} while (tree.getInternalNodeCount()>1);
 		}
 	}
+	
+	/*
+	 * A binary tree on n taxa has n-3 non-trivial splits, all compatible.
+	 * Use enough taxa that the splits are LongSplits.
+	 */
+	@Test
+	public void testGetSplitsLarge() {
+		final int N_TAXA = 100;
+		String[] leafNames = new String[N_TAXA];
+		for (int i=0; i<N_TAXA; i++) leafNames[i] = "T"+i;
+		TreeGenerator generator = new YuleTree(leafNames,1.0,5); // 5 = RNG seed
+		for (int i=0; i<3; i++) {
+			Tree tree = generator.getNextTree(null);
+			NeoSplitSystem splits = NeoSplitUtils.getSplits(tree);
+			assertEquals(N_TAXA-3, splits.getSplitCount());
+			assertTrue(splits.isCompatible());
+			for (Split split : splits) {
+				assertTrue(split.sizeOfSmaller()>=2);
+				assertTrue(split instanceof LongSplit);
+			}
+		}
+	}
+
+	/*
+	 * Incompatible clusters {t001,t100} and {t100,t101}, which overlap across a word boundary,
+	 * must be rejected rather than building a tree with a bogus split.
+	 */
+	@Test
+	public void testIncompatibleLarge() {
+		final int N_TAXA = 130;
+		String[] leafNames = new String[N_TAXA];
+		for (int i=0; i<N_TAXA; i++) leafNames[i] = String.format("t%03d", i);
+		TaxonSet idGroup = TaxonSet.of(leafNames);
+		int nWords = SplitWordUtils.nWords(N_TAXA);
+		long[] words = new long[2*nWords];
+		SplitWordUtils.setMember(words, 0, 1);
+		SplitWordUtils.setMember(words, 0, 100);
+		SplitWordUtils.setMember(words, nWords, 100);
+		SplitWordUtils.setMember(words, nWords, 101);
+		try {
+			NeoSplitUtils.treeFromSplits(idGroup, words, 2);
+			fail("Incompatible splits accepted");
+		} catch (IllegalArgumentException e) {}
+		// and in the other order
+		long[] reversed = new long[2*nWords];
+		System.arraycopy(words, nWords, reversed, 0, nWords);
+		System.arraycopy(words, 0, reversed, nWords, nWords);
+		try {
+			NeoSplitUtils.treeFromSplits(idGroup, reversed, 2);
+			fail("Incompatible splits accepted");
+		} catch (IllegalArgumentException e) {}
+	}
 }
@@ -0,0 +1,100 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import pal.tree.Node;
+import pal.tree.NodeUtils;
+import pal.tree.Tree;
+import palExtensions.ExTreeUtils;
+import palExtensions.NewickReader;
+import palExtensions.YuleTree;
+
+public class NewickReaderTest {
+
+	private static String toString(Tree tree) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		NodeUtils.printNH(pw, tree.getRoot(), true, false);
+		pw.flush();
+		return sw.toString();
+	}
+
+	@Test
+	public void testNewick() {
+		NewickReader reader = new NewickReader("[&R] ((A:1,'B''s c':2.5e-1)90:0.125,(C,D[comment; with semicolon]));\n\n ((A,C),B,D);\n");
+		Iterator<Tree> trees = reader.iterator();
+		Tree tree1 = trees.next();
+		Tree tree2 = trees.next();
+		assertFalse(trees.hasNext());
+		Node node = tree1.getRoot().getChild(0);
+		assertEquals("90", node.getIdentifier().getName());
+		assertEquals(0.125, node.getBranchLength(), 0.0);
+		assertEquals("B's c", node.getChild(1).getIdentifier().getName());
+		assertEquals(0.25, node.getChild(1).getBranchLength(), 0.0);
+		assertEquals(4, tree2.getExternalNodeCount());
+		// leaves with the same name share an Identifier
+		assertSame(tree1.getRoot().getChild(0).getChild(0).getIdentifier(), tree2.getRoot().getChild(0).getChild(0).getIdentifier());
+		assertEquals(5, reader.getIdGroup().getIdCount());
+		assertEquals("A", reader.getIdGroup().getIdentifier(0).getName());
+	}
+
+	@Test
+	public void testNexus() {
+		String nexus = "#NEXUS\nbegin taxa;\n dimensions ntax=4;\nend;\n"
+				+ "begin trees;\n translate 1 A, 2 B, 3 'C c', 4 D;\n"
+				+ " tree one = [&U] ((1:0.5,2:0.5):1,3,4);\n tree 'two;2' = ((1,3),2,4);\nend;\n";
+		List<Tree> trees = new NewickReader(nexus).readAll();
+		List<Tree> expected = new NewickReader("((A,B),'C c',D); ((A,'C c'),B,D);").readAll();
+		assertEquals(2, trees.size());
+		for (int i=0; i<2; i++) {
+			assertEquals(ExTreeUtils.topologyHash(expected.get(i),false), ExTreeUtils.topologyHash(trees.get(i),false));
+		}
+		assertEquals(0.5, trees.get(0).getRoot().getChild(0).getChild(1).getBranchLength(), 0.0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMalformed() {
+		new NewickReader("((A,B),C;").readAll();
+	}
+
+	/*
+	 * Write many trees to a file, read them back in parallel with a window much smaller than the file.
+	 */
+	@Test
+	public void testFile() throws IOException {
+		String[] leafNames = new String[30];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "taxon"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,8); // 8 = RNG seed
+		List<String> expected = new ArrayList<String>();
+		File file = File.createTempFile("NewickReaderTest", ".tre");
+		file.deleteOnExit();
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		for (int i=0; i<500; i++) {
+			String tree = toString(generator.getNextTree(null));
+			expected.add(tree);
+			out.println(tree+";");
+		}
+		out.close();
+
+		NewickReader reader = new NewickReader(file, 4096);
+		List<Tree> trees = reader.readAll();
+		assertEquals(expected.size(), trees.size());
+		for (int i=0; i<trees.size(); i++) assertEquals(expected.get(i), toString(trees.get(i)));
+		assertEquals(leafNames.length, reader.getIdGroup().getIdCount());
+		int count = 0;
+		for (Iterator<Tree> iter = reader.iterator(); iter.hasNext(); iter.next()) count++;
+		assertEquals(expected.size(), count);
+		reader.close();
+	}
+}
@@ -0,0 +1,84 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.misc.SimpleIdGroup;
+import palExtensions.QuadrupleEnumerator;
+import palExtensions.QuadrupleEnumerator.QuadrupleView;
+
+public class QuadrupleEnumeratorTest {
+
+	@Test
+	public void testRankUnrank() {
+		int n = 9;
+		QuadrupleEnumerator quads = new QuadrupleEnumerator(new SimpleIdGroup(n));
+		assertEquals(126, quads.count());
+		Iterator<QuadrupleView> iter = quads.iterator();
+		int[] index = new int[4];
+		long expectedRank = 0;
+		// iteration is in colex order, consistent with rank and unrank
+		for (int l=3; l<n; l++)
+			for (int k=2; k<l; k++)
+				for (int j=1; j<k; j++)
+					for (int i=0; i<j; i++) {
+						QuadrupleView view = iter.next();
+						assertEquals(expectedRank, view.getRank());
+						assertEquals(expectedRank, quads.rank(i,j,k,l));
+						assertArrayEquals(new int[]{i,j,k,l}, new int[]{view.getIndex(0),view.getIndex(1),view.getIndex(2),view.getIndex(3)});
+						quads.unrank(expectedRank, index);
+						assertArrayEquals(new int[]{i,j,k,l}, index);
+						expectedRank++;
+					}
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testParallel() {
+		IdGroup idGroup = new SimpleIdGroup(300); // C(300,4) overflows an int
+		QuadrupleEnumerator quads = new QuadrupleEnumerator(idGroup);
+		assertEquals(330791175L, quads.count());
+		int n = 40;
+		QuadrupleEnumerator small = new QuadrupleEnumerator(new SimpleIdGroup(n));
+		final AtomicLong rankSum = new AtomicLong();
+		long seen = small.stream(true).filter(new Predicate<QuadrupleView>() {
+			public boolean test(QuadrupleView view) {
+				rankSum.addAndGet(view.getRank());
+				return view.getIndex(0)<view.getIndex(1) && view.getIndex(1)<view.getIndex(2) && view.getIndex(2)<view.getIndex(3);
+			}
+		}).count();
+		long count = QuadrupleEnumerator.count(n);
+		assertEquals(count, seen);
+		assertEquals(count*(count-1)/2, rankSum.get());
+	}
+
+	/*
+	 * Counts and ranks near MAX_TAXA, where C(n,4) only just fits in a long.
+	 */
+	@Test
+	public void testMaxTaxa() {
+		assertEquals(2733567753712477500L, QuadrupleEnumerator.count(90000));
+		int n = QuadrupleEnumerator.MAX_TAXA;
+		assertEquals(9223148185681446450L, QuadrupleEnumerator.count(n));
+		QuadrupleEnumerator quads = new QuadrupleEnumerator(new SimpleIdGroup(n));
+		assertEquals(QuadrupleEnumerator.count(n), quads.count());
+		assertEquals(quads.count()-1, quads.rank(n-4, n-3, n-2, n-1));
+		int[] quad = new int[4];
+		quads.unrank(quads.count()-1, quad);
+		assertArrayEquals(new int[]{n-4, n-3, n-2, n-1}, quad);
+		try {
+			QuadrupleEnumerator.count(n+1);
+			fail();
+		} catch (IllegalArgumentException e) {}
+		try {
+			new QuadrupleEnumerator(new SimpleIdGroup(n+1));
+			fail();
+		} catch (IllegalArgumentException e) {}
+	}
+}
@@ -0,0 +1,85 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.IdGroupUtils;
+import palExtensions.Quadruple;
+import palExtensions.Quartet;
+import palExtensions.Quartet.Topology;
+import palExtensions.QuartetConcordance;
+import palExtensions.YuleTree;
+
+public class QuartetConcordanceTest {
+
+	@Test
+	public void testCounts() {
+		String[] leafNames = new String[]{"A","B","C","D","E","F","G","H","I"};
+		YuleTree generator = new YuleTree(leafNames,1.0,15); // 15 = RNG seed
+		List<Tree> trees = new ArrayList<Tree>();
+		for (int i=0; i<40; i++) trees.add(generator.getNextTree(null));
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(trees.get(0)));
+
+		QuartetConcordance concordance = new QuartetConcordance(order);
+		concordance.addTrees(trees.subList(0, 39));
+		concordance.addTree(trees.get(39));
+		assertEquals(40, concordance.getTreeCount());
+
+		Quadruple[] quads = Quadruple.allQuadruples(order);
+		int[][] expected = new int[quads.length][Topology.values().length];
+		for (Tree tree : trees) {
+			DistanceMatrix dist = ExTreeUtils.treeToDistanceMatrix(tree, order, true, 0);
+			for (int q=0; q<quads.length; q++) expected[q][quads[q].whichQuartet(dist).getTopologyAsInt()]++;
+		}
+		double[] factors = new double[3];
+		for (int q=0; q<quads.length; q++) {
+			long rank = concordance.getEnumerator().rank(quads[q].getIndex(0), quads[q].getIndex(1), quads[q].getIndex(2), quads[q].getIndex(3));
+			concordance.getConcordanceFactors(rank, factors);
+			for (int t=0; t<3; t++) {
+				Topology topology = Quartet.RESOLVED[t];
+				assertEquals(expected[q][topology.ordinal()], concordance.getCount(rank, topology));
+				assertEquals(expected[q][topology.ordinal()]/40.0, factors[t], 1e-12);
+			}
+		}
+	}
+
+	/*
+	 * addTree from several threads at once counts the same as addTrees
+	 */
+	@Test
+	public void testConcurrentAddTree() throws InterruptedException {
+		YuleTree generator = new YuleTree(TestUtils.leafNames(12),1.0,16); // 16 = RNG seed
+		final List<Tree> trees = new ArrayList<Tree>();
+		for (int i=0; i<40; i++) trees.add(generator.getNextTree(null));
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(trees.get(0)));
+		QuartetConcordance expected = new QuartetConcordance(order);
+		expected.addTrees(trees);
+		final QuartetConcordance concordance = new QuartetConcordance(order);
+		Thread[] threads = new Thread[4];
+		for (int k=0; k<threads.length; k++) {
+			final int first = k;
+			threads[k] = new Thread() {
+				public void run() {
+					for (int t=first; t<trees.size(); t+=4) concordance.addTree(trees.get(t));
+				}
+			};
+			threads[k].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertEquals(40, concordance.getTreeCount());
+		for (long rank=0; rank<expected.getEnumerator().count(); rank++) {
+			for (Topology topology : Quartet.RESOLVED) {
+				assertEquals(expected.getCount(rank, topology), concordance.getCount(rank, topology));
+			}
+		}
+	}
+}
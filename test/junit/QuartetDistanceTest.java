@@ -0,0 +1,64 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.ExtRandom;
+import palExtensions.IdGroupUtils;
+import palExtensions.QuartetDistance;
+import palExtensions.QuartetTable;
+import palExtensions.YuleTree;
+
+public class QuartetDistanceTest {
+
+	private static long bruteForce(Tree tree1, Tree tree2) {
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree1));
+		QuartetTable table1 = new QuartetTable(tree1, order);
+		QuartetTable table2 = new QuartetTable(tree2, order);
+		long distance = 0;
+		for (long rank=0; rank<table1.size(); rank++) {
+			if (table1.get(rank)!=table2.get(rank)) distance++;
+		}
+		return distance;
+	}
+
+	@Test
+	public void testSmall() {
+		Tree tree1 = ExTreeUtils.stringToTree("((A,B),(C,D),E);");
+		Tree tree2 = ExTreeUtils.stringToTree("((A,C),(B,D),E);");
+		Tree star = ExTreeUtils.stringToTree("(A,B,C,D,E);");
+		assertEquals(0, QuartetDistance.distance(tree1, tree1));
+		assertEquals(bruteForce(tree1, tree2), QuartetDistance.distance(tree1, tree2));
+		assertEquals(5, QuartetDistance.distance(tree1, star)); // all 5 quartets resolved in tree1
+		assertEquals(0, QuartetDistance.distance(star, star));
+	}
+
+	/*
+	 * Random binary and non-binary trees, compared with brute force.
+	 */
+	@Test
+	public void testRandom() {
+		String[] leafNames = new String[14];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,11); // 11 = RNG seed
+		ExtRandom rng = new ExtRandom(12);
+		for (int trial=0; trial<20; trial++) {
+			Tree tree1 = generator.getNextTree(null);
+			Tree tree2 = generator.getNextTree(null);
+			for (int merge=0; merge<trial%5; merge++) {
+				Tree tree = (merge%2==0) ? tree1 : tree2;
+				if (tree.getInternalNodeCount()<=2) continue;
+				TestUtils.randomNodeMerge(tree, rng);
+				tree.createNodeList();
+			}
+			QuartetDistance distance = new QuartetDistance(tree1, tree2);
+			assertEquals(bruteForce(tree1, tree2), distance.getDistance());
+			assertEquals(distance.getDistance(), QuartetDistance.distance(tree2, tree1));
+		}
+	}
+}
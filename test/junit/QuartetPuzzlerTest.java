@@ -0,0 +1,64 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.ExtRandom;
+import palExtensions.FourPointInference;
+import palExtensions.IdGroupUtils;
+import palExtensions.QuartetPuzzler;
+import palExtensions.QuartetTable;
+import palExtensions.RobinsonFoulds;
+import palExtensions.WeightedQuartetStore;
+import palExtensions.YuleTree;
+
+public class QuartetPuzzlerTest {
+
+	/*
+	 * With all quartets of a binary tree, every puzzling step recovers the tree.
+	 */
+	@Test
+	public void testExactQuartets() {
+		YuleTree generator = new YuleTree(TestUtils.leafNames(25),1.0,15); // 15 = RNG seed
+		ExtRandom rng = new ExtRandom(16);
+		for (int trial=0; trial<3; trial++) {
+			Tree tree = generator.getNextTree(null);
+			IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+			QuartetPuzzler puzzler = new QuartetPuzzler(new QuartetTable(tree, order));
+			assertEquals(0, RobinsonFoulds.distance(order, tree, puzzler.puzzle(rng)));
+			assertEquals(0, RobinsonFoulds.distance(order, tree, puzzler.reconstruct(10, trial)));
+		}
+	}
+
+	/*
+	 * Weighted quartets from a sample of the four point inferences: the reconstruction is
+	 * reproducible from the seed, and close to the true tree.
+	 */
+	@Test
+	public void testWeightedSample() {
+		Tree tree = new YuleTree(TestUtils.leafNames(30),1.0,17).getNextTree(null); // 17 = RNG seed
+		IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+		FourPointInference inference = new FourPointInference(ExTreeUtils.treeToDistanceMatrix(tree, order, false, 0));
+		WeightedQuartetStore store = inference.inferSample(0.5, 18);
+		QuartetPuzzler puzzler = new QuartetPuzzler(store);
+		Tree result = puzzler.reconstruct(20, 19);
+		assertEquals(ExTreeUtils.topologyHash(result, false), ExTreeUtils.topologyHash(puzzler.reconstruct(20, 19), false));
+		assertTrue(RobinsonFoulds.distance(order, tree, result) <= 6);
+	}
+
+	/*
+	 * With no resolved quartets, the majority rule consensus is a star
+	 */
+	@Test
+	public void testNoInformation() {
+		Tree tree = ExTreeUtils.stringToTree("(A,B,C,D,E,F,G,H);");
+		QuartetPuzzler puzzler = new QuartetPuzzler(new QuartetTable(tree, TreeUtils.getLeafIdGroup(tree)));
+		Tree star = puzzler.reconstruct(50, 20);
+		assertEquals(1, star.getInternalNodeCount());
+	}
+}
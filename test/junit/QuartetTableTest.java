@@ -0,0 +1,58 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.IdGroupUtils;
+import palExtensions.Quadruple;
+import palExtensions.Quartet.Topology;
+import palExtensions.QuartetTable;
+import palExtensions.YuleTree;
+
+public class QuartetTableTest {
+
+	private static void checkTable(Tree tree, QuartetTable table) {
+		IdGroup order = table.getIdGroup();
+		DistanceMatrix dist = ExTreeUtils.treeToDistanceMatrix(tree, order, true, 0);
+		Quadruple[] quads = Quadruple.allQuadruples(order);
+		assertEquals(quads.length, table.size());
+		long[] counts = new long[Topology.values().length];
+		for (Quadruple quad : quads) {
+			Topology topo = quad.whichQuartet(dist).getTopology();
+			counts[topo.ordinal()]++;
+			assertEquals(topo, table.get(quad.getIndex(0), quad.getIndex(1), quad.getIndex(2), quad.getIndex(3)));
+		}
+		for (Topology topo : Topology.values()) assertEquals(counts[topo.ordinal()], table.count(topo));
+	}
+
+	@Test
+	public void testHeap() {
+		String[] leafNames = new String[20];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,10); // 10 = RNG seed
+		for (int trial=0; trial<3; trial++) {
+			Tree tree = generator.getNextTree(null);
+			checkTable(tree, new QuartetTable(tree, IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree))));
+		}
+	}
+
+	@Test
+	public void testFileUnresolved() throws IOException {
+		Tree tree = ExTreeUtils.stringToTree("((A,B,C),(D,E),F,(G,(H,I,J)));");
+		File file = File.createTempFile("QuartetTableTest", ".bin");
+		file.deleteOnExit();
+		QuartetTable table = new QuartetTable(tree, TreeUtils.getLeafIdGroup(tree), file, ForkJoinPool.commonPool());
+		assertTrue(table.count(Topology.UNRESOLVED)>0);
+		checkTable(tree, table);
+	}
+}
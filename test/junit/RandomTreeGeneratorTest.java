@@ -0,0 +1,86 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pal.tree.Node;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.BirthDeathTree;
+import palExtensions.CoalescentTree;
+import palExtensions.ExTreeUtils;
+import palExtensions.RandomTreeGenerator;
+import palExtensions.UniformTree;
+import palExtensions.YuleTree;
+
+public class RandomTreeGeneratorTest {
+
+	private static double rootDistance(Node node) {
+		double distance = 0;
+		for (; !node.isRoot(); node = node.getParent()) distance += node.getBranchLength();
+		return distance;
+	}
+
+	/*
+	 * Generators give binary trees on all the leaves, ultrametric where they should be,
+	 * and batches are reproducible.
+	 */
+	@Test
+	public void testGenerators() {
+		String[] names = TestUtils.leafNames(50);
+		RandomTreeGenerator[] generators = {
+				new YuleTree(names, 1.0, 30),
+				new BirthDeathTree(names, 2.0, 1.0, 0.5, 31),
+				new CoalescentTree(names, 10.0, 32),
+				new UniformTree(names, true, 33),
+				new UniformTree(names, false, 34)};
+		boolean[] ultrametric = {true, true, true, false, false};
+		for (int g=0; g<generators.length; g++) {
+			for (int trial=0; trial<5; trial++) {
+				Tree tree = generators[g].getNextTree(null);
+				assertEquals(names.length, tree.getExternalNodeCount());
+				assertEquals(names.length, TreeUtils.getLeafIdGroup(tree).getIdCount());
+				int rootChildren = tree.getRoot().getChildCount();
+				assertEquals(g==4 ? 3 : 2, rootChildren);
+				assertEquals(names.length-(g==4 ? 2 : 1), tree.getInternalNodeCount());
+				if (ultrametric[g]) {
+					double height = rootDistance(tree.getExternalNode(0));
+					assertTrue(height>0);
+					for (int i=1; i<tree.getExternalNodeCount(); i++) assertEquals(height, rootDistance(tree.getExternalNode(i)), 1e-9*height);
+				}
+			}
+			Tree[] batch = generators[g].getTrees(35, 6);
+			Tree[] again = generators[g].getTrees(35, 3, 6, ForkJoinPool.commonPool());
+			for (int i=0; i<3; i++) {
+				assertEquals(ExTreeUtils.topologyHash(batch[3+i], true), ExTreeUtils.topologyHash(again[i], true));
+			}
+		}
+	}
+
+	/*
+	 * All 15 rooted topologies on 4 leaves, and all 3 unrooted ones, come up about equally often.
+	 */
+	@Test
+	public void testUniform() {
+		String[] names = TestUtils.leafNames(4);
+		checkUniform(new UniformTree(names, true, 36), true, 15, 15000);
+		checkUniform(new UniformTree(names, false, 37), false, 3, 3000);
+	}
+
+	private static void checkUniform(UniformTree generator, boolean rooted, int nTopologies, int nTrees) {
+		Map<Long,Integer> counts = new HashMap<Long,Integer>();
+		for (Tree tree : generator.getTrees(38, nTrees)) {
+			long hash = ExTreeUtils.topologyHash(tree, rooted);
+			Integer count = counts.get(hash);
+			counts.put(hash, count==null ? 1 : count+1);
+		}
+		assertEquals(nTopologies, counts.size());
+		double expected = (double)nTrees/nTopologies;
+		for (int count : counts.values()) assertEquals(expected, count, 5*Math.sqrt(expected));
+	}
+}
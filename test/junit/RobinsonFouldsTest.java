@@ -0,0 +1,61 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.misc.SimpleIdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.RobinsonFoulds;
+import palExtensions.YuleTree;
+
+public class RobinsonFouldsTest {
+	
+	
+	/*
+	 * Compare all pairs against symmetric difference of split sets. Use more than 64 taxa
+	 * to get multi-word splits, and enough trees for the triangle to be split between tasks.
+	 */
+	@Test
+	public void testAllPairs() {
+		final int N_TAXA = 70;
+		final int N_TREES = 80;
+		String[] leafNames = new String[N_TAXA];
+		for (int i=0; i<N_TAXA; i++) leafNames[i] = "T"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,8); // 8 = RNG seed
+		List<Tree> trees = new ArrayList<Tree>();
+		for (int i=0; i<N_TREES; i++) trees.add(generator.getNextTree(null));
+		trees.add(trees.get(0)); // so that there is a pair at distance zero
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(trees.get(0));
+		RobinsonFoulds rf = new RobinsonFoulds(idGroup, trees);
+		int[] all = rf.computeAll();
+		List<Set<String>> splitSets = new ArrayList<Set<String>>();
+		for (Tree tree : trees) splitSets.add(TestUtils.splitSet(tree));
+		for (int i=0; i<trees.size(); i++) {
+			for (int j=i+1; j<trees.size(); j++) {
+				Set<String> shared = new HashSet<String>(splitSets.get(i));
+				shared.retainAll(splitSets.get(j));
+				int expected = splitSets.get(i).size()+splitSets.get(j).size()-2*shared.size();
+				assertEquals(expected, all[rf.triangleIndex(i, j)]);
+				assertEquals(expected, rf.distance(j, i));
+			}
+		}
+		assertEquals(0, all[rf.triangleIndex(0, N_TREES)]);
+		DistanceMatrix matrix = rf.computeDistanceMatrix(new SimpleIdGroup(trees.size()));
+		for (int i=0; i<trees.size(); i++) {
+			assertEquals(0, matrix.getDistance(i, i), 0);
+			for (int j=i+1; j<trees.size(); j++) {
+				assertEquals(all[rf.triangleIndex(i, j)], matrix.getDistance(i, j), 0);
+				assertEquals(all[rf.triangleIndex(i, j)], matrix.getDistance(j, i), 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pal.tree.Tree;
+import palExtensions.QuadrupleEnumerator;
+import palExtensions.QuartetDistance;
+import palExtensions.SampledQuartetDistance;
+import palExtensions.SampledQuartetDistance.Estimate;
+import palExtensions.YuleTree;
+
+public class SampledQuartetDistanceTest {
+
+	@Test
+	public void testEstimate() {
+		String[] leafNames = new String[60];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,21); // 21 = RNG seed
+		Tree tree1 = generator.getNextTree(null);
+		Tree tree2 = generator.getNextTree(null);
+		double exact = (double)QuartetDistance.distance(tree1, tree2)/QuadrupleEnumerator.count(leafNames.length);
+		SampledQuartetDistance sampler = new SampledQuartetDistance(tree1, tree2);
+		Estimate estimate = sampler.estimate(0.02, 0.99, 22);
+		assertTrue(estimate.getUpper()-estimate.getLower()<=0.02);
+		assertTrue(estimate.getLower()<=exact && exact<=estimate.getUpper());
+		// reproducible from the seed, with any number of threads
+		Estimate again = sampler.estimate(0.02, 0.99, Long.MAX_VALUE, 22, new ForkJoinPool(1));
+		assertEquals(estimate.getSampleCount(), again.getSampleCount());
+		assertEquals(estimate.getDifferentCount(), again.getDifferentCount());
+		// sample limit
+		Estimate limited = sampler.estimate(0.0001, 0.99, 1000, 22, ForkJoinPool.commonPool());
+		assertEquals(1000, limited.getSampleCount());
+	}
+
+	@Test
+	public void testIdentical() {
+		String[] leafNames = new String[100];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		Tree tree = new YuleTree(leafNames,1.0,23).getNextTree(null); // 23 = RNG seed
+		Estimate estimate = new SampledQuartetDistance(tree, tree).estimate(0.01, 0.95, 24);
+		assertEquals(0, estimate.getDifferentCount());
+		assertEquals(0.0, estimate.getDistance(), 0.0);
+		assertTrue(estimate.getUpper()<=0.01);
+	}
+}
@@ -0,0 +1,63 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.AttributeNode;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.NeoSplitUtils;
+import palExtensions.SplitConsensus;
+import palExtensions.YuleTree;
+
+public class SplitConsensusTest {
+	private static final String[] LEAF_NAMES = new String[]{"A","B","C","D","E","F","G","H","I","J"};
+
+	/*
+	 * Three copies of one tree and two of another: majority rule consensus is the first tree,
+	 * strict consensus is the splits they share, greedy consensus includes the majority rule splits.
+	 */
+	@Test
+	public void testConsensus() {
+		YuleTree generator = new YuleTree(LEAF_NAMES,1.0,6); // 6 = RNG seed
+		for (int trial=0; trial<5; trial++) {
+			Tree tree1 = generator.getNextTree(null);
+			Tree tree2 = generator.getNextTree(null);
+			IdGroup idGroup = TreeUtils.getLeafIdGroup(tree1);
+			SplitConsensus consensus = new SplitConsensus(idGroup);
+			for (int i=0; i<3; i++) consensus.addTree(tree1);
+			for (int i=0; i<2; i++) consensus.addTree(tree2);
+			assertEquals(5, consensus.getTreeCount());
+
+			Set<String> splits1 = TestUtils.splitSet(tree1);
+			Set<String> splits2 = TestUtils.splitSet(tree2);
+			assertEquals(splits1, TestUtils.splitSet(consensus.getMajorityRuleConsensus()));
+			Set<String> shared = new HashSet<String>(splits1);
+			shared.retainAll(splits2);
+			assertEquals(shared, TestUtils.splitSet(consensus.getStrictConsensus()));
+			Set<String> greedy = TestUtils.splitSet(consensus.getGreedyConsensus());
+			assertTrue(greedy.containsAll(splits1));
+		}
+	}
+
+	@Test
+	public void testSupport() {
+		YuleTree generator = new YuleTree(LEAF_NAMES,1.0,7); // 7 = RNG seed
+		Tree tree = generator.getNextTree(null);
+		SplitConsensus consensus = new SplitConsensus(TreeUtils.getLeafIdGroup(tree));
+		consensus.addTree(tree);
+		consensus.addTree(tree);
+		Tree strict = consensus.getStrictConsensus();
+		// root is not associated with a split
+		for (int i=0; i<strict.getInternalNodeCount(); i++) {
+			AttributeNode node = (AttributeNode)strict.getInternalNode(i);
+			if (node.isRoot()) continue;
+			assertEquals(1.0, (Double)node.getAttribute(NeoSplitUtils.SUPPORT), 0.0);
+		}
+	}
+}
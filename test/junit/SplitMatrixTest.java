@@ -0,0 +1,207 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.NeoSplitSystem;
+import palExtensions.NeoSplitUtils;
+import palExtensions.Split;
+import palExtensions.SplitConsensus;
+import palExtensions.SplitMatrix;
+import palExtensions.YuleTree;
+
+public class SplitMatrixTest {
+
+	/*
+	 * Splits of a tree, copied into a matrix, read back the same. Small and large trees.
+	 */
+	@Test
+	public void testFromTree() {
+		for (int n : new int[]{10, 64, 65, 150}) {
+			YuleTree generator = new YuleTree(TestUtils.leafNames(n),1.0,3); // 3 = RNG seed
+			Tree tree = generator.getNextTree(null);
+			NeoSplitSystem splits = NeoSplitUtils.getSplits(tree);
+			SplitMatrix matrix = new SplitMatrix(splits.getIdGroup());
+			assertTrue(matrix.addAll(splits));
+			assertEquals(splits.size(), matrix.size());
+			for (int i=0; i<splits.size(); i++) {
+				Split view = matrix.get(i);
+				assertEquals(splits.get(i).toHexString(), view.toHexString());
+				assertTrue(view.equals(splits.get(i)));
+				assertTrue(splits.get(i).equals(view));
+				assertEquals(Split.toSplit(matrix.getIdGroup(), view.getLongArray()).hashCode(), view.hashCode());
+				assertEquals(splits.get(i).sizeOfSmaller(), view.sizeOfSmaller());
+				assertEquals(splits.get(i).smallerSubset(), view.smallerSubset());
+				assertTrue(matrix.contains(splits.get(i)));
+			}
+			assertTrue(matrix.isCompatible());
+			Set<String> hex = new HashSet<String>();
+			for (Split split : matrix) hex.add(split.toHexString());
+			assertEquals(splits.size(), hex.size());
+		}
+	}
+
+	@Test
+	public void testIncompatible() {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(6),1.0,1).getNextTree(null));
+		SplitMatrix matrix = new SplitMatrix(idGroup);
+		// taxa in idGroup order: {0,1}, {0,1,2} and {1,2}
+		matrix.addRow(new long[]{0x3L}, 0, 0, 0);
+		matrix.addRow(new long[]{0x7L}, 0, 0, 0);
+		assertTrue(matrix.isCompatible());
+		matrix.addRow(new long[]{0x6L}, 0, 0, 0);
+		assertFalse(matrix.isCompatible());
+		assertFalse(matrix.get(0).compatible(matrix.get(2)));
+		assertTrue(matrix.get(1).compatible(matrix.get(2)));
+		// stored normalised: taxon 0 is a 0 bit
+		long[] words = new long[1];
+		matrix.getWords(0, words, 0);
+		assertEquals(0x3cL, words[0]);
+		assertEquals(0, matrix.findRow(words, 0));
+		assertEquals(-1, matrix.findRow(new long[]{0x30L}, 0));
+	}
+
+	@Test
+	public void testColumnsAndEditing() {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(8),1.0,1).getNextTree(null));
+		SplitMatrix matrix = new SplitMatrix(idGroup, true, true);
+		for (int i=1; i<6; i++) {
+			assertEquals(i-1, matrix.addRow(new long[]{(1L<<i) | (1L<<(i+1))}, 0, i*0.5, i));
+		}
+		Split second = Split.toSplit(matrix.getIdGroup(), matrix.get(1).getLongArray());
+		Split removed = matrix.remove(0);
+		assertEquals(4, matrix.size());
+		assertEquals(1.0, matrix.getWeight(0), 0.0);
+		assertEquals(2, matrix.getCount(0));
+		assertFalse(matrix.contains(removed));
+		assertEquals(0, matrix.indexOf(second));
+		matrix.add(0, removed);
+		assertEquals(0, matrix.indexOf(removed));
+		assertEquals(0.0, matrix.getWeight(0), 0.0);
+		matrix.setWeight(0, 0.5);
+		matrix.setCount(0, 1);
+		assertEquals(0.5, matrix.getWeight(0), 0.0);
+		assertEquals(1, matrix.getCount(0));
+		assertTrue(matrix.remove(Split.toSplit(matrix.getIdGroup(), removed.getLongArray())));
+		assertEquals(4, matrix.size());
+		matrix.clear();
+		assertTrue(matrix.isEmpty());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testNoWeights() {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(5),1.0,1).getNextTree(null));
+		SplitMatrix matrix = new SplitMatrix(idGroup);
+		matrix.addRow(new long[]{0x6L}, 0, 0, 0);
+		matrix.getWeight(0);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongTaxa() {
+		SplitMatrix matrix = new SplitMatrix(TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(5),1.0,1).getNextTree(null)));
+		Tree other = new YuleTree(TestUtils.leafNames(6),1.0,1).getNextTree(null);
+		matrix.add(NeoSplitUtils.getSplits(other).get(0));
+	}
+
+	/*
+	 * SplitConsensus.getSplitMatrix agrees with getSplits
+	 */
+	@Test
+	public void testConsensus() {
+		YuleTree generator = new YuleTree(TestUtils.leafNames(12),1.0,4); // 4 = RNG seed
+		Tree tree1 = generator.getNextTree(null);
+		Tree tree2 = generator.getNextTree(null);
+		SplitConsensus consensus = new SplitConsensus(TreeUtils.getLeafIdGroup(tree1));
+		for (int i=0; i<3; i++) consensus.addTree(tree1);
+		consensus.addTree(tree2);
+		NeoSplitSystem splits = consensus.getSplits(0.5);
+		SplitMatrix matrix = consensus.getSplitMatrix(0.5);
+		assertEquals(splits.size(), matrix.size());
+		for (int row=0; row<matrix.size(); row++) {
+			assertTrue(splits.get(row).equals(matrix.get(row)));
+			assertEquals(matrix.getCount(row)/4.0, matrix.getWeight(row), 0.0);
+			assertTrue(matrix.getCount(row)>=3);
+		}
+	}
+
+	@Test
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		Tree tree = new YuleTree(TestUtils.leafNames(70),1.0,7).getNextTree(null); // 7 = RNG seed
+		SplitMatrix matrix = new SplitMatrix(TreeUtils.getLeafIdGroup(tree), true, false);
+		matrix.addAll(NeoSplitUtils.getSplits(tree));
+		matrix.setWeight(2, 0.25);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(matrix);
+		out.close();
+		SplitMatrix copy = (SplitMatrix)new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(matrix.size(), copy.size());
+		assertEquals(0.25, copy.getWeight(2), 0.0);
+		for (int i=0; i<matrix.size(); i++) {
+			assertEquals(matrix.get(i).toHexString(), copy.get(i).toHexString());
+			assertTrue(copy.contains(matrix.get(i)));
+		}
+	}
+
+	@Test(expected=ConcurrentModificationException.class)
+	public void testClearFailsFast() {
+		Tree tree = new YuleTree(TestUtils.leafNames(10),1.0,7).getNextTree(null);
+		SplitMatrix matrix = new SplitMatrix(TreeUtils.getLeafIdGroup(tree));
+		matrix.addAll(NeoSplitUtils.getSplits(tree));
+		Iterator<Split> iter = matrix.iterator();
+		iter.next();
+		matrix.clear();
+		iter.next();
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testSetPastEnd() {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(new YuleTree(TestUtils.leafNames(5),1.0,1).getNextTree(null));
+		SplitMatrix matrix = new SplitMatrix(idGroup);
+		matrix.addRow(new long[]{0x6L}, 0, 0, 0);
+		matrix.set(1, matrix.get(0));
+	}
+
+	/*
+	 * Lookups stay right as the hash index is extended, discarded and rebuilt
+	 */
+	@Test
+	public void testIndex() {
+		Tree tree = new YuleTree(TestUtils.leafNames(70),1.0,5).getNextTree(null); // 5 = RNG seed
+		List<Split> splits = NeoSplitUtils.getSplits(tree);
+		SplitMatrix matrix = new SplitMatrix(TreeUtils.getLeafIdGroup(tree));
+		matrix.addAll(splits);
+		for (int i=0; i<splits.size(); i++) assertEquals(i, matrix.indexOf(splits.get(i)));
+		matrix.add(splits.get(3)); // duplicate: first row is found
+		assertEquals(3, matrix.indexOf(splits.get(3)));
+		assertEquals(splits.size(), matrix.lastIndexOf(splits.get(3)));
+		matrix.remove(0);
+		assertFalse(matrix.contains(splits.get(0)));
+		assertEquals(2, matrix.indexOf(splits.get(3)));
+		matrix.set(2, splits.get(0));
+		assertEquals(2, matrix.indexOf(splits.get(0)));
+		assertEquals(splits.size()-1, matrix.indexOf(splits.get(3)));
+		matrix.retainAll(splits.subList(0, 10));
+		assertEquals(10, matrix.size());
+		matrix.removeAll(splits.subList(5, 10));
+		assertEquals(5, matrix.size());
+		for (int i=0; i<splits.size(); i++) {
+			assertEquals(i<5, matrix.contains(splits.get(i)));
+		}
+	}
+}
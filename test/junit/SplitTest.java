@@ -156,8 +156,8 @@ public class SplitTest {
 	public void testHashcode() {
 		assertTrue(SP_STD_BCF.hashCode()==SP_STD_BCF.hashCode());
 		assertTrue(SP_STD_BCF.hashCode()==SP_STD_HM.hashCode()); // Same split differently expressed
-		// It would be nice if this were true, but currently equivalent but not same IdGroup objects yield different hashcodes 
-		assertFalse(SP_STD_BCF.hashCode()==SP_ROD_HM.hashCode()); 
+		// Equivalent but not same IdGroup objects yield the same hashcode, consistent with equals(Object)
+		assertTrue(SP_STD_BCF.hashCode()==SP_ROD_HM.hashCode()); 
 		assertFalse(SP_STD_BCF.hashCode()==SP_ROD_BC.hashCode());
 		assertFalse(SP_STD_BC.hashCode()==SP_DIF_CF.hashCode());
 	}
@@ -1,8 +1,13 @@
 package junit;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import pal.math.MersenneTwisterFast;
 import pal.tree.Node;
 import pal.tree.Tree;
+import palExtensions.NeoSplitUtils;
+import palExtensions.Split;
 
 /**
  * Methods shared by several tests
@@ -10,6 +15,24 @@ import pal.tree.Tree;
  *
  */
 public class TestUtils {
+	/*
+	 * Leaf names t0, t1, ... for generated trees
+	 */
+	public static String[] leafNames(int n) {
+		String[] names = new String[n];
+		for (int i=0; i<n; i++) names[i] = "t"+i;
+		return names;
+	}
+
+	/*
+	 * Splits of a tree, as hex strings, for comparing split sets
+	 */
+	public static Set<String> splitSet(Tree tree) {
+		Set<String> set = new HashSet<String>();
+		for (Split split : NeoSplitUtils.getSplits(tree)) set.add(split.toHexString());
+		return set;
+	}
+
 	/*
 	 * Randomly reorder the children in a tree
 	 */
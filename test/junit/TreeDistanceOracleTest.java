@@ -0,0 +1,43 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import pal.distance.DistanceMatrix;
+import pal.misc.IdGroup;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.IdGroupUtils;
+import palExtensions.Quadruple;
+import palExtensions.TreeDistanceOracle;
+import palExtensions.YuleTree;
+
+public class TreeDistanceOracleTest {
+	private static final String[] LEAF_NAMES = new String[]{"A","B","C","D","E","F","G","H","I","J","K","L"};
+
+	@Test
+	public void testDistances() {
+		YuleTree generator = new YuleTree(LEAF_NAMES,1.0,9); // 9 = RNG seed
+		for (int trial=0; trial<10; trial++) {
+			Tree tree = generator.getNextTree(null);
+			IdGroup order = IdGroupUtils.copyOrdered(TreeUtils.getLeafIdGroup(tree));
+			for (boolean countEdges : new boolean[]{true,false}) {
+				DistanceMatrix matrix = ExTreeUtils.treeToDistanceMatrix(tree, order, countEdges, 0);
+				TreeDistanceOracle oracle = new TreeDistanceOracle(tree, order, countEdges);
+				for (int i=0; i<LEAF_NAMES.length; i++) {
+					for (int j=0; j<LEAF_NAMES.length; j++) {
+						assertEquals(matrix.getDistance(i,j), oracle.getDistance(i,j), 1e-12);
+					}
+				}
+			}
+			// whichQuartet agrees between the oracle and the matrix
+			DistanceMatrix matrix = ExTreeUtils.treeToDistanceMatrix(tree, order, true, 0);
+			TreeDistanceOracle oracle = new TreeDistanceOracle(tree, order, true);
+			for (Quadruple quad : Quadruple.allQuadruples(order)) {
+				assertEquals(quad.whichQuartet(matrix).getTopology(), quad.whichQuartet(oracle).getTopology());
+			}
+		}
+	}
+}
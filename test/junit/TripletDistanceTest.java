@@ -0,0 +1,102 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import pal.misc.IdGroup;
+import pal.tree.Node;
+import pal.tree.Tree;
+import pal.tree.TreeUtils;
+import palExtensions.ExTreeUtils;
+import palExtensions.ExtRandom;
+import palExtensions.TripletDistance;
+import palExtensions.YuleTree;
+
+public class TripletDistanceTest {
+
+	// path from the root to each taxon's leaf, in idGroup order
+	private static List<List<Node>> rootPaths(Tree tree, IdGroup idGroup) {
+		Map<String,List<Node>> paths = new HashMap<String,List<Node>>();
+		for (int i=0; i<tree.getExternalNodeCount(); i++) {
+			List<Node> path = new ArrayList<Node>();
+			for (Node node=tree.getExternalNode(i); node!=null; node=node.getParent()) path.add(0, node);
+			paths.put(tree.getExternalNode(i).getIdentifier().getName(), path);
+		}
+		List<List<Node>> result = new ArrayList<List<Node>>();
+		for (int i=0; i<idGroup.getIdCount(); i++) result.add(paths.get(idGroup.getIdentifier(i).getName()));
+		return result;
+	}
+
+	private static int lcaDepth(List<Node> path1, List<Node> path2) {
+		int d = 0;
+		while (d<path1.size() && d<path2.size() && path1.get(d)==path2.get(d)) d++;
+		return d;
+	}
+
+	// 0 = fan, 1 = ab|c, 2 = ac|b, 3 = bc|a
+	private static int triple(List<List<Node>> paths, int a, int b, int c) {
+		int ab = lcaDepth(paths.get(a), paths.get(b));
+		int ac = lcaDepth(paths.get(a), paths.get(c));
+		int bc = lcaDepth(paths.get(b), paths.get(c));
+		if (ab>ac && ab>bc) return 1;
+		if (ac>ab && ac>bc) return 2;
+		if (bc>ab && bc>ac) return 3;
+		return 0;
+	}
+
+	private static long bruteForce(Tree tree1, Tree tree2) {
+		IdGroup idGroup = TreeUtils.getLeafIdGroup(tree1);
+		List<List<Node>> paths1 = rootPaths(tree1, idGroup);
+		List<List<Node>> paths2 = rootPaths(tree2, idGroup);
+		int n = idGroup.getIdCount();
+		long distance = 0;
+		for (int a=0; a<n; a++)
+			for (int b=a+1; b<n; b++)
+				for (int c=b+1; c<n; c++)
+					if (triple(paths1,a,b,c)!=triple(paths2,a,b,c)) distance++;
+		return distance;
+	}
+
+	@Test
+	public void testSmall() {
+		Tree tree1 = ExTreeUtils.stringToTree("(((A,B),C),D);");
+		Tree tree2 = ExTreeUtils.stringToTree("((A,B),(C,D));");
+		Tree fan = ExTreeUtils.stringToTree("(A,B,C,D);");
+		assertEquals(2, TripletDistance.distance(tree1, tree2)); // ACD and BCD differ
+		assertEquals(4, TripletDistance.distance(tree1, fan));
+		assertEquals(0, TripletDistance.distance(fan, fan));
+	}
+
+	/*
+	 * All pairs of random binary and non-binary trees, compared with brute force.
+	 */
+	@Test
+	public void testAllPairs() {
+		String[] leafNames = new String[15];
+		for (int i=0; i<leafNames.length; i++) leafNames[i] = "t"+i;
+		YuleTree generator = new YuleTree(leafNames,1.0,13); // 13 = RNG seed
+		ExtRandom rng = new ExtRandom(14);
+		List<Tree> trees = new ArrayList<Tree>();
+		for (int t=0; t<12; t++) {
+			Tree tree = generator.getNextTree(null);
+			for (int merge=0; merge<t%4; merge++) {
+				TestUtils.randomNodeMerge(tree, rng);
+				tree.createNodeList();
+			}
+			trees.add(tree);
+		}
+		TripletDistance distances = new TripletDistance(TreeUtils.getLeafIdGroup(trees.get(0)), trees);
+		long[] all = distances.computeAll();
+		for (int i=0; i<trees.size(); i++) {
+			for (int j=i+1; j<trees.size(); j++) {
+				assertEquals(bruteForce(trees.get(i), trees.get(j)), all[distances.triangleIndex(i,j)]);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package junit;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import pal.misc.Identifier;
+import pal.misc.SimpleIdGroup;
+import pal.tree.Node;
+import pal.tree.NodeUtils;
+import pal.tree.SimpleNode;
+import pal.tree.SimpleTree;
+import pal.tree.Tree;
+import palExtensions.ExTreeUtils;
+import palExtensions.ExtRandom;
+import palExtensions.YuleTree;
+
+public class YuleTreeTest {
+	private static final String[] LEAF_NAMES = new String[]{"A","B","C","D","E","F","G","H","I","J","K","L"};
+
+	/*
+	 * The original O(n^2) generator, which adds each waiting time to every current leaf.
+	 */
+	private static Tree quadraticYule(Identifier[] leaves, double rate, ExtRandom rng) {
+		int nLeaves = leaves.length;
+		SimpleNode[] leafList = new SimpleNode[nLeaves];
+		SimpleNode root = new SimpleNode();
+		leafList[0] = root;
+		int size = 1;
+		while (size < nLeaves) {
+			int toBranch = rng.nextInt(size);
+			SimpleNode parent = leafList[toBranch];
+			SimpleNode child1 = new SimpleNode();
+			SimpleNode child2 = new SimpleNode();
+			parent.addChild(child1);
+			parent.addChild(child2);
+			leafList[toBranch] = child1;
+			leafList[size++] = child2;
+			double x = rng.nextExponential(1/(rate*size));
+			for (int i=0; i<size; i++) {
+				leafList[i].setBranchLength(leafList[i].getBranchLength()+x);
+			}
+		}
+		rng.shuffle(leaves);
+		for (int i=0; i<nLeaves; i++) leafList[i].setIdentifier(leaves[i]);
+		return new SimpleTree(root);
+	}
+
+	private static void assertSameTree(Node expected, Node actual) {
+		assertEquals(expected.getChildCount(), actual.getChildCount());
+		assertEquals(expected.getBranchLength(), actual.getBranchLength(), 1e-12);
+		if (expected.isLeaf()) {
+			assertEquals(expected.getIdentifier().getName(), actual.getIdentifier().getName());
+		}
+		for (int i=0; i<expected.getChildCount(); i++) assertSameTree(expected.getChild(i), actual.getChild(i));
+	}
+
+	private static String toString(Tree tree) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		NodeUtils.printNH(pw, tree.getRoot(), true, false);
+		pw.flush();
+		return sw.toString();
+	}
+
+	/*
+	 * Same random number consumption as the original generator, so the same trees.
+	 */
+	@Test
+	public void testMatchesOriginal() {
+		YuleTree generator = new YuleTree(LEAF_NAMES, 2.0, 25); // 25 = RNG seed
+		ExtRandom rng = new ExtRandom();
+		rng.setSeed(25);
+		Identifier[] leaves = new Identifier[LEAF_NAMES.length];
+		for (int i=0; i<leaves.length; i++) leaves[i] = new SimpleIdGroup(LEAF_NAMES).getIdentifier(i);
+		for (int trial=0; trial<5; trial++) {
+			assertSameTree(quadraticYule(leaves, 2.0, rng).getRoot(), generator.getNextTree(null).getRoot());
+		}
+	}
+
+	/*
+	 * Batch trees depend only on seed and tree number
+	 */
+	@Test
+	public void testBatch() {
+		YuleTree generator = new YuleTree(LEAF_NAMES, 1.0, 26); // 26 = RNG seed
+		Tree[] all = generator.getTrees(27, 40);
+		generator.getNextTree(null); // doesn't affect batches
+		Tree[] part = generator.getTrees(27, 10, 20, new ForkJoinPool(3));
+		assertEquals(10, part.length);
+		for (int i=0; i<part.length; i++) assertEquals(toString(all[10+i]), toString(part[i]));
+		// trees differ from each other
+		assertFalse(ExTreeUtils.topologyHash(all[0], true)==ExTreeUtils.topologyHash(all[1], true)
+				&& ExTreeUtils.topologyHash(all[1], true)==ExTreeUtils.topologyHash(all[2], true));
+	}
+}